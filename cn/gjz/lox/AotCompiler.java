@@ -0,0 +1,372 @@
+package cn.gjz.lox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static cn.gjz.lox.JitClassWriter.*;
+
+/**
+ * 预先编译：把已经完成变量解析的脚本编译为可以直接运行的jar
+ * 脚本顶层代码和每个函数(包括方法)的函数体都用JitCompiler生成一个类，
+ * 主类LoxScript在main()中重新创建这些类需要的常量(Token、函数和类的声明等)，然后执行脚本，运行时不再需要扫描、解析和变量解析
+ * jar中还包含生成的类直接或间接引用到的运行时类(Interpreter、LoxClass、LoxInstance、本地函数等)，不依赖外部的类路径；
+ * 扫描器、解析器、JIT编译器和其他执行引擎不会进入jar，查找运行时类时遇到它们就报错
+ */
+
+final class AotCompiler {
+
+    private static final String MAIN = "cn/gjz/lox/LoxScript";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String TOKEN = "cn/gjz/lox/Token";
+    private static final String INTERPRETER = "cn/gjz/lox/Interpreter";
+    private static final String FUNCTION = "cn/gjz/lox/Stmt$Function";
+    private static final String CONSTANTS = "[Ljava/lang/Object;";
+    private static final String CONSTANTS_METHOD = "(L" + INTERPRETER + ";)" + CONSTANTS;
+
+    // 运行时类的引用都以这个前缀开头
+    private static final Pattern RUNTIME_CLASS = Pattern.compile("cn/gjz/lox/[A-Za-z0-9_/$]+");
+    // 命令行入口只在Interpreter.interpret()报告错误时被引用，预先编译的脚本从不调用它；
+    // 沿着它查找会把扫描器、解析器和其他执行引擎都带进jar
+    private static final String LAUNCHER = "cn/gjz/lox/Lox";
+    // 模块同理：导入的模块在编译时已经展开到顶层代码中，运行时不会再加载模块
+    private static final String MODULE = "cn/gjz/lox/LoxModule";
+    // 编译器和其他执行引擎(包括它们的内部类)，运行时类引用到它们说明又有运行时代码直接依赖了某个引擎，
+    // 例如语法树上的缓存字段不是以CompiledBody而是以引擎自己的类型声明的，这时整个引擎都会被带进jar
+    private static final Set<String> COMPILER_CLASSES = Set.of(
+            "cn/gjz/lox/Scanner", "cn/gjz/lox/Parser", "cn/gjz/lox/Resolver", "cn/gjz/lox/AotCompiler",
+            "cn/gjz/lox/JitCompiler", "cn/gjz/lox/JitClassWriter", "cn/gjz/lox/JitInterpreter",
+            "cn/gjz/lox/Node", "cn/gjz/lox/NodeBuilder", "cn/gjz/lox/NodeInterpreter", "cn/gjz/lox/StmtNode", "cn/gjz/lox/ExprNode",
+            "cn/gjz/lox/ClosureCompiler", "cn/gjz/lox/ClosureInterpreter", "cn/gjz/lox/Snapshot");
+    // 字节码虚拟机
+    private static final String VM_PACKAGE = "cn/gjz/lox/vm/";
+
+    // 编译期间代替运行时的解释器，常量中出现它和它的全局环境时改为从main()创建的解释器中读取
+    private final Interpreter interpreter = new Interpreter();
+    // 每个函数体生成的类名和常量，下标0是脚本顶层代码
+    private final Map<Stmt.Function, Integer> functions = new IdentityHashMap<>();
+    private final List<List<Object>> constants = new ArrayList<>();
+    private final Map<String, byte[]> classes = new LinkedHashMap<>();
+    private final Deque<Stmt.Function> pending = new ArrayDeque<>();
+    private final JitClassWriter writer = new JitClassWriter();
+
+    private AotCompiler() {
+    }
+
+    static void compile(List<Stmt> statements, Path jar) throws IOException {
+        new AotCompiler().write(statements, jar);
+    }
+
+    private void write(List<Stmt> statements, Path jar) throws IOException {
+        compileBody(bodyClass(0, "script"), inlineImports(statements, new HashSet<>()));
+        // 编译函数体时遇到的内层函数和方法依次放入队列
+        while (!pending.isEmpty()) {
+            Stmt.Function function = pending.poll();
+            compileBody(bodyClass(functions.get(function), function.name.lexeme), function.body);
+        }
+        for (int i = 0; i < constants.size(); i++) {
+            constantsMethod(i);
+        }
+        mainMethod();
+        classes.put(MAIN, writer.toByteArray(ACC_PUBLIC | ACC_FINAL | ACC_SUPER, MAIN, OBJECT));
+        addRuntimeClasses();
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, MAIN.replace('/', '.'));
+        try (OutputStream file = Files.newOutputStream(jar);
+             JarOutputStream out = new JarOutputStream(file, manifest)) {
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                out.putNextEntry(new JarEntry(entry.getKey() + ".class"));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+    }
+
+    // 把import语句替换为模块的顶层代码，每个模块只在第一次导入的位置展开，与解释执行时模块只执行一次相同
+    // import语句只出现在顶层，顶层代码按顺序只执行一次，所以在编译时展开和运行时执行的效果一样
+    private static List<Stmt> inlineImports(List<Stmt> statements, Set<LoxModule> imported) {
+        List<Stmt> result = new ArrayList<>();
+        for (Stmt statement : statements) {
+            if (!(statement instanceof Stmt.Import)) {
+                result.add(statement);
+            } else if (imported.add(((Stmt.Import) statement).module)) {
+                result.addAll(inlineImports(((Stmt.Import) statement).module.statements(), imported));
+            }
+        }
+        return result;
+    }
+
+    private static String bodyClass(int index, String name) {
+        return MAIN + "$" + index + "_" + name;
+    }
+
+    private void compileBody(String className, List<Stmt> body) {
+        // 预先编译没有解释执行可以退回，只受class文件格式本身的限制
+        JitCompiler compiler = new JitCompiler(interpreter, className, body, Integer.MAX_VALUE);
+        classes.put(className, compiler.generate());
+        constants.add(compiler.constants());
+        for (Object constant : compiler.constants()) {
+            if (constant instanceof Stmt.Function) {
+                enqueue((Stmt.Function) constant);
+            } else if (constant instanceof Stmt.Class) {
+                for (Stmt.Function method : ((Stmt.Class) constant).methods) {
+                    enqueue(method);
+                }
+            }
+        }
+    }
+
+    // 函数体的下标按照编译的顺序分配
+    private void enqueue(Stmt.Function function) {
+        functions.put(function, constants.size() + pending.size());
+        pending.add(function);
+    }
+
+    // static Object[] constantsN(Interpreter)：创建第N个函数体的常量数组
+    private void constantsMethod(int index) {
+        List<Object> values = constants.get(index);
+        JitClassWriter.MethodWriter code = writer.method(ACC_STATIC, "constants" + index, CONSTANTS_METHOD, 1);
+        code.pushInt(values.size());
+        code.type(ANEWARRAY, OBJECT);
+        for (int i = 0; i < values.size(); i++) {
+            code.op(DUP, 1);
+            code.pushInt(i);
+            constant(code, values.get(i));
+            code.op(AASTORE, -3);
+        }
+        code.op(ARETURN, -1);
+        code.finish();
+    }
+
+    // main()：创建解释器和脚本顶层代码的类，然后执行脚本
+    private void mainMethod() {
+        JitClassWriter.MethodWriter code = writer.method(ACC_PUBLIC | ACC_STATIC, "main", "([Ljava/lang/String;)V", 1);
+        code.type(NEW, "cn/gjz/lox/PrecompiledInterpreter");
+        code.op(DUP, 1);
+        code.invoke(INVOKESPECIAL, "cn/gjz/lox/PrecompiledInterpreter", "<init>", "()V");
+        int local = code.newLocal(1);
+        code.local(ASTORE, local);
+        newBody(code, 0, bodyClass(0, "script"), local);
+        code.local(ALOAD, local);
+        code.invoke(INVOKESTATIC, "cn/gjz/lox/JitRuntime", "runScript", "(Lcn/gjz/lox/CompiledBody;L" + INTERPRETER + ";)V");
+        code.op(RETURN, 0);
+        code.finish();
+    }
+
+    // new LoxScript$N(constantsN(interpreter))，interpreter是保存解释器的局部变量
+    private void newBody(JitClassWriter.MethodWriter code, int index, String className, int interpreter) {
+        code.type(NEW, className);
+        code.op(DUP, 1);
+        code.local(ALOAD, interpreter);
+        code.invoke(INVOKESTATIC, MAIN, "constants" + index, CONSTANTS_METHOD);
+        code.invoke(INVOKESPECIAL, className, "<init>", "(" + CONSTANTS + ")V");
+    }
+
+    // 生成重新创建一个常量的代码
+    private void constant(JitClassWriter.MethodWriter code, Object value) {
+        if (value == interpreter) {
+            code.local(ALOAD, 0);
+        } else if (value == interpreter.globals) {
+            code.local(ALOAD, 0);
+            code.field(GETFIELD, INTERPRETER, "globals", "Lcn/gjz/lox/Environment;");
+        } else if (value instanceof Token) {
+            token(code, (Token) value);
+        } else if (value instanceof Double) {
+            code.ldc(writer.doubleConstant((Double) value), true);
+            code.invoke(INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;");
+        } else if (value instanceof PropertyCache) {
+            code.type(NEW, "cn/gjz/lox/PropertyCache");
+            code.op(DUP, 1);
+            code.invoke(INVOKESPECIAL, "cn/gjz/lox/PropertyCache", "<init>", "()V");
+        } else if (value instanceof Expr.Super) {
+            Expr.Super expr = (Expr.Super) value;
+            code.type(NEW, "cn/gjz/lox/Expr$Super");
+            code.op(DUP, 1);
+            token(code, expr.keyword);
+            token(code, expr.method);
+            code.invoke(INVOKESPECIAL, "cn/gjz/lox/Expr$Super", "<init>", "(L" + TOKEN + ";L" + TOKEN + ";)V");
+            code.op(DUP, 1);
+            code.pushInt(expr.depth);
+            code.field(PUTFIELD, "cn/gjz/lox/Expr$Super", "depth", "I");
+            code.op(DUP, 1);
+            code.pushInt(expr.slot);
+            code.field(PUTFIELD, "cn/gjz/lox/Expr$Super", "slot", "I");
+        } else if (value instanceof Stmt.Function) {
+            function(code, (Stmt.Function) value);
+        } else if (value instanceof Stmt.Class) {
+            Stmt.Class stmt = (Stmt.Class) value;
+            code.type(NEW, "cn/gjz/lox/Stmt$Class");
+            code.op(DUP, 1);
+            token(code, stmt.name);
+            // 父类表达式由生成的代码求值，这里只需要它的Token用于报错
+            if (stmt.superclass != null) {
+                code.type(NEW, "cn/gjz/lox/Expr$Variable");
+                code.op(DUP, 1);
+                token(code, stmt.superclass.name);
+                code.invoke(INVOKESPECIAL, "cn/gjz/lox/Expr$Variable", "<init>", "(L" + TOKEN + ";)V");
+            } else {
+                code.op(ACONST_NULL, 1);
+            }
+            list(code, FUNCTION, stmt.methods);
+            code.invoke(INVOKESPECIAL, "cn/gjz/lox/Stmt$Class", "<init>", "(L" + TOKEN + ";Lcn/gjz/lox/Expr$Variable;Ljava/util/List;)V");
+        } else {
+            throw new JitCompiler.Unsupported("constant " + value.getClass().getName());
+        }
+    }
+
+    // 函数声明只保留名称和参数，函数体直接设置为编译好的类
+    private void function(JitClassWriter.MethodWriter code, Stmt.Function function) {
+        code.type(NEW, FUNCTION);
+        code.op(DUP, 1);
+        token(code, function.name);
+        list(code, TOKEN, function.params);
+        code.invoke(INVOKESTATIC, "java/util/Collections", "emptyList", "()Ljava/util/List;");
+        code.invoke(INVOKESPECIAL, FUNCTION, "<init>", "(L" + TOKEN + ";Ljava/util/List;Ljava/util/List;)V");
+        code.op(DUP, 1);
+        int index = functions.get(function);
+        newBody(code, index, bodyClass(index, function.name.lexeme), 0);
+        code.field(PUTFIELD, FUNCTION, "jitCode", "Lcn/gjz/lox/CompiledBody;");
+    }
+
+    private void token(JitClassWriter.MethodWriter code, Token token) {
+        code.type(NEW, TOKEN);
+        code.op(DUP, 1);
+        code.field(GETSTATIC, "cn/gjz/lox/TokenType", token.type.name(), "Lcn/gjz/lox/TokenType;");
+        code.ldc(writer.string(token.lexeme), false);
+        if (token.literal instanceof String) {
+            code.ldc(writer.string((String) token.literal), false);
+        } else if (token.literal != null) {
+            constant(code, token.literal);
+        } else {
+            code.op(ACONST_NULL, 1);
+        }
+        code.pushInt(token.line);
+        code.invoke(INVOKESPECIAL, TOKEN, "<init>", "(Lcn/gjz/lox/TokenType;Ljava/lang/String;Ljava/lang/Object;I)V");
+    }
+
+    // Arrays.asList(...)
+    private void list(JitClassWriter.MethodWriter code, String elementType, List<?> values) {
+        code.pushInt(values.size());
+        code.type(ANEWARRAY, elementType);
+        for (int i = 0; i < values.size(); i++) {
+            code.op(DUP, 1);
+            code.pushInt(i);
+            constant(code, values.get(i));
+            code.op(AASTORE, -3);
+        }
+        code.invoke(INVOKESTATIC, "java/util/Arrays", "asList", "([Ljava/lang/Object;)Ljava/util/List;");
+    }
+
+    // 从生成的类出发，把常量池中引用到的运行时类逐个加入jar
+    private void addRuntimeClasses() throws IOException {
+        Deque<String> work = new ArrayDeque<>(classes.keySet());
+        Set<String> seen = new LinkedHashSet<>(classes.keySet());
+        while (!work.isEmpty()) {
+            String referrer = work.poll();
+            for (String name : referencedClasses(classes.get(referrer))) {
+                if (name.equals(LAUNCHER) || name.equals(MODULE) || !seen.add(name)) {
+                    continue;
+                }
+                if (isCompilerClass(name)) {
+                    throw new IllegalStateException(referrer + " references " + name + ", which must not be part of a precompiled jar.");
+                }
+                byte[] bytes = runtimeClass(name);
+                // 匹配到的字符串不一定是类名(例如字符串常量)，找不到对应的类文件时跳过
+                if (bytes != null) {
+                    classes.put(name, bytes);
+                    work.add(name);
+                }
+            }
+        }
+    }
+
+    private static boolean isCompilerClass(String name) {
+        int nested = name.indexOf('$');
+        return COMPILER_CLASSES.contains(nested < 0 ? name : name.substring(0, nested)) || name.startsWith(VM_PACKAGE);
+    }
+
+    private static byte[] runtimeClass(String name) throws IOException {
+        try (InputStream in = AotCompiler.class.getClassLoader().getResourceAsStream(name + ".class")) {
+            if (in == null) {
+                return null;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    // 常量池中所有UTF8字符串里出现的运行时类名，类引用和方法、字段的描述符都以UTF8字符串的形式保存
+    private static Set<String> referencedClasses(byte[] classFile) throws IOException {
+        Set<String> names = new LinkedHashSet<>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+        in.skipBytes(8);
+        int count = in.readUnsignedShort();
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1:
+                    Matcher matcher = RUNTIME_CLASS.matcher(in.readUTF());
+                    while (matcher.find()) {
+                        names.add(matcher.group());
+                    }
+                    break;
+                case 5:
+                case 6:
+                    // long和double占两个位置
+                    in.skipBytes(8);
+                    i++;
+                    break;
+                case 3:
+                case 4:
+                case 9:
+                case 10:
+                case 11:
+                case 12:
+                case 17:
+                case 18:
+                    in.skipBytes(4);
+                    break;
+                case 15:
+                    in.skipBytes(3);
+                    break;
+                case 7:
+                case 8:
+                case 16:
+                case 19:
+                case 20:
+                    in.skipBytes(2);
+                    break;
+                default:
+                    throw new IOException("bad constant pool tag " + tag);
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,515 @@
+package cn.gjz.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 闭包编译器：把已经通过Resolver静态检查的语法树一次性转换为预先绑定好的Java闭包
+ * 操作符、变量的距离和槽位、字面量的值都在编译时确定并捕获在闭包中，运行时不再经过accept()的双重分派和对操作符的switch
+ * 语句闭包的返回值与节点解释器相同：正常执行完毕返回NORMAL，执行了break或continue时返回BREAK或CONTINUE，执行了return语句时返回要返回的值
+ */
+
+final class ClosureCompiler implements Expr.Visitor<ClosureCompiler.Evaluator>, Stmt.Visitor<ClosureCompiler.Executor> {
+
+    // 表达式编译后的闭包
+    interface Evaluator {
+        Object evaluate(Environment environment);
+    }
+
+    // 语句编译后的闭包，编译好的函数体直接保存在函数声明中
+    interface Executor extends CompiledBody {
+    }
+
+    // 完成信号与树遍历解释器相同
+    static final Object NORMAL = Interpreter.NORMAL;
+    static final Object BREAK = Interpreter.BREAK;
+    static final Object CONTINUE = Interpreter.CONTINUE;
+
+    private final Interpreter interpreter;
+    private final Environment globals;
+
+    ClosureCompiler(Interpreter interpreter) {
+        this.interpreter = interpreter;
+        this.globals = interpreter.globals;
+    }
+
+    Executor compile(List<Stmt> statements) {
+        return sequence(compileStatements(statements));
+    }
+
+    private Executor[] compileStatements(List<Stmt> statements) {
+        Executor[] executors = new Executor[statements.size()];
+        for (int i = 0; i < executors.length; i++) {
+            executors[i] = compile(statements.get(i));
+        }
+        return executors;
+    }
+
+    // 开启运行指标时每条语句外面套一层计数的闭包，关闭时编译结果不变
+    private Executor compile(Stmt stmt) {
+        Executor executor = stmt.accept(this);
+        if (!Metrics.ENABLED) {
+            return executor;
+        }
+        return environment -> {
+            Metrics.statement();
+            return executor.execute(environment);
+        };
+    }
+
+    private Evaluator compile(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private Evaluator[] compileArguments(List<Expr> arguments) {
+        Evaluator[] evaluators = new Evaluator[arguments.size()];
+        for (int i = 0; i < evaluators.length; i++) {
+            evaluators[i] = compile(arguments.get(i));
+        }
+        return evaluators;
+    }
+
+    // 函数体只编译一次
+    void compileBody(Stmt.Function function) {
+        if (function.closure == null) {
+            function.closure = compile(function.body);
+        }
+    }
+
+    // 在同一个环境中依次执行语句
+    private static Executor sequence(Executor[] statements) {
+        if (statements.length == 1) {
+            return statements[0];
+        }
+        return environment -> {
+            for (Executor statement : statements) {
+                Object result = statement.execute(environment);
+                if (result != NORMAL) {
+                    return result;
+                }
+            }
+            return NORMAL;
+        };
+    }
+
+    // 依次对每个参数求值
+    private static List<Object> evaluateArguments(Evaluator[] arguments, Environment environment) {
+        List<Object> values = new ArrayList<>(arguments.length);
+        for (Evaluator argument : arguments) {
+            values.add(argument.evaluate(environment));
+        }
+        return values;
+    }
+
+    // 调用已经求值的被调用者
+    // tail为true时Lox函数不在这里调用，而是返回TailCall交给LoxFunction的蹦床执行
+    private static Object call(Interpreter interpreter, Token paren, Object callee, List<Object> arguments, boolean tail) {
+        if (!(callee instanceof LoxCallable)) {
+            throw new RuntimeError(paren, "Can only call functions and classes.");
+        }
+        LoxCallable function = (LoxCallable) callee;
+        Interpreter.checkArity(paren, function, arguments);
+        if (tail && function instanceof LoxFunction) {
+            return ((LoxFunction) function).tailCall(arguments);
+        }
+        try {
+            return function.call(interpreter, arguments);
+        } catch (StackOverflowError error) {
+            throw Interpreter.stackOverflow(paren);
+        }
+    }
+
+    @Override
+    public Evaluator visitAssignExpr(Expr.Assign expr) {
+        Evaluator value = compile(expr.value);
+        Token name = expr.name;
+        int depth = expr.depth;
+        int slot = expr.slot;
+        if (depth < 0) {
+            return environment -> {
+                Object result = value.evaluate(environment);
+                globals.assign(name, result);
+                return result;
+            };
+        }
+        return environment -> {
+            Object result = value.evaluate(environment);
+            environment.assignAt(depth, slot, result);
+            return result;
+        };
+    }
+
+    @Override
+    public Evaluator visitBinaryExpr(Expr.Binary expr) {
+        Evaluator left = compile(expr.left);
+        Evaluator right = compile(expr.right);
+        Token operator = expr.operator;
+        switch (operator.type) {
+            case PLUS:
+                return environment -> {
+                    Object l = left.evaluate(environment);
+                    Object r = right.evaluate(environment);
+                    if (l instanceof Double && r instanceof Double) {
+                        return (double) l + (double) r;
+                    }
+                    if (LoxString.isString(l) && LoxString.isString(r)) {
+                        return LoxString.concat(l, r);
+                    }
+                    throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+                };
+            case MINUS:
+                return environment -> {
+                    Object l = left.evaluate(environment);
+                    Object r = right.evaluate(environment);
+                    Interpreter.checkNumberOperands(operator, l, r);
+                    return (double) l - (double) r;
+                };
+            case SLASH:
+                return environment -> {
+                    Object l = left.evaluate(environment);
+                    Object r = right.evaluate(environment);
+                    Interpreter.checkNumberOperands(operator, l, r);
+                    return (double) l / (double) r;
+                };
+            case STAR:
+                return environment -> {
+                    Object l = left.evaluate(environment);
+                    Object r = right.evaluate(environment);
+                    Interpreter.checkNumberOperands(operator, l, r);
+                    return (double) l * (double) r;
+                };
+            case GREATER:
+                return environment -> {
+                    Object l = left.evaluate(environment);
+                    Object r = right.evaluate(environment);
+                    Interpreter.checkNumberOperands(operator, l, r);
+                    return (double) l > (double) r;
+                };
+            case GREATER_EQUAL:
+                return environment -> {
+                    Object l = left.evaluate(environment);
+                    Object r = right.evaluate(environment);
+                    Interpreter.checkNumberOperands(operator, l, r);
+                    return (double) l >= (double) r;
+                };
+            case LESS:
+                return environment -> {
+                    Object l = left.evaluate(environment);
+                    Object r = right.evaluate(environment);
+                    Interpreter.checkNumberOperands(operator, l, r);
+                    return (double) l < (double) r;
+                };
+            case LESS_EQUAL:
+                return environment -> {
+                    Object l = left.evaluate(environment);
+                    Object r = right.evaluate(environment);
+                    Interpreter.checkNumberOperands(operator, l, r);
+                    return (double) l <= (double) r;
+                };
+            case BANG_EQUAL:
+                return environment -> !Interpreter.isEqual(left.evaluate(environment), right.evaluate(environment));
+            case EQUAL_EQUAL:
+                return environment -> Interpreter.isEqual(left.evaluate(environment), right.evaluate(environment));
+            default:
+                // Parser不会产生其他二元操作符
+                return environment -> Interpreter.binaryOperation(operator, left.evaluate(environment), right.evaluate(environment));
+        }
+    }
+
+    @Override
+    public Evaluator visitCallExpr(Expr.Call expr) {
+        return compileCall(expr, false);
+    }
+
+    // tail为true时编译return语句中的尾调用
+    private Evaluator compileCall(Expr.Call expr, boolean tail) {
+        Evaluator[] arguments = compileArguments(expr.arguments);
+        Token paren = expr.paren;
+        // obj.method(args)：直接以obj作为this调用方法，不创建绑定方法
+        if (expr.callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get) expr.callee;
+            Evaluator object = compile(get.object);
+            Token name = get.name;
+            PropertyCache cache = new PropertyCache();
+            return environment -> {
+                Object receiver = object.evaluate(environment);
+                if (!(receiver instanceof LoxInstance)) {
+                    throw new RuntimeError(name, "Only instances have properties.");
+                }
+                LoxInstance instance = (LoxInstance) receiver;
+                LoxFunction method = cache.method(instance, name);
+                if (method != null) {
+                    List<Object> values = evaluateArguments(arguments, environment);
+                    Interpreter.checkArity(paren, method, values);
+                    if (tail) {
+                        return method.tailCall(instance, values);
+                    }
+                    try {
+                        return method.invoke(interpreter, instance, values);
+                    } catch (StackOverflowError error) {
+                        throw Interpreter.stackOverflow(paren);
+                    }
+                }
+                // 属性是字段，调用字段中保存的值
+                Object callee = cache.get(instance, name);
+                return call(interpreter, paren, callee, evaluateArguments(arguments, environment), tail);
+            };
+        }
+        // super.method(args)同理
+        if (expr.callee instanceof Expr.Super) {
+            Expr.Super superExpr = (Expr.Super) expr.callee;
+            int depth = superExpr.depth;
+            int slot = superExpr.slot;
+            return environment -> {
+                LoxClass superClass = (LoxClass) environment.getAt(depth, slot);
+                LoxInstance object = (LoxInstance) environment.getAt(depth - 1, 0);
+                LoxFunction method = Interpreter.findSuperMethod(superExpr, superClass);
+                List<Object> values = evaluateArguments(arguments, environment);
+                Interpreter.checkArity(paren, method, values);
+                if (tail) {
+                    return method.tailCall(object, values);
+                }
+                try {
+                    return method.invoke(interpreter, object, values);
+                } catch (StackOverflowError error) {
+                    throw Interpreter.stackOverflow(paren);
+                }
+            };
+        }
+        Evaluator callee = compile(expr.callee);
+        return environment -> {
+            Object function = callee.evaluate(environment);
+            return call(interpreter, paren, function, evaluateArguments(arguments, environment), tail);
+        };
+    }
+
+    @Override
+    public Evaluator visitGetExpr(Expr.Get expr) {
+        Evaluator object = compile(expr.object);
+        Token name = expr.name;
+        PropertyCache cache = new PropertyCache();
+        return environment -> {
+            Object value = object.evaluate(environment);
+            if (value instanceof LoxInstance) {
+                return cache.get((LoxInstance) value, name);
+            }
+            throw new RuntimeError(name, "Only instances have properties.");
+        };
+    }
+
+    @Override
+    public Evaluator visitGroupingExpr(Expr.Grouping expr) {
+        return compile(expr.expression);
+    }
+
+    @Override
+    public Evaluator visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        return environment -> value;
+    }
+
+    @Override
+    public Evaluator visitLogicalExpr(Expr.Logical expr) {
+        Evaluator left = compile(expr.left);
+        Evaluator right = compile(expr.right);
+        if (expr.operator.type == TokenType.OR) {
+            return environment -> {
+                Object value = left.evaluate(environment);
+                return Interpreter.isTruthy(value) ? value : right.evaluate(environment);
+            };
+        }
+        return environment -> {
+            Object value = left.evaluate(environment);
+            return !Interpreter.isTruthy(value) ? value : right.evaluate(environment);
+        };
+    }
+
+    @Override
+    public Evaluator visitSetExpr(Expr.Set expr) {
+        Evaluator object = compile(expr.object);
+        Evaluator value = compile(expr.value);
+        Token name = expr.name;
+        PropertyCache cache = new PropertyCache();
+        return environment -> {
+            Object target = object.evaluate(environment);
+            if (!(target instanceof LoxInstance)) {
+                throw new RuntimeError(name, "Only instances have fields.");
+            }
+            Object result = value.evaluate(environment);
+            cache.set((LoxInstance) target, name, result);
+            return result;
+        };
+    }
+
+    @Override
+    public Evaluator visitSuperExpr(Expr.Super expr) {
+        int depth = expr.depth;
+        int slot = expr.slot;
+        return environment -> {
+            LoxClass superClass = (LoxClass) environment.getAt(depth, slot);
+            LoxInstance object = (LoxInstance) environment.getAt(depth - 1, 0);
+            return Interpreter.findSuperMethod(expr, superClass).bind(object);
+        };
+    }
+
+    @Override
+    public Evaluator visitThisExpr(Expr.This expr) {
+        int depth = expr.depth;
+        int slot = expr.slot;
+        return environment -> environment.getAt(depth, slot);
+    }
+
+    @Override
+    public Evaluator visitUnaryExpr(Expr.Unary expr) {
+        Evaluator right = compile(expr.right);
+        Token operator = expr.operator;
+        if (operator.type == TokenType.BANG) {
+            return environment -> !Interpreter.isTruthy(right.evaluate(environment));
+        }
+        return environment -> {
+            Object value = right.evaluate(environment);
+            Interpreter.checkNumberOperand(operator, value);
+            return -(double) value;
+        };
+    }
+
+    @Override
+    public Evaluator visitVariableExpr(Expr.Variable expr) {
+        Token name = expr.name;
+        int depth = expr.depth;
+        int slot = expr.slot;
+        if (depth < 0) {
+            return environment -> globals.get(name);
+        }
+        return environment -> environment.getAt(depth, slot);
+    }
+
+    @Override
+    public Executor visitBlockStmt(Stmt.Block stmt) {
+        Executor body = sequence(compileStatements(stmt.statements));
+        return environment -> body.execute(new Environment(environment));
+    }
+
+    @Override
+    public Executor visitBreakStmt(Stmt.Break stmt) {
+        return environment -> BREAK;
+    }
+
+    @Override
+    public Executor visitContinueStmt(Stmt.Continue stmt) {
+        return environment -> CONTINUE;
+    }
+
+    @Override
+    public Executor visitClassStmt(Stmt.Class stmt) {
+        for (Stmt.Function method : stmt.methods) {
+            compileBody(method);
+        }
+        if (stmt.superclass == null) {
+            return environment -> {
+                Interpreter.defineClass(stmt, null, environment);
+                return NORMAL;
+            };
+        }
+        Evaluator superclass = compile(stmt.superclass);
+        return environment -> {
+            Interpreter.defineClass(stmt, superclass.evaluate(environment), environment);
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Executor visitExpressionStmt(Stmt.Expression stmt) {
+        Evaluator expression = compile(stmt.expression);
+        return environment -> {
+            expression.evaluate(environment);
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Executor visitFunctionStmt(Stmt.Function stmt) {
+        compileBody(stmt);
+        Symbol name = stmt.name.symbol;
+        return environment -> {
+            environment.define(name, new LoxFunction(stmt, environment, false));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Executor visitIfStmt(Stmt.If stmt) {
+        Evaluator condition = compile(stmt.condition);
+        Executor thenBranch = compile(stmt.thenBranch);
+        if (stmt.elseBranch == null) {
+            return environment -> Interpreter.isTruthy(condition.evaluate(environment)) ? thenBranch.execute(environment) : NORMAL;
+        }
+        Executor elseBranch = compile(stmt.elseBranch);
+        return environment -> Interpreter.isTruthy(condition.evaluate(environment))
+                ? thenBranch.execute(environment)
+                : elseBranch.execute(environment);
+    }
+
+    @Override
+    public Executor visitImportStmt(Stmt.Import stmt) {
+        return environment -> {
+            interpreter.importModule(stmt);
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Executor visitPrintStmt(Stmt.Print stmt) {
+        Evaluator expression = compile(stmt.expression);
+        return environment -> {
+            System.out.println(Interpreter.stringify(expression.evaluate(environment)));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Executor visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) {
+            return environment -> null;
+        }
+        Evaluator value = stmt.tailCall ? compileCall((Expr.Call) stmt.value, true) : compile(stmt.value);
+        return value::evaluate;
+    }
+
+    @Override
+    public Executor visitVarStmt(Stmt.Var stmt) {
+        Symbol name = stmt.name.symbol;
+        if (stmt.initializer == null) {
+            return environment -> {
+                environment.define(name, null);
+                return NORMAL;
+            };
+        }
+        Evaluator initializer = compile(stmt.initializer);
+        return environment -> {
+            environment.define(name, initializer.evaluate(environment));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Executor visitWhileStmt(Stmt.While stmt) {
+        Evaluator condition = compile(stmt.condition);
+        Executor body = compile(stmt.body);
+        // 没有增量表达式时编译为什么都不做的闭包，循环中不需要再判断
+        Evaluator increment = stmt.increment == null ? environment -> null : compile(stmt.increment);
+        return environment -> {
+            while (Interpreter.isTruthy(condition.evaluate(environment))) {
+                Object result = body.execute(environment);
+                if (result == BREAK) {
+                    break;
+                }
+                if (result != NORMAL && result != CONTINUE) {
+                    return result;
+                }
+                increment.evaluate(environment);
+            }
+            return NORMAL;
+        };
+    }
+}
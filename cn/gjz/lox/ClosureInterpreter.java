@@ -0,0 +1,40 @@
+package cn.gjz.lox;
+
+import java.util.List;
+
+/**
+ * 闭包编译引擎：先把整个程序编译为预先绑定好的Java闭包，再直接调用这些闭包执行程序
+ * 与树遍历解释器共享全局环境、本地函数以及LoxFunction、LoxClass、LoxInstance等运行时对象
+ */
+
+public class ClosureInterpreter extends Interpreter {
+
+    private final ClosureCompiler compiler = new ClosureCompiler(this);
+
+    @Override
+    public void interpret(List<Stmt> statements) {
+        ClosureCompiler.Executor program = compiler.compile(statements);
+        try {
+            program.execute(globals);
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    // 模块的顶层代码同样先编译为闭包
+    @Override
+    void executeModule(List<Stmt> statements) {
+        compiler.compile(statements).execute(globals);
+    }
+
+    // 函数体在编译函数声明时已经编译好，函数体正常执行完毕时隐式地返回nil
+    // 从快照恢复的函数还没有编译，第一次调用时编译
+    @Override
+    Object executeBody(Stmt.Function declaration, Environment environment) {
+        if (declaration.closure == null) {
+            compiler.compileBody(declaration);
+        }
+        Object result = declaration.closure.execute(environment);
+        return result == ClosureCompiler.NORMAL ? null : result;
+    }
+}
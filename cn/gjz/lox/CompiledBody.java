@@ -0,0 +1,11 @@
+package cn.gjz.lox;
+
+/**
+ * 执行引擎编译好的函数体，在函数的环境中执行，返回return的值或者完成信号
+ * 节点解释器的节点树、闭包编译引擎的闭包和JIT生成的类都实现这个接口，语法树只通过它引用各个引擎的编译结果，
+ * 预先编译的jar沿着语法树查找运行时类时不会把这些引擎带进来
+ */
+
+interface CompiledBody {
+    Object execute(Environment environment);
+}
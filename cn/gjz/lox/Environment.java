@@ -1,70 +1,169 @@
 package cn.gjz.lox;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
- * 变量与值之间的绑定关系，键是变量名称，值就是变量的值
+ * 变量与值之间的绑定关系
+ * 全局作用域按变量名称保存变量；局部作用域中变量的位置已经由Resolver静态确定，按槽位保存在数组中
  */
 
 public class Environment {
 
+    private static final Object[] EMPTY = new Object[0];
+
+    // 节点解释器把数字类型的局部变量以未装箱的形式保存在doubles数组中，并在slots的对应位置放置这个标记
+    // 只有节点解释器会写入这个标记，树遍历解释器使用的getAt()不需要检查它
+    static final Object UNBOXED = new Object();
+
     // 该引用指的是上一层environment
     final Environment enclosing;
 
-    private final Map<String, Object> values = new HashMap<>();
+    // 全局变量，只有全局环境才有这个map，以驻留的符号为键
+    private final Map<Symbol, Object> values;
+
+    // 局部变量，下标就是Resolver为变量分配的槽位
+    private Object[] slots;
+    // 已经定义的局部变量个数
+    private int count = 0;
+    // 未装箱的数字局部变量，第一次写入时才分配
+    private double[] doubles;
 
     Environment() {
         enclosing = null;
+        values = new HashMap<>();
+        slots = EMPTY;
+        if (Metrics.ENABLED) {
+            Metrics.environment();
+        }
     }
 
     Environment(Environment enclosing) {
         this.enclosing = enclosing;
+        values = null;
+        slots = EMPTY;
+        if (Metrics.ENABLED) {
+            Metrics.environment();
+        }
     }
 
-    // 返回与变量名称绑定的变量
-    public Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
+    // 预先知道局部变量个数时(例如函数参数)直接分配好数组
+    Environment(Environment enclosing, int capacity) {
+        this.enclosing = enclosing;
+        values = null;
+        slots = capacity == 0 ? EMPTY : new Object[capacity];
+        if (Metrics.ENABLED) {
+            Metrics.environment();
         }
-        // 如果当前环境中没有找到变量，就在外围环境中尝试,递归地重复该操作，最终会遍历完整个链路
-        if (enclosing != null) {
-            return enclosing.get(name);
+    }
+
+    // 返回与变量名称绑定的全局变量
+    public Object get(Token name) {
+        Object value = values.get(name.symbol);
+        if (value != null || values.containsKey(name.symbol)) {
+            return value;
         }
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
 
-    // 赋值操作不允许创建新变量
+    // 全局变量的赋值操作不允许创建新变量
     void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
-        }
-        // 如果变量不在此环境中，它会递归地检查外围环境
-        if (enclosing != null) {
-            enclosing.assign(name, value);
+        if (values.containsKey(name.symbol)) {
+            values.put(name.symbol, value);
             return;
         }
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
 
     // 变量定义操作
-    public void define(String name, Object value) {
-        values.put(name, value);
+    // 局部变量按照声明的顺序依次占用槽位，与Resolver中分配槽位的顺序一致，所以直接追加到数组末尾即可
+    public void define(Symbol name, Object value) {
+        if (values != null) {
+            values.put(name, value);
+            return;
+        }
+        if (count == slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(4, count * 2));
+        }
+        slots[count++] = value;
+    }
+
+    // getAt()对应get() 返回对应环境中指定槽位的变量值
+    Object getAt(int distance, int slot) {
+        return ancestor(distance).slots[slot];
+    }
+
+    // assignAt()对应assign() 遍历固定数量的环境，然后在指定槽位中塞入新的值
+    void assignAt(int distance, int slot, Object value) {
+        ancestor(distance).slots[slot] = value;
+    }
+
+    // 以下方法供节点解释器使用
+    // 定义一个数字类型的变量，局部变量不装箱
+    void defineDouble(Symbol name, double value) {
+        if (values != null) {
+            values.put(name, value);
+            return;
+        }
+        define(name, UNBOXED);
+        doubles()[count - 1] = value;
+    }
+
+    // 读取局部变量，未装箱的数字在这里装箱
+    Object getValueAt(int distance, int slot) {
+        Environment environment = ancestor(distance);
+        Object value = environment.slots[slot];
+        if (value == UNBOXED) {
+            return environment.doubles[slot];
+        }
+        return value;
+    }
+
+    // 以数字的形式读取局部变量，变量的值不是数字时抛出UnexpectedResultException
+    double getDoubleAt(int distance, int slot) throws UnexpectedResultException {
+        Environment environment = ancestor(distance);
+        Object value = environment.slots[slot];
+        if (value == UNBOXED) {
+            return environment.doubles[slot];
+        }
+        if (value instanceof Double) {
+            return (double) value;
+        }
+        throw new UnexpectedResultException(value);
     }
 
-    // getAt()对应get() 返回对应环境map中的变量值
-    Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+    // 以未装箱的形式给局部变量赋值
+    void assignDoubleAt(int distance, int slot, double value) {
+        Environment environment = ancestor(distance);
+        environment.doubles()[slot] = value;
+        environment.slots[slot] = UNBOXED;
     }
 
-    // assignAt()对应assign() 遍历固定数量的环境，然后在其map中塞入新的值
-    void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
+    // doubles数组与slots数组保持相同的长度
+    private double[] doubles() {
+        if (doubles == null || doubles.length < slots.length) {
+            doubles = doubles == null ? new double[slots.length] : Arrays.copyOf(doubles, slots.length);
+        }
+        return doubles;
+    }
+
+    // 以下方法供快照使用
+    // 全局变量，局部环境返回null
+    Map<Symbol, Object> globalValues() {
+        return values;
+    }
+
+    // 已经定义的局部变量个数
+    int size() {
+        return count;
     }
 
     // 直达链路中包含该变量的环境
     Environment ancestor(int distance) {
+        if (Metrics.ENABLED) {
+            Metrics.ancestor(distance);
+        }
         Environment environment = this;
         for (int i = 0; i < distance; i++) {
             environment = environment.enclosing;
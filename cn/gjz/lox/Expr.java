@@ -2,8 +2,8 @@ package cn.gjz.lox;
 
 import java.util.List;
 
-abstract class Expr {
-    interface Visitor<R> {
+public abstract class Expr {
+    public interface Visitor<R> {
         R visitAssignExpr(Assign expr);
 
         R visitBinaryExpr(Binary expr);
@@ -30,12 +30,14 @@ abstract class Expr {
 
     }
 
-    abstract <R> R accept(Visitor<R> visitor);
+    public abstract <R> R accept(Visitor<R> visitor);
 
-    static class Assign extends Expr {
+    public static class Assign extends Expr {
 
-        final Token name;
-        final Expr value;
+        public final Token name;
+        public final Expr value;
+        public int depth = -1;
+        public int slot = -1;
 
         Assign(Token name, Expr value) {
             this.name = name;
@@ -43,16 +45,16 @@ abstract class Expr {
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitAssignExpr(this);
         }
     }
 
-    static class Binary extends Expr {
+    public static class Binary extends Expr {
 
-        final Expr left;
-        final Token operator;
-        final Expr right;
+        public final Expr left;
+        public final Token operator;
+        public final Expr right;
 
         Binary(Expr left, Token operator, Expr right) {
             this.left = left;
@@ -61,16 +63,16 @@ abstract class Expr {
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitBinaryExpr(this);
         }
     }
 
-    static class Call extends Expr {
+    public static class Call extends Expr {
 
-        final Expr callee;
-        final Token paren;
-        final List<Expr> arguments;
+        public final Expr callee;
+        public final Token paren;
+        public final List<Expr> arguments;
 
         Call(Expr callee, Token paren, List<Expr> arguments) {
             this.callee = callee;
@@ -79,15 +81,16 @@ abstract class Expr {
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitCallExpr(this);
         }
     }
 
-    static class Get extends Expr {
+    public static class Get extends Expr {
 
-        final Expr object;
-        final Token name;
+        public final Expr object;
+        public final Token name;
+        public PropertyCache cache = new PropertyCache();
 
         Get(Expr object, Token name) {
             this.object = object;
@@ -95,44 +98,44 @@ abstract class Expr {
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitGetExpr(this);
         }
     }
 
-    static class Grouping extends Expr {
+    public static class Grouping extends Expr {
 
-        final Expr expression;
+        public final Expr expression;
 
         Grouping(Expr expression) {
             this.expression = expression;
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitGroupingExpr(this);
         }
     }
 
-    static class Literal extends Expr {
+    public static class Literal extends Expr {
 
-        final Object value;
+        public final Object value;
 
         Literal(Object value) {
             this.value = value;
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitLiteralExpr(this);
         }
     }
 
-    static class Logical extends Expr {
+    public static class Logical extends Expr {
 
-        final Expr left;
-        final Token operator;
-        final Expr right;
+        public final Expr left;
+        public final Token operator;
+        public final Expr right;
 
         Logical(Expr left, Token operator, Expr right) {
             this.left = left;
@@ -141,16 +144,17 @@ abstract class Expr {
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitLogicalExpr(this);
         }
     }
 
-    static class Set extends Expr {
+    public static class Set extends Expr {
 
-        final Expr object;
-        final Token name;
-        final Expr value;
+        public final Expr object;
+        public final Token name;
+        public final Expr value;
+        public PropertyCache cache = new PropertyCache();
 
         Set(Expr object, Token name, Expr value) {
             this.object = object;
@@ -159,15 +163,19 @@ abstract class Expr {
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitSetExpr(this);
         }
     }
 
-    static class Super extends Expr {
+    public static class Super extends Expr {
 
-        final Token keyword;
-        final Token method;
+        public final Token keyword;
+        public final Token method;
+        public int depth = -1;
+        public int slot = -1;
+        public LoxClass superclass = null;
+        public LoxFunction target = null;
 
         Super(Token keyword, Token method) {
             this.keyword = keyword;
@@ -175,29 +183,31 @@ abstract class Expr {
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitSuperExpr(this);
         }
     }
 
-    static class This extends Expr {
+    public static class This extends Expr {
 
-        final Token keyword;
+        public final Token keyword;
+        public int depth = -1;
+        public int slot = -1;
 
         This(Token keyword) {
             this.keyword = keyword;
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitThisExpr(this);
         }
     }
 
-    static class Unary extends Expr {
+    public static class Unary extends Expr {
 
-        final Token operator;
-        final Expr right;
+        public final Token operator;
+        public final Expr right;
 
         Unary(Token operator, Expr right) {
             this.operator = operator;
@@ -205,21 +215,23 @@ abstract class Expr {
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitUnaryExpr(this);
         }
     }
 
-    static class Variable extends Expr {
+    public static class Variable extends Expr {
 
-        final Token name;
+        public final Token name;
+        public int depth = -1;
+        public int slot = -1;
 
         Variable(Token name) {
             this.name = name;
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitVariableExpr(this);
         }
     }
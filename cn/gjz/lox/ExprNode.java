@@ -0,0 +1,867 @@
+package cn.gjz.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 节点解释器中的表达式节点
+ * 二元、一元和逻辑表达式节点一开始处于未初始化状态，第一次求值时根据见到的操作数类型把自己重写为特化的节点
+ * 特化为数字的节点通过executeDouble()直接返回未装箱的double，遇到不符合特化的类型时把自己重写为通用节点
+ */
+
+abstract class ExprNode extends Node {
+
+    // 通用的求值方法
+    abstract Object execute(Environment environment);
+
+    // 期望结果是数字时调用，结果不是数字时抛出UnexpectedResultException并带上实际的结果
+    double executeDouble(Environment environment) throws UnexpectedResultException {
+        Object value = execute(environment);
+        if (value instanceof Double) {
+            return (double) value;
+        }
+        throw new UnexpectedResultException(value);
+    }
+
+    // 期望结果是布尔值时调用
+    boolean executeBoolean(Environment environment) throws UnexpectedResultException {
+        Object value = execute(environment);
+        if (value instanceof Boolean) {
+            return (boolean) value;
+        }
+        throw new UnexpectedResultException(value);
+    }
+
+    // 作为if、while的条件求值
+    boolean executeCondition(Environment environment) {
+        return Interpreter.isTruthy(execute(environment));
+    }
+
+    // 结果不会被使用时(表达式语句)求值
+    void executeVoid(Environment environment) {
+        execute(environment);
+    }
+
+    // 依次对每个参数求值
+    static List<Object> executeArguments(ExprNode[] arguments, Environment environment) {
+        List<Object> values = new ArrayList<>(arguments.length);
+        for (ExprNode argument : arguments) {
+            values.add(argument.execute(environment));
+        }
+        return values;
+    }
+
+    // 替换数组中的子节点
+    static void replaceIn(ExprNode[] children, Node oldChild, Node newChild) {
+        for (int i = 0; i < children.length; i++) {
+            if (children[i] == oldChild) {
+                children[i] = (ExprNode) newChild;
+                return;
+            }
+        }
+    }
+
+    // 字面量，数字字面量预先拆箱
+    static class Literal extends ExprNode {
+        private final Object value;
+        private final boolean isNumber;
+        private final double number;
+
+        Literal(Object value) {
+            this.value = value;
+            this.isNumber = value instanceof Double;
+            this.number = isNumber ? (double) value : 0;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return value;
+        }
+
+        @Override
+        double executeDouble(Environment environment) throws UnexpectedResultException {
+            if (isNumber) {
+                return number;
+            }
+            throw new UnexpectedResultException(value);
+        }
+    }
+
+    // 读取局部变量，使用Resolver计算出的距离和槽位
+    static class LocalRead extends ExprNode {
+        private final int depth;
+        private final int slot;
+
+        LocalRead(int depth, int slot) {
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return environment.getValueAt(depth, slot);
+        }
+
+        @Override
+        double executeDouble(Environment environment) throws UnexpectedResultException {
+            return environment.getDoubleAt(depth, slot);
+        }
+    }
+
+    // 读取全局变量
+    static class GlobalRead extends ExprNode {
+        private final Token name;
+        private final Environment globals;
+
+        GlobalRead(Token name, Environment globals) {
+            this.name = name;
+            this.globals = globals;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return globals.get(name);
+        }
+    }
+
+    // 给局部变量赋值，只要见到的值都是数字就以未装箱的形式保存，见到其他类型的值之后不再尝试
+    static class LocalAssign extends ExprNode {
+        private final int depth;
+        private final int slot;
+        private ExprNode value;
+        private boolean generic = false;
+
+        LocalAssign(int depth, int slot, ExprNode value) {
+            this.depth = depth;
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            if (generic) {
+                Object result = value.execute(environment);
+                environment.assignAt(depth, slot, result);
+                return result;
+            }
+            try {
+                return executeDouble(environment);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        double executeDouble(Environment environment) throws UnexpectedResultException {
+            if (generic) {
+                return super.executeDouble(environment);
+            }
+            try {
+                double result = value.executeDouble(environment);
+                environment.assignDoubleAt(depth, slot, result);
+                return result;
+            } catch (UnexpectedResultException e) {
+                generic = true;
+                environment.assignAt(depth, slot, e.result);
+                throw e;
+            }
+        }
+
+        @Override
+        void executeVoid(Environment environment) {
+            if (generic) {
+                execute(environment);
+                return;
+            }
+            try {
+                executeDouble(environment);
+            } catch (UnexpectedResultException ignored) {
+                // 值已经以装箱的形式保存
+            }
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            value = (ExprNode) newChild;
+        }
+    }
+
+    // 给全局变量赋值
+    static class GlobalAssign extends ExprNode {
+        private final Token name;
+        private final Environment globals;
+        private ExprNode value;
+
+        GlobalAssign(Token name, Environment globals, ExprNode value) {
+            this.name = name;
+            this.globals = globals;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object result = value.execute(environment);
+            globals.assign(name, result);
+            return result;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            value = (ExprNode) newChild;
+        }
+    }
+
+    // 二元表达式节点的公共部分
+    abstract static class Binary extends ExprNode {
+        final Token operator;
+        ExprNode left;
+        ExprNode right;
+
+        Binary(Token operator, ExprNode left, ExprNode right) {
+            this.operator = operator;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        // 重写为通用节点，并用通用的方式完成这一次运算
+        Object generalize(Object leftValue, Object rightValue) {
+            if (!replaced) {
+                replace(new GenericBinary(operator, left, right));
+            }
+            return Interpreter.binaryOperation(operator, leftValue, rightValue);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (left == oldChild) {
+                left = (ExprNode) newChild;
+            } else if (right == oldChild) {
+                right = (ExprNode) newChild;
+            }
+        }
+    }
+
+    // 还没有见过操作数的二元表达式
+    static class UninitializedBinary extends Binary {
+        UninitializedBinary(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object leftValue = left.execute(environment);
+            Object rightValue = right.execute(environment);
+            if (!replaced) {
+                replace(specialize(leftValue, rightValue));
+            }
+            return Interpreter.binaryOperation(operator, leftValue, rightValue);
+        }
+
+        // 根据操作符和第一次见到的操作数类型选择特化的节点
+        private Binary specialize(Object leftValue, Object rightValue) {
+            if (leftValue instanceof Double && rightValue instanceof Double) {
+                switch (operator.type) {
+                    case PLUS:
+                    case MINUS:
+                    case STAR:
+                    case SLASH:
+                        return new DoubleArithmetic(operator, left, right);
+                    default:
+                        return new DoubleComparison(operator, left, right);
+                }
+            }
+            if (operator.type == TokenType.PLUS && LoxString.isString(leftValue) && LoxString.isString(rightValue)) {
+                return new StringConcat(operator, left, right);
+            }
+            return new GenericBinary(operator, left, right);
+        }
+    }
+
+    // 两个数字的算术运算，结果不装箱
+    static class DoubleArithmetic extends Binary {
+        DoubleArithmetic(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            try {
+                return executeDouble(environment);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        double executeDouble(Environment environment) throws UnexpectedResultException {
+            double leftValue;
+            try {
+                leftValue = left.executeDouble(environment);
+            } catch (UnexpectedResultException e) {
+                return expectDouble(generalize(e.result, right.execute(environment)));
+            }
+            double rightValue;
+            try {
+                rightValue = right.executeDouble(environment);
+            } catch (UnexpectedResultException e) {
+                return expectDouble(generalize(leftValue, e.result));
+            }
+            switch (operator.type) {
+                case PLUS:
+                    return leftValue + rightValue;
+                case MINUS:
+                    return leftValue - rightValue;
+                case STAR:
+                    return leftValue * rightValue;
+                default:
+                    return leftValue / rightValue;
+            }
+        }
+
+        private static double expectDouble(Object value) throws UnexpectedResultException {
+            if (value instanceof Double) {
+                return (double) value;
+            }
+            throw new UnexpectedResultException(value);
+        }
+    }
+
+    // 两个数字的比较和相等判断，结果是未装箱的布尔值
+    static class DoubleComparison extends Binary {
+        DoubleComparison(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return executeBoolean(environment);
+        }
+
+        @Override
+        boolean executeCondition(Environment environment) {
+            return executeBoolean(environment);
+        }
+
+        @Override
+        boolean executeBoolean(Environment environment) {
+            double leftValue;
+            try {
+                leftValue = left.executeDouble(environment);
+            } catch (UnexpectedResultException e) {
+                return (boolean) generalize(e.result, right.execute(environment));
+            }
+            double rightValue;
+            try {
+                rightValue = right.executeDouble(environment);
+            } catch (UnexpectedResultException e) {
+                return (boolean) generalize(leftValue, e.result);
+            }
+            switch (operator.type) {
+                case GREATER:
+                    return leftValue > rightValue;
+                case GREATER_EQUAL:
+                    return leftValue >= rightValue;
+                case LESS:
+                    return leftValue < rightValue;
+                case LESS_EQUAL:
+                    return leftValue <= rightValue;
+                case EQUAL_EQUAL:
+                    // 与Double.equals()的语义保持一致
+                    return Double.doubleToLongBits(leftValue) == Double.doubleToLongBits(rightValue);
+                default:
+                    return Double.doubleToLongBits(leftValue) != Double.doubleToLongBits(rightValue);
+            }
+        }
+    }
+
+    // 两个字符串的拼接
+    static class StringConcat extends Binary {
+        StringConcat(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object leftValue = left.execute(environment);
+            Object rightValue = right.execute(environment);
+            if (LoxString.isString(leftValue) && LoxString.isString(rightValue)) {
+                return LoxString.concat(leftValue, rightValue);
+            }
+            return generalize(leftValue, rightValue);
+        }
+    }
+
+    // 操作数类型不固定的二元表达式，与树遍历解释器的求值方式相同
+    static class GenericBinary extends Binary {
+        GenericBinary(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object leftValue = left.execute(environment);
+            Object rightValue = right.execute(environment);
+            return Interpreter.binaryOperation(operator, leftValue, rightValue);
+        }
+    }
+
+    // 一元表达式节点的公共部分
+    abstract static class Unary extends ExprNode {
+        final Token operator;
+        ExprNode operand;
+
+        Unary(Token operator, ExprNode operand) {
+            this.operator = operator;
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            operand = (ExprNode) newChild;
+        }
+    }
+
+    // 还没有见过操作数的取负表达式
+    static class UninitializedNegate extends Unary {
+        UninitializedNegate(Token operator, ExprNode operand) {
+            super(operator, operand);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object value = operand.execute(environment);
+            if (replaced) {
+                // 递归求值时内层已经完成了替换
+            } else if (value instanceof Double) {
+                replace(new DoubleNegate(operator, operand));
+            } else {
+                replace(new GenericUnary(operator, operand));
+            }
+            return Interpreter.unaryOperation(operator, value);
+        }
+    }
+
+    // 数字取负，结果不装箱
+    static class DoubleNegate extends Unary {
+        DoubleNegate(Token operator, ExprNode operand) {
+            super(operator, operand);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            try {
+                return executeDouble(environment);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        double executeDouble(Environment environment) throws UnexpectedResultException {
+            try {
+                return -operand.executeDouble(environment);
+            } catch (UnexpectedResultException e) {
+                if (!replaced) {
+                    replace(new GenericUnary(operator, operand));
+                }
+                // 对非数字取负总会报告运行时错误
+                return (double) Interpreter.unaryOperation(operator, e.result);
+            }
+        }
+    }
+
+    // 逻辑非，结果总是布尔值，不需要特化
+    static class Not extends Unary {
+        Not(Token operator, ExprNode operand) {
+            super(operator, operand);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return executeBoolean(environment);
+        }
+
+        @Override
+        boolean executeCondition(Environment environment) {
+            return executeBoolean(environment);
+        }
+
+        @Override
+        boolean executeBoolean(Environment environment) {
+            return !operand.executeCondition(environment);
+        }
+    }
+
+    // 操作数类型不固定的一元表达式
+    static class GenericUnary extends Unary {
+        GenericUnary(Token operator, ExprNode operand) {
+            super(operator, operand);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return Interpreter.unaryOperation(operator, operand.execute(environment));
+        }
+    }
+
+    // 逻辑表达式节点的公共部分
+    abstract static class Logical extends ExprNode {
+        final Token operator;
+        ExprNode left;
+        ExprNode right;
+
+        Logical(Token operator, ExprNode left, ExprNode right) {
+            this.operator = operator;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        // 左操作数的值能否使表达式短路
+        boolean shortCircuits(boolean leftValue) {
+            return operator.type == TokenType.OR ? leftValue : !leftValue;
+        }
+
+        // 重写为通用节点
+        void generalize() {
+            if (!replaced) {
+                replace(new GenericLogical(operator, left, right));
+            }
+        }
+
+        // 已经得到左操作数的值，按通用的方式完成求值
+        Object finish(Object leftValue, Environment environment) {
+            if (shortCircuits(Interpreter.isTruthy(leftValue))) {
+                return leftValue;
+            }
+            return right.execute(environment);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (left == oldChild) {
+                left = (ExprNode) newChild;
+            } else if (right == oldChild) {
+                right = (ExprNode) newChild;
+            }
+        }
+    }
+
+    // 还没有见过操作数的逻辑表达式
+    static class UninitializedLogical extends Logical {
+        UninitializedLogical(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object leftValue = left.execute(environment);
+            Object result = finish(leftValue, environment);
+            // 左右操作数(被短路时只有左操作数)都是布尔值时特化为布尔逻辑运算
+            if (replaced) {
+                // 递归求值时内层已经完成了替换
+            } else if (leftValue instanceof Boolean && result instanceof Boolean) {
+                replace(new BooleanLogical(operator, left, right));
+            } else {
+                replace(new GenericLogical(operator, left, right));
+            }
+            return result;
+        }
+    }
+
+    // 两个布尔值的逻辑运算
+    static class BooleanLogical extends Logical {
+        BooleanLogical(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            try {
+                return executeBoolean(environment);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        boolean executeCondition(Environment environment) {
+            try {
+                return executeBoolean(environment);
+            } catch (UnexpectedResultException e) {
+                return Interpreter.isTruthy(e.result);
+            }
+        }
+
+        @Override
+        boolean executeBoolean(Environment environment) throws UnexpectedResultException {
+            boolean leftValue;
+            try {
+                leftValue = left.executeBoolean(environment);
+            } catch (UnexpectedResultException e) {
+                generalize();
+                Object result = finish(e.result, environment);
+                if (result instanceof Boolean) {
+                    return (boolean) result;
+                }
+                throw new UnexpectedResultException(result);
+            }
+            if (shortCircuits(leftValue)) {
+                return leftValue;
+            }
+            try {
+                return right.executeBoolean(environment);
+            } catch (UnexpectedResultException e) {
+                generalize();
+                throw e;
+            }
+        }
+    }
+
+    // 操作数类型不固定的逻辑表达式
+    static class GenericLogical extends Logical {
+        GenericLogical(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return finish(left.execute(environment), environment);
+        }
+    }
+
+    // 函数调用，tail为true时是return语句中的尾调用，Lox函数返回TailCall交给LoxFunction的蹦床执行
+    static class Call extends ExprNode {
+        private final Interpreter interpreter;
+        private final Token paren;
+        private final boolean tail;
+        private ExprNode callee;
+        private final ExprNode[] arguments;
+
+        Call(Interpreter interpreter, ExprNode callee, Token paren, ExprNode[] arguments, boolean tail) {
+            this.interpreter = interpreter;
+            this.callee = adopt(callee);
+            this.paren = paren;
+            this.arguments = arguments;
+            this.tail = tail;
+            for (ExprNode argument : arguments) {
+                adopt(argument);
+            }
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object function = callee.execute(environment);
+            List<Object> values = executeArguments(arguments, environment);
+            if (!(function instanceof LoxCallable)) {
+                throw new RuntimeError(paren, "Can only call functions and classes.");
+            }
+            LoxCallable callable = (LoxCallable) function;
+            Interpreter.checkArity(paren, callable, values);
+            if (tail && callable instanceof LoxFunction) {
+                return ((LoxFunction) callable).tailCall(values);
+            }
+            try {
+                return callable.call(interpreter, values);
+            } catch (StackOverflowError error) {
+                throw Interpreter.stackOverflow(paren);
+            }
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (callee == oldChild) {
+                callee = (ExprNode) newChild;
+            } else {
+                replaceIn(arguments, oldChild, newChild);
+            }
+        }
+    }
+
+    // 方法调用obj.method(args)，不创建绑定方法
+    static class Invoke extends ExprNode {
+        private final Interpreter interpreter;
+        private final Token name;
+        private final Token paren;
+        private final boolean tail;
+        private ExprNode object;
+        private final ExprNode[] arguments;
+        private final PropertyCache cache = new PropertyCache();
+
+        Invoke(Interpreter interpreter, ExprNode object, Token name, Token paren, ExprNode[] arguments, boolean tail) {
+            this.interpreter = interpreter;
+            this.object = adopt(object);
+            this.name = name;
+            this.paren = paren;
+            this.arguments = arguments;
+            this.tail = tail;
+            for (ExprNode argument : arguments) {
+                adopt(argument);
+            }
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object receiver = object.execute(environment);
+            if (!(receiver instanceof LoxInstance)) {
+                throw new RuntimeError(name, "Only instances have properties.");
+            }
+            LoxInstance instance = (LoxInstance) receiver;
+            LoxFunction method = cache.method(instance, name);
+            if (method != null) {
+                List<Object> values = executeArguments(arguments, environment);
+                Interpreter.checkArity(paren, method, values);
+                if (tail) {
+                    return method.tailCall(instance, values);
+                }
+                try {
+                    return method.invoke(interpreter, instance, values);
+                } catch (StackOverflowError error) {
+                    throw Interpreter.stackOverflow(paren);
+                }
+            }
+            // 属性是字段，调用字段中保存的值
+            Object function = cache.get(instance, name);
+            List<Object> values = executeArguments(arguments, environment);
+            if (!(function instanceof LoxCallable)) {
+                throw new RuntimeError(paren, "Can only call functions and classes.");
+            }
+            LoxCallable callable = (LoxCallable) function;
+            Interpreter.checkArity(paren, callable, values);
+            if (tail && callable instanceof LoxFunction) {
+                return ((LoxFunction) callable).tailCall(values);
+            }
+            try {
+                return callable.call(interpreter, values);
+            } catch (StackOverflowError error) {
+                throw Interpreter.stackOverflow(paren);
+            }
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (object == oldChild) {
+                object = (ExprNode) newChild;
+            } else {
+                replaceIn(arguments, oldChild, newChild);
+            }
+        }
+    }
+
+    // super.method(args)
+    static class SuperInvoke extends ExprNode {
+        private final Interpreter interpreter;
+        private final Expr.Super expr;
+        private final Token paren;
+        private final boolean tail;
+        private final ExprNode[] arguments;
+
+        SuperInvoke(Interpreter interpreter, Expr.Super expr, Token paren, ExprNode[] arguments, boolean tail) {
+            this.interpreter = interpreter;
+            this.expr = expr;
+            this.paren = paren;
+            this.arguments = arguments;
+            this.tail = tail;
+            for (ExprNode argument : arguments) {
+                adopt(argument);
+            }
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            LoxClass superClass = (LoxClass) environment.getAt(expr.depth, expr.slot);
+            LoxInstance object = (LoxInstance) environment.getAt(expr.depth - 1, 0);
+            LoxFunction method = Interpreter.findSuperMethod(expr, superClass);
+            List<Object> values = executeArguments(arguments, environment);
+            Interpreter.checkArity(paren, method, values);
+            if (tail) {
+                return method.tailCall(object, values);
+            }
+            try {
+                return method.invoke(interpreter, object, values);
+            } catch (StackOverflowError error) {
+                throw Interpreter.stackOverflow(paren);
+            }
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            replaceIn(arguments, oldChild, newChild);
+        }
+    }
+
+    // 读取属性
+    static class Get extends ExprNode {
+        private final Token name;
+        private ExprNode object;
+        private final PropertyCache cache = new PropertyCache();
+
+        Get(ExprNode object, Token name) {
+            this.object = adopt(object);
+            this.name = name;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object value = object.execute(environment);
+            if (value instanceof LoxInstance) {
+                return cache.get((LoxInstance) value, name);
+            }
+            throw new RuntimeError(name, "Only instances have properties.");
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            object = (ExprNode) newChild;
+        }
+    }
+
+    // 写入属性
+    static class Set extends ExprNode {
+        private final Token name;
+        private ExprNode object;
+        private ExprNode value;
+        private final PropertyCache cache = new PropertyCache();
+
+        Set(ExprNode object, Token name, ExprNode value) {
+            this.object = adopt(object);
+            this.name = name;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object target = object.execute(environment);
+            if (!(target instanceof LoxInstance)) {
+                throw new RuntimeError(name, "Only instances have fields.");
+            }
+            Object result = value.execute(environment);
+            cache.set((LoxInstance) target, name, result);
+            return result;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (object == oldChild) {
+                object = (ExprNode) newChild;
+            } else if (value == oldChild) {
+                value = (ExprNode) newChild;
+            }
+        }
+    }
+
+    // 把super.method作为值使用
+    static class Super extends ExprNode {
+        private final Expr.Super expr;
+
+        Super(Expr.Super expr) {
+            this.expr = expr;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            LoxClass superClass = (LoxClass) environment.getAt(expr.depth, expr.slot);
+            LoxInstance object = (LoxInstance) environment.getAt(expr.depth - 1, 0);
+            return Interpreter.findSuperMethod(expr, superClass).bind(object);
+        }
+    }
+}
@@ -1,15 +1,24 @@
 package cn.gjz.lox;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * 解释器计算算数表达式的值
  */
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
+
+    // 语句执行完毕后的完成信号：正常结束、执行了break或者执行了continue
+    // 执行了return语句时返回要返回的值(可能是nil)，由外层语句逐层向上传递到函数体，不需要抛出异常
+    static final Object NORMAL = new Object();
+    static final Object BREAK = new Object();
+    static final Object CONTINUE = new Object();
 
     // 将变量留在内存中
     // private Environment environment = new Environment();
@@ -17,8 +26,10 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     final Environment globals = new Environment();
     // environment字段会随着进入和退出局部作用域而改变，会跟随当前环境
     private Environment environment = globals;
-    // 把解析信息存储在map中，将每个语法树节点与其解析的数据关联起来
-    private final Map<Expr, Integer> locals = new HashMap<>();
+    // 已经执行过的模块的路径，同一个模块在一个解释器中只执行一次
+    final Set<Path> imported = new HashSet<>();
+    // 本地函数，快照按名称记录本地函数，恢复时链接到这里的同名函数
+    final Map<String, LoxCallable> natives = new HashMap<>();
 
     // 实例化一个解释器时，将全局作用域中添加本地函数
     Interpreter() {
@@ -26,7 +37,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         // 一个本地函数，用于返回自某个固定时间点以来所经过的秒数，两次连续调用之间的差值可计算出两次调用之间经过了多少时间
         // clock()函数不接受参数，其元数为0
         // call()方法的实现是直接调用Java函数并将结果转换为以秒为单位的double值
-        globals.define("clock", new LoxCallable() {
+        defineNative("clock", new LoxCallable() {
             @Override
             public int arity() {
                 return 0;
@@ -44,6 +55,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         });
     }
 
+    private void defineNative(String name, LoxCallable function) {
+        natives.put(name, function);
+        globals.define(Symbol.of(name), function);
+    }
+
     // 解释器对外暴露的API(接受一组语句即一段程序)
     // public void interpret(Expr expresion) {
     //     try {
@@ -60,6 +76,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 execute(statement);
             }
         } catch (RuntimeError error) {
+            // 运行时错误直接中止程序，语法块和函数调用来不及恢复环境，在这里回到全局环境
+            environment = globals;
             Lox.runtimeError(error);
         }
     }
@@ -70,37 +88,42 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         // 后缀表达式 先计算左右子节点 再找父节点(当前节点)操作符
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
-        switch (expr.operator.type) {
+        return binaryOperation(expr.operator, left, right);
+    }
+
+    // 对已经求值的左右操作数执行二元运算
+    static Object binaryOperation(Token operator, Object left, Object right) {
+        switch (operator.type) {
             case PLUS:
                 // 数字加法
                 if (left instanceof Double && right instanceof Double) {
                     return (double) left + (double) right;
                 }
                 // 字符串拼接
-                if (left instanceof String && right instanceof String) {
-                    return (String) left + (String) right;
+                if (LoxString.isString(left) && LoxString.isString(right)) {
+                    return LoxString.concat(left, right);
                 }
-                throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+                throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
             case MINUS:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left - (double) right;
             case SLASH:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left / (double) right;
             case STAR:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left * (double) right;
             case GREATER:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left > (double) right;
             case GREATER_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left >= (double) right;
             case LESS:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left < (double) right;
             case LESS_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left <= (double) right;
             case BANG_EQUAL:
                 return !isEqual(left, right);
@@ -112,33 +135,94 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitCallExpr(Expr.Call expr) {
+        try {
+            return call(expr, false);
+        } catch (StackOverflowError error) {
+            throw stackOverflow(expr.paren);
+        }
+    }
+
+    // 递归过深导致Java栈溢出时，转换为指向调用位置的运行时错误
+    static RuntimeError stackOverflow(Token paren) {
+        return new RuntimeError(paren, "Stack overflow.");
+    }
+
+    // 执行调用表达式，tail为true时Lox函数不在这里调用，而是返回一个TailCall交给LoxFunction的蹦床执行
+    private Object call(Expr.Call expr, boolean tail) {
+        // obj.method(args)：被调用者是属性访问并且该属性是方法时，直接以obj作为this调用方法，不创建绑定方法
+        if (expr.callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get) expr.callee;
+            Object object = evaluate(get.object);
+            if (!(object instanceof LoxInstance)) {
+                throw new RuntimeError(get.name, "Only instances have properties.");
+            }
+            LoxInstance instance = (LoxInstance) object;
+            LoxFunction method = get.cache.method(instance, get.name);
+            if (method != null) {
+                List<Object> arguments = evaluateArguments(expr.arguments);
+                checkArity(expr.paren, method, arguments);
+                return tail ? method.tailCall(instance, arguments) : method.invoke(this, instance, arguments);
+            }
+            // 属性是字段，按普通调用处理字段中保存的值
+            return call(expr, get.cache.get(instance, get.name), tail);
+        }
+        // super.method(args)同理
+        if (expr.callee instanceof Expr.Super) {
+            Expr.Super superExpr = (Expr.Super) expr.callee;
+            LoxClass superClass = (LoxClass) environment.getAt(superExpr.depth, superExpr.slot);
+            LoxInstance object = (LoxInstance) environment.getAt(superExpr.depth - 1, 0);
+            LoxFunction method = findSuperMethod(superExpr, superClass);
+            List<Object> arguments = evaluateArguments(expr.arguments);
+            checkArity(expr.paren, method, arguments);
+            return tail ? method.tailCall(object, arguments) : method.invoke(this, object, arguments);
+        }
         // 对被调用者的表达式求值
-        Object callee = evaluate(expr.callee);
-        // 依次对每个参数表达式求值 将结果值存储在一个列表中
-        List<Object> arguments = new ArrayList<>();
-        for (Expr argument : expr.arguments) {
+        return call(expr, evaluate(expr.callee), tail);
+    }
+
+    // 依次对每个参数表达式求值 将结果值存储在一个列表中
+    private List<Object> evaluateArguments(List<Expr> argumentExprs) {
+        List<Object> arguments = new ArrayList<>(argumentExprs.size());
+        for (Expr argument : argumentExprs) {
             arguments.add(evaluate(argument));
         }
+        return arguments;
+    }
+
+    // 调用已经求值的被调用者
+    private Object call(Expr.Call expr, Object callee, boolean tail) {
+        List<Object> arguments = evaluateArguments(expr.arguments);
         // 检查掉能否背调用
         if (!(callee instanceof LoxCallable)) {
             throw new RuntimeError(expr.paren, "Can only call functions and classes.");
         }
         // 将被调用者转换为LoxCallable，对其调用call()方法来实现
         LoxCallable function = (LoxCallable) callee;
-        // 检查参数列表的长度是否与可调用方法的元数相符
-        if (arguments.size() != function.arity()) {
-            throw new RuntimeError(expr.paren, "Expected " + function.arity() + " arguments but got " + arguments.size() + ".");
+        checkArity(expr.paren, function, arguments);
+        // 类和本地函数的调用不会继续增长栈，直接调用
+        if (tail && function instanceof LoxFunction) {
+            return ((LoxFunction) function).tailCall(arguments);
         }
         return function.call(this, arguments);
     }
 
+    // 检查参数列表的长度是否与可调用方法的元数相符
+    // 各个引擎都在调用之前检查，性能分析时顺便记录调用所在的行
+    static void checkArity(Token paren, LoxCallable function, List<Object> arguments) {
+        if (arguments.size() != function.arity()) {
+            throw new RuntimeError(paren, "Expected " + function.arity() + " arguments but got " + arguments.size() + ".");
+        }
+        Profiler.calling(paren);
+    }
+
     @Override
     public Object visitGetExpr(Expr.Get expr) {
         // 对属性被访问的表达式求值(只有类的实例才具有属性)
         Object object = evaluate(expr.object);
         // 如果该对象是LoxInstance就要求它去查找该属性
         if (object instanceof LoxInstance) {
-            return ((LoxInstance) object).get(expr.name);
+            // 通过访问点上的内联缓存读取属性
+            return expr.cache.get((LoxInstance) object, expr.name);
         }
         throw new RuntimeError(expr.name, "Only instances have properties.");
     }
@@ -154,150 +238,214 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return expr.accept(this);
     }
 
-    // 处理语句,类似于处理表达式的evaluate()方法
-    private void execute(Stmt stmt) {
-        stmt.accept(this);
-    }
-
-    // 把解析信息存储在map中，将每个语法树节点与其解析的数据关联起来
-    void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+    // 处理语句,类似于处理表达式的evaluate()方法，返回语句的完成信号
+    private Object execute(Stmt stmt) {
+        if (Metrics.ENABLED) {
+            Metrics.statement();
+        }
+        return stmt.accept(this);
     }
 
-    // 在给定的环境上下文中执行一系列语句
-    public void executeBlock(List<Stmt> statemetns, Environment environment) {
+    // 在给定的环境上下文中执行一系列语句，遇到不是NORMAL的完成信号时停止执行并向外传递
+    // 运行时错误会中止整个程序，所以不需要用try/finally恢复环境
+    public Object executeBlock(List<Stmt> statemetns, Environment environment) {
         // 保存全局环境
         Environment previous = this.environment;
-        try {
-            // 向当前环境(要执行的代码的最内层作用域相对应的环境)
-            this.environment = environment;
-            // 执行所有的语句
-            for (Stmt statement : statemetns) {
-                execute(statement);
+        // 向当前环境(要执行的代码的最内层作用域相对应的环境)
+        this.environment = environment;
+        Object result = NORMAL;
+        // 执行所有的语句
+        for (Stmt statement : statemetns) {
+            result = execute(statement);
+            if (result != NORMAL) {
+                break;
             }
-        } finally {
-            // 恢复之前的环境
-            this.environment = previous;
         }
+        // 恢复之前的环境
+        this.environment = previous;
+        return result;
+    }
+
+    // 在函数调用的环境中执行函数体并返回函数的返回值，其他执行引擎可以覆盖这个方法，用自己的方式执行函数体
+    Object executeBody(Stmt.Function declaration, Environment environment) {
+        Object result = executeBlock(declaration.body, environment);
+        // 函数到达了函数体的末尾，而且没有遇到return语句，在这种情况下，隐式地返回nil
+        return result == NORMAL ? null : result;
     }
 
     // 语法块语义
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
+    public Object visitBlockStmt(Stmt.Block stmt) {
         // 要执行一个语法块，要先为该块作用域创建一个新的环境
-        executeBlock(stmt.statements, new Environment(environment));
-        return null;
+        return executeBlock(stmt.statements, new Environment(environment));
+    }
+
+    @Override
+    public Object visitBreakStmt(Stmt.Break stmt) {
+        return BREAK;
+    }
+
+    @Override
+    public Object visitContinueStmt(Stmt.Continue stmt) {
+        return CONTINUE;
     }
 
     // 解释类的声明
     @Override
-    public Void visitClassStmt(Stmt.Class stmt) {
+    public Object visitClassStmt(Stmt.Class stmt) {
         Object superClass = null;
         // 如果类中有父类表达式就对其求值
         if (stmt.superclass != null) {
             superClass = evaluate(stmt.superclass);
-            // 运行时必须检查希望作为父类的对象是否确实是一个类
-            if (!(superClass instanceof LoxClass)) {
-                throw new RuntimeError(stmt.superclass.name, "Superclass must be a class.");
-            }
         }
-        // 在当前环境中声明该类的名称
-        environment.define(stmt.name.lexeme, null);
-        // 当执行子类定义时，创建一个新环境
+        defineClass(stmt, superClass, environment);
+        return NORMAL;
+    }
+
+    // 创建类的运行时表示并在environment中定义类名，其他执行引擎对父类表达式求值之后也调用这个方法
+    static void defineClass(Stmt.Class stmt, Object superClass, Environment environment) {
+        // 运行时必须检查希望作为父类的对象是否确实是一个类
+        if (stmt.superclass != null && !(superClass instanceof LoxClass)) {
+            throw new RuntimeError(stmt.superclass.name, "Superclass must be a class.");
+        }
+        // 当执行子类定义时，为方法创建一个新环境，保存指向父类的引用
+        Environment methodEnvironment = environment;
         if (stmt.superclass != null) {
-            // 保存指向父类的引用
-            environment = new Environment(environment);
-            environment.define("super", superClass);
+            methodEnvironment = new Environment(environment);
+            methodEnvironment.define(Symbol.SUPER, superClass);
         }
         // 把类的语法节点转换为LoxClass 即类的运行时表示
-        Map<String, LoxFunction> methods = new HashMap<>();
+        Map<Symbol, LoxFunction> methods = new HashMap<>();
         // 把类的语法表示（其AST节点）变成它的运行时表示，对类中包含的方法进行这样的操作
         // 每个方法声明都会变成一个LoxFunction对象
         // 把所有这些都打包到一个map中，以方法名称作为键。这些数据存储在LoxClass中
         for (Stmt.Function method : stmt.methods) {
             // 对于方法来说检查其名称是否为init构造函数
-            LoxFunction function = new LoxFunction(method, environment, method.name.lexeme.equals("init"));
-            methods.put(method.name.lexeme, function);
+            LoxFunction function = new LoxFunction(method, methodEnvironment, method.name.symbol == Symbol.INIT, true, null);
+            methods.put(method.name.symbol, function);
         }
         LoxClass klass = new LoxClass(stmt.name.lexeme, (LoxClass) superClass, methods);
-        // 弹出父类环境
-        if (superClass != null) {
-            environment = environment.enclosing;
-        }
-        // 将类对象存储在之前声明的变量中
-        environment.assign(stmt.name, klass);
-        return null;
+        // 在当前环境中定义该类的名称
+        // 方法只有在类定义完成之后才可能被调用，所以在这里才定义类名不影响方法体引用类本身
+        environment.define(stmt.name.symbol, klass);
     }
 
-    // 语句不会产生值，因此visit方法的返回类型是Void
+    // 语句不会产生值，visit方法返回的是语句的完成信号
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
+    public Object visitExpressionStmt(Stmt.Expression stmt) {
         evaluate(stmt.expression);
-        return null;
+        return NORMAL;
     }
 
     // 封装了语法节点的LoxFunction实例
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
+    public Object visitFunctionStmt(Stmt.Function stmt) {
         // 对于实际的函数声明， isInitializer取值总是false
         LoxFunction function = new LoxFunction(stmt, environment, false);
-        environment.define(stmt.name.lexeme, function);
-        return null;
+        environment.define(stmt.name.symbol, function);
+        return NORMAL;
     }
 
     // 解释if语句
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
+    public Object visitIfStmt(Stmt.If stmt) {
         // 对if表达式进行求值
         if (isTruthy(evaluate(stmt.condition))) {
             // 执行if的then分支
-            execute(stmt.thenBranch);
+            return execute(stmt.thenBranch);
         } else if (stmt.elseBranch != null) {
             // 执行else的then分支
-            execute(stmt.elseBranch);
+            return execute(stmt.elseBranch);
+        }
+        return NORMAL;
+    }
+
+    // import语句只出现在顶层，模块的顶层代码直接在全局环境中执行
+    @Override
+    public Object visitImportStmt(Stmt.Import stmt) {
+        importModule(stmt);
+        return NORMAL;
+    }
+
+    // 第一次导入模块时执行模块的顶层代码，之后的导入什么也不做
+    // 执行之前就记录下来，循环导入时后导入的一方只能看到先导入的模块中已经执行的定义
+    // 性能分析时模块的顶层代码在影子栈中单独占一帧
+    void importModule(Stmt.Import stmt) {
+        LoxModule module = stmt.module;
+        if (!imported.add(module.path)) {
+            return;
+        }
+        if (!Profiler.enabled()) {
+            executeModule(module.statements());
+            return;
+        }
+        Profiler.enter(module.toString(), stmt.keyword.line);
+        try {
+            executeModule(module.statements());
+        } finally {
+            Profiler.exit();
+        }
+    }
+
+    // 在全局环境中执行模块的顶层代码，其他执行引擎转换为各自的形式再执行
+    void executeModule(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            execute(statement);
         }
-        return null;
     }
 
     // 用stringify方法转换为字符串，然后输出到stdout
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) {
+    public Object visitPrintStmt(Stmt.Print stmt) {
         // 计算中间的expression结果
         Object value = evaluate(stmt.expression);
         System.out.println(stringify(value));
-        return null;
+        return NORMAL;
     }
 
     // 如果有返回值，就对其求值，否则就使用nil
-    // 取这个值并将其封装在一个自定义的异常类中，并抛出该异常
+    // 返回值本身就是完成信号，由外层语句一直传递到executeBody()；尾调用返回的TailCall由LoxFunction执行
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
+    public Object visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tailCall) {
+            return call((Expr.Call) stmt.value, true);
+        }
         Object value = null;
         if (stmt.value != null) {
             value = evaluate(stmt.value);
         }
-        throw new Return(value);
+        return value;
     }
 
     // 对有初始化公式的变量进行求值并保存到environment中
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) {
+    public Object visitVarStmt(Stmt.Var stmt) {
         Object value = null;
         // 如果该变量有初始化式就对其求值
         if (stmt.initializer != null) {
             value = evaluate(stmt.initializer);
         }
-        environment.define(stmt.name.lexeme, value);
-        return null;
+        environment.define(stmt.name.symbol, value);
+        return NORMAL;
     }
 
     // 解析while表达式
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
+    public Object visitWhileStmt(Stmt.While stmt) {
         while (isTruthy(evaluate(stmt.condition))) {
-            execute(stmt.body);
+            Object result = execute(stmt.body);
+            if (result == BREAK) {
+                break;
+            }
+            // continue之后仍然执行增量表达式，return则结束循环并继续向外传递
+            if (result != NORMAL && result != CONTINUE) {
+                return result;
+            }
+            if (stmt.increment != null) {
+                evaluate(stmt.increment);
+            }
         }
-        return null;
+        return NORMAL;
     }
 
     // 对右侧表达式运算以获取值，然后将其保存到命名变量中
@@ -306,9 +454,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         Object value = evaluate(expr.value);
         // environment.assign(expr.name, value);
         // 查找变量的作用域距离
-        Integer distance = locals.get(expr);
-        if (distance != null) {
-            environment.assignAt(distance, expr.name, value);
+        if (expr.depth >= 0) {
+            environment.assignAt(expr.depth, expr.slot, value);
         } else {
             // 没有找到假定它是全局变量
             globals.assign(expr.name, value);
@@ -351,40 +498,55 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
         // 计算设置的值，并将其保存到该实例中
         Object value = evaluate(expr.value);
-        ((LoxInstance) object).set(expr.name, value);
+        expr.cache.set((LoxInstance) object, expr.name, value);
         return value;
     }
 
     @Override
     public Object visitSuperExpr(Expr.Super expr) {
         // 在适当环境中查找“super”来找到外围类的父类
-        int distance = locals.get(expr);
-        LoxClass superClass = (LoxClass) environment.getAt(distance, "super");
-        // 将距离偏移1，在那个内部环境中查找“this”
-        LoxInstance object = (LoxInstance) environment.getAt(distance - 1, "this");
+        int distance = expr.depth;
+        LoxClass superClass = (LoxClass) environment.getAt(distance, expr.slot);
+        // 将距离偏移1，在方法的环境中查找“this”(this总是方法环境中的第一个变量，槽位为0)
+        LoxInstance object = (LoxInstance) environment.getAt(distance - 1, 0);
         // 从父类开始查找并绑定方法(在超类上调用findMethod() 而不是在当前对象的类)
-        LoxFunction method = superClass.findMethod(expr.method.lexeme);
+        return findSuperMethod(expr, superClass).bind(object);
+    }
+
+    // super.method在同一个父类上总是解析到同一个方法，把结果缓存在语法树节点上，只有父类发生变化时才重新查找
+    static LoxFunction findSuperMethod(Expr.Super expr, LoxClass superClass) {
+        if (expr.superclass == superClass) {
+            return expr.target;
+        }
+        LoxFunction method = superClass.findMethod(expr.method.symbol);
         if (method == null) {
             throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'.");
         }
-        return method.bind(object);
+        expr.superclass = superClass;
+        expr.target = method;
+        return method;
     }
 
     // 解析this
     @Override
     public Object visitThisExpr(Expr.This expr) {
-        return lookUpVariable(expr.keyword, expr);
+        return lookUpVariable(expr.keyword, expr.depth, expr.slot);
     }
 
     // 一元表达式求值 一元表达式自身在完成求值之后还会做一些工作
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
         Object right = evaluate(expr.right);
-        switch (expr.operator.type) {
+        return unaryOperation(expr.operator, right);
+    }
+
+    // 对已经求值的操作数执行一元运算
+    static Object unaryOperation(Token operator, Object right) {
+        switch (operator.type) {
             case BANG:
                 return !isTruthy(right);
             case MINUS:
-                checkNumberOperand(expr.operator, right);
+                checkNumberOperand(operator, right);
                 return -(double) right;
         }
         return null;
@@ -394,22 +556,21 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
         // return environment.get(expr.name);
-        return lookUpVariable(expr.name, expr);
+        return lookUpVariable(expr.name, expr.depth, expr.slot);
     }
 
-    private Object lookUpVariable(Token name, Expr expr) {
-        // 在map中查找已解析的距离值(只解析了本地变量，全局变量被特殊处理了，不会出现了map中)
-        Integer distance = locals.get(expr);
-        if (distance != null) {
-            return environment.getAt(distance, name.lexeme);
+    private Object lookUpVariable(Token name, int depth, int slot) {
+        // 使用Resolver记录在节点上的距离值(只解析了本地变量，全局变量被特殊处理了，距离为-1)
+        if (depth >= 0) {
+            return environment.getAt(depth, slot);
         } else {
-            // 如果没有在map中找到变量对应的距离值，它一定是全局变量
+            // 如果节点上没有距离值，它一定是全局变量
             return globals.get(name);
         }
     }
 
     // 对传入的参数进行Boolean值的判断
-    private boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         if (object == null) {
             return false;
         }
@@ -420,18 +581,22 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     // 相等判断
-    private boolean isEqual(Object a, Object b) {
+    static boolean isEqual(Object a, Object b) {
         if (a == null && b == null) {
             return true;
         }
         if (a == null) {
             return false;
         }
+        // 拼接得到的字符串与字面量按内容比较
+        if (a instanceof LoxString || b instanceof LoxString) {
+            return LoxString.contentEquals(a, b);
+        }
         return a.equals(b);
     }
 
     // 检查一元表达式的对象类型是否为操作数
-    private void checkNumberOperand(Token operator, Object operand) {
+    static void checkNumberOperand(Token operator, Object operand) {
         if (operand instanceof Double) {
             return;
         }
@@ -439,7 +604,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     // 检查二元表达式的对象类型是否为操作数
-    private void checkNumberOperands(Token operator, Object left, Object right) {
+    static void checkNumberOperands(Token operator, Object left, Object right) {
         if (left instanceof Double && right instanceof Double) {
             return;
         }
@@ -447,7 +612,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     // 连接了Lox对象的用户视图和它们在Java中的内部表示
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null) {
             return "nil";
         }
@@ -0,0 +1,468 @@
+package cn.gjz.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JIT编译器使用的最小class文件生成器：常量池、字段、方法以及方法的Code属性
+ * 生成的class文件版本为49(Java 5)，这个版本不要求StackMapTable，由JVM的类型推导校验器校验
+ * 超出class文件格式限制(例如跳转偏移量超过16位)时抛出JitCompiler.Unsupported，由调用方退回解释执行
+ */
+
+final class JitClassWriter {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    // 本类用到的JVM指令
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int ILOAD = 0x15;
+    static final int DLOAD = 0x18;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int ISTORE = 0x36;
+    static final int DSTORE = 0x39;
+    static final int ASTORE = 0x3a;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int DADD = 0x63;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6b;
+    static final int DDIV = 0x6f;
+    static final int DNEG = 0x77;
+    static final int IXOR = 0x82;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int GOTO = 0xa7;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2;
+    static final int PUTSTATIC = 0xb3;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int NEW = 0xbb;
+    static final int ANEWARRAY = 0xbd;
+    static final int ATHROW = 0xbf;
+    static final int CHECKCAST = 0xc0;
+    static final int INSTANCEOF = 0xc1;
+    static final int IFNULL = 0xc6;
+    static final int IFNONNULL = 0xc7;
+
+    // 常量池，下标从1开始，double常量占两个位置
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    int utf8(String value) {
+        return constant("U" + value, 1, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return constant("C" + internalName, 1, out -> {
+            out.writeByte(7);
+            out.writeShort(name);
+        });
+    }
+
+    int string(String value) {
+        int utf8 = utf8(value);
+        return constant("S" + value, 1, out -> {
+            out.writeByte(8);
+            out.writeShort(utf8);
+        });
+    }
+
+    int doubleConstant(double value) {
+        return constant("D" + Double.doubleToRawLongBits(value), 2, out -> {
+            out.writeByte(6);
+            out.writeDouble(value);
+        });
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = constant("N" + name + ":" + descriptor, 1, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return constant(tag + owner + "." + name + ":" + descriptor, 1, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private interface PoolEntry {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    // 同一个常量只写入一次
+    private int constant(String key, int size, PoolEntry entry) {
+        Integer index = poolIndex.get(key);
+        if (index != null) {
+            return index;
+        }
+        if (poolCount + size > 0xffff) {
+            throw new JitCompiler.Unsupported("too many constants");
+        }
+        try {
+            entry.write(poolOut);
+        } catch (IOException e) {
+            // 例如字符串常量超过65535字节
+            throw new JitCompiler.Unsupported(e.toString());
+        }
+        index = poolCount;
+        poolCount += size;
+        poolIndex.put(key, index);
+        return index;
+    }
+
+    void field(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    MethodWriter method(int access, String name, String descriptor, int parameterSlots) {
+        return new MethodWriter(access, name, descriptor, parameterSlots);
+    }
+
+    byte[] toByteArray(int access, String name, String superName, String... interfaces) {
+        int thisIndex = classRef(name);
+        int superIndex = classRef(superName);
+        int[] interfaceIndexes = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaceIndexes[i] = classRef(interfaces[i]);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+            out.writeShort(access);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(interfaceIndexes.length);
+            for (int index : interfaceIndexes) {
+                out.writeShort(index);
+            }
+            out.writeShort(fields.size());
+            for (byte[] field : fields) {
+                out.write(field);
+            }
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // 跳转目标
+    static final class Label {
+        int position = -1;
+        // 跳转到这里时操作数栈的深度
+        int stack = -1;
+        private final List<Integer> fixups = new ArrayList<>();
+    }
+
+    /**
+     * 一个方法的字节码，同时记录操作数栈的最大深度和局部变量个数
+     */
+    final class MethodWriter {
+        private final int access;
+        private final String name;
+        private final String descriptor;
+        private byte[] code = new byte[256];
+        private int length = 0;
+        private int stack = 0;
+        private int maxStack = 0;
+        private int maxLocals;
+
+        private MethodWriter(int access, String name, String descriptor, int parameterSlots) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxLocals = parameterSlots;
+        }
+
+        int length() {
+            return length;
+        }
+
+        // 分配一个新的局部变量，double占两个槽位
+        int newLocal(int size) {
+            int index = maxLocals;
+            maxLocals += size;
+            if (maxLocals > 0xffff) {
+                throw new JitCompiler.Unsupported("too many locals");
+            }
+            return index;
+        }
+
+        private void u1(int value) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = (byte) value;
+        }
+
+        private void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        private void adjust(int delta) {
+            stack += delta;
+            if (stack > maxStack) {
+                maxStack = stack;
+            }
+        }
+
+        // 没有操作数的指令
+        void op(int opcode, int stackDelta) {
+            u1(opcode);
+            adjust(stackDelta);
+        }
+
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value, 1);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                u1(BIPUSH);
+                u1(value);
+                adjust(1);
+            } else {
+                u1(SIPUSH);
+                u2(value);
+                adjust(1);
+            }
+        }
+
+        void ldc(int poolIndex, boolean wide) {
+            u1(wide ? LDC2_W : LDC_W);
+            u2(poolIndex);
+            adjust(wide ? 2 : 1);
+        }
+
+        // 局部变量的读写 ILOAD、DLOAD、ALOAD以及对应的STORE指令
+        void local(int opcode, int index) {
+            if (index > 0xff) {
+                u1(0xc4);
+                u1(opcode);
+                u2(index);
+            } else {
+                u1(opcode);
+                u1(index);
+            }
+            int size = opcode == DLOAD || opcode == DSTORE ? 2 : 1;
+            adjust(opcode >= ISTORE ? -size : size);
+        }
+
+        // NEW、ANEWARRAY、CHECKCAST、INSTANCEOF
+        void type(int opcode, String internalName) {
+            u1(opcode);
+            u2(classRef(internalName));
+            adjust(opcode == NEW ? 1 : 0);
+        }
+
+        void field(int opcode, String owner, String fieldName, String fieldDescriptor) {
+            u1(opcode);
+            u2(fieldRef(owner, fieldName, fieldDescriptor));
+            int size = fieldDescriptor.equals("D") || fieldDescriptor.equals("J") ? 2 : 1;
+            switch (opcode) {
+                case GETSTATIC:
+                    adjust(size);
+                    break;
+                case GETFIELD:
+                    adjust(size - 1);
+                    break;
+                case PUTSTATIC:
+                    adjust(-size);
+                    break;
+                default:
+                    adjust(-size - 1);
+            }
+        }
+
+        void invoke(int opcode, String owner, String methodName, String methodDescriptor) {
+            u1(opcode);
+            u2(methodRef(owner, methodName, methodDescriptor));
+            int delta = returnSlots(methodDescriptor) - argumentSlots(methodDescriptor);
+            adjust(opcode == INVOKESTATIC ? delta : delta - 1);
+        }
+
+        // 条件跳转和GOTO
+        void jump(int opcode, Label target) {
+            int at = length;
+            u1(opcode);
+            u2(0);
+            if (opcode == IFNULL || opcode == IFNONNULL || (opcode >= IFEQ && opcode <= IFLE)) {
+                adjust(-1);
+            }
+            target.stack = stack;
+            target.fixups.add(at);
+        }
+
+        // 在当前位置放置标签；GOTO、ATHROW之后的代码不可达，栈深度取跳转到这里时的深度
+        void mark(Label label) {
+            label.position = length;
+            if (label.stack >= 0) {
+                stack = label.stack;
+            }
+        }
+
+        // 无条件跳转或抛出异常之后，后续代码的栈深度由下一个标签决定
+        void setStack(int depth) {
+            stack = depth;
+        }
+
+        int stack() {
+            return stack;
+        }
+
+        void finish() {
+            if (length > 0xffff) {
+                throw new JitCompiler.Unsupported("method too large");
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                out.writeShort(access);
+                out.writeShort(utf8(name));
+                out.writeShort(utf8(descriptor));
+                byte[] resolved = resolveJumps();
+                // 只有一个Code属性，没有异常表，也没有行号表等附加属性
+                out.writeShort(1);
+                out.writeShort(utf8("Code"));
+                out.writeInt(12 + length);
+                out.writeShort(maxStack);
+                out.writeShort(maxLocals);
+                out.writeInt(length);
+                out.write(resolved, 0, length);
+                out.writeShort(0);
+                out.writeShort(0);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            methods.add(bytes.toByteArray());
+        }
+
+        private final List<Label> labels = new ArrayList<>();
+
+        Label newLabel() {
+            Label label = new Label();
+            labels.add(label);
+            return label;
+        }
+
+        private byte[] resolveJumps() {
+            for (Label label : labels) {
+                for (int at : label.fixups) {
+                    int offset = label.position - at;
+                    if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                        throw new JitCompiler.Unsupported("jump offset too large");
+                    }
+                    code[at + 1] = (byte) (offset >> 8);
+                    code[at + 2] = (byte) offset;
+                }
+            }
+            return code;
+        }
+    }
+
+    // 方法描述符中参数占用的槽位数
+    private static int argumentSlots(String descriptor) {
+        int slots = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char c = descriptor.charAt(i);
+            if (c == 'D' || c == 'J') {
+                slots += 2;
+                i++;
+            } else if (c == 'L') {
+                slots++;
+                i = descriptor.indexOf(';', i) + 1;
+            } else if (c == '[') {
+                while (descriptor.charAt(i) == '[') {
+                    i++;
+                }
+                if (descriptor.charAt(i) == 'L') {
+                    i = descriptor.indexOf(';', i);
+                }
+                slots++;
+                i++;
+            } else {
+                slots++;
+                i++;
+            }
+        }
+        return slots;
+    }
+
+    private static int returnSlots(String descriptor) {
+        char c = descriptor.charAt(descriptor.indexOf(')') + 1);
+        if (c == 'V') {
+            return 0;
+        }
+        return c == 'D' || c == 'J' ? 2 : 1;
+    }
+}
@@ -0,0 +1,784 @@
+package cn.gjz.lox;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static cn.gjz.lox.JitClassWriter.*;
+
+/**
+ * 把一个热点函数的函数体编译为JVM字节码，并通过Lookup.defineHiddenClass加载为隐藏类
+ * 生成的代码仍然使用Environment保存局部变量(闭包可以照常捕获)，但不再经过访问者分派：
+ * 控制流直接对应JVM的跳转指令，一定得到数字的表达式(例如a - b)以未装箱的double参与运算，比较的结果直接用于跳转
+ * 调用、属性访问和运行时错误交给JitRuntime，报错的Token和提示信息与树遍历解释器相同
+ */
+
+final class JitCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    // 遇到无法编译的情况(例如方法体超出JVM的大小限制)时抛出，调用方退回解释执行
+    static final class Unsupported extends RuntimeException {
+        Unsupported(String reason) {
+            super(reason, null, false, false);
+        }
+    }
+
+    // 超过这个长度的方法不会被JVM自己的JIT编译(HugeMethodLimit)，编译出来反而比解释执行慢
+    private static final int MAX_CODE_LENGTH = 8000;
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String DOUBLE = "java/lang/Double";
+    private static final String BOOLEAN = "java/lang/Boolean";
+    private static final String ENVIRONMENT = "cn/gjz/lox/Environment";
+    private static final String RUNTIME = "cn/gjz/lox/JitRuntime";
+    private static final String METRICS = "cn/gjz/lox/Metrics";
+    private static final String TOKEN = "cn/gjz/lox/Token";
+    private static final String CODE = "cn/gjz/lox/CompiledBody";
+    private static final String CONSTANTS = "[Ljava/lang/Object;";
+    private static final String METHOD_HANDLE = "java/lang/invoke/MethodHandle";
+
+    private final Interpreter interpreter;
+    private final String className;
+    private final List<Stmt> body;
+    private final int maxCodeLength;
+    private final JitClassWriter writer = new JitClassWriter();
+    private final JitClassWriter.MethodWriter code;
+    // 生成的类通过构造方法接收的常量：Token、内联缓存、语法树节点等
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new IdentityHashMap<>();
+    // 保存当前环境的局部变量，进入语法块时切换为新的环境
+    private int environment = 1;
+    // 最内层循环中break和continue跳转的目标
+    private Label breakLabel = null;
+    private Label continueLabel = null;
+    // 普通调用的调用点个数，每个调用点保存在一个static final字段中
+    private int callSites = 0;
+
+    // AotCompiler也通过这个构造方法为整个脚本和每个函数生成类
+    JitCompiler(Interpreter interpreter, String className, List<Stmt> body, int maxCodeLength) {
+        this.interpreter = interpreter;
+        this.className = className;
+        this.body = body;
+        this.maxCodeLength = maxCodeLength;
+        this.code = writer.method(ACC_PUBLIC, "execute", "(L" + ENVIRONMENT + ";)L" + OBJECT + ";", 2);
+    }
+
+    static CompiledBody compile(Interpreter interpreter, Stmt.Function function) {
+        JitCompiler compiler = new JitCompiler(interpreter, "cn/gjz/lox/JitFunction$" + function.name.lexeme,
+                function.body, MAX_CODE_LENGTH);
+        byte[] bytes = compiler.generate();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (CompiledBody) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class, Object[].class))
+                    .invoke(compiler.constants.toArray());
+        } catch (LinkageError | RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // 生成类文件，生成的类实现CompiledBody，构造方法接收constants()对应的常量数组
+    byte[] generate() {
+        for (Stmt statement : body) {
+            statement(statement);
+        }
+        // 函数体末尾隐式地返回nil
+        code.op(ACONST_NULL, 1);
+        code.op(ARETURN, -1);
+        if (code.length() > maxCodeLength) {
+            throw new Unsupported("function body too large");
+        }
+        code.finish();
+
+        // 静态初始化时创建调用点
+        JitClassWriter.MethodWriter clinit = writer.method(ACC_STATIC, "<clinit>", "()V", 0);
+        for (int i = 0; i < callSites; i++) {
+            writer.field(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, "site" + i, "L" + METHOD_HANDLE + ";");
+            clinit.invoke(INVOKESTATIC, RUNTIME, "callSite", "()L" + METHOD_HANDLE + ";");
+            clinit.field(PUTSTATIC, className, "site" + i, "L" + METHOD_HANDLE + ";");
+        }
+        clinit.op(RETURN, 0);
+        clinit.finish();
+
+        writer.field(ACC_PRIVATE | ACC_FINAL, "k", CONSTANTS);
+        JitClassWriter.MethodWriter init = writer.method(ACC_PUBLIC, "<init>", "(" + CONSTANTS + ")V", 2);
+        init.local(ALOAD, 0);
+        init.invoke(INVOKESPECIAL, OBJECT, "<init>", "()V");
+        init.local(ALOAD, 0);
+        init.local(ALOAD, 1);
+        init.field(PUTFIELD, className, "k", CONSTANTS);
+        init.op(RETURN, 0);
+        init.finish();
+
+        return writer.toByteArray(ACC_FINAL | ACC_SUPER, className, OBJECT, CODE);
+    }
+
+    List<Object> constants() {
+        return constants;
+    }
+
+    // 从常量数组中读取一个常量
+    private void constant(Object value, String type) {
+        Integer index = constantIndex.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(value, index);
+        }
+        code.local(ALOAD, 0);
+        code.field(GETFIELD, className, "k", CONSTANTS);
+        code.pushInt(index);
+        code.op(AALOAD, -1);
+        if (!type.equals(OBJECT)) {
+            code.type(CHECKCAST, type);
+        }
+    }
+
+    // 开启运行指标时在每条语句之前生成一次计数调用，关闭时生成的代码不变
+    private void statement(Stmt stmt) {
+        if (Metrics.ENABLED) {
+            code.invoke(INVOKESTATIC, METRICS, "statement", "()V");
+        }
+        stmt.accept(this);
+    }
+
+    // 对表达式求值，结果(装箱后的)留在操作数栈上
+    private void object(Expr expr) {
+        if (isNumber(expr) && !(expr instanceof Expr.Literal)) {
+            number(expr);
+            code.invoke(INVOKESTATIC, DOUBLE, "valueOf", "(D)L" + DOUBLE + ";");
+        } else if (isCondition(expr)) {
+            condition(expr);
+            code.invoke(INVOKESTATIC, BOOLEAN, "valueOf", "(Z)L" + BOOLEAN + ";");
+        } else {
+            expr.accept(this);
+        }
+    }
+
+    // 表达式的结果一定是数字(否则求值时就会报错)，这样的表达式可以直接生成未装箱的double
+    private static boolean isNumber(Expr expr) {
+        if (expr instanceof Expr.Literal) {
+            return ((Expr.Literal) expr).value instanceof Double;
+        }
+        if (expr instanceof Expr.Grouping) {
+            return isNumber(((Expr.Grouping) expr).expression);
+        }
+        if (expr instanceof Expr.Unary) {
+            return ((Expr.Unary) expr).operator.type == TokenType.MINUS;
+        }
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            switch (binary.operator.type) {
+                case MINUS:
+                case STAR:
+                case SLASH:
+                    return true;
+                case PLUS:
+                    return isNumber(binary.left) && isNumber(binary.right);
+                default:
+                    return false;
+            }
+        }
+        return false;
+    }
+
+    // 表达式的结果一定是布尔值，这样的表达式直接生成0或1
+    private static boolean isCondition(Expr expr) {
+        if (expr instanceof Expr.Grouping) {
+            return isCondition(((Expr.Grouping) expr).expression);
+        }
+        if (expr instanceof Expr.Unary) {
+            return ((Expr.Unary) expr).operator.type == TokenType.BANG;
+        }
+        if (expr instanceof Expr.Binary) {
+            switch (((Expr.Binary) expr).operator.type) {
+                case GREATER:
+                case GREATER_EQUAL:
+                case LESS:
+                case LESS_EQUAL:
+                case EQUAL_EQUAL:
+                case BANG_EQUAL:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        return false;
+    }
+
+    // 对isNumber()的表达式求值，结果是未装箱的double
+    private void number(Expr expr) {
+        if (expr instanceof Expr.Literal) {
+            code.ldc(writer.doubleConstant((double) ((Expr.Literal) expr).value), true);
+        } else if (expr instanceof Expr.Grouping) {
+            number(((Expr.Grouping) expr).expression);
+        } else if (expr instanceof Expr.Unary) {
+            Expr.Unary unary = (Expr.Unary) expr;
+            if (isNumber(unary.right)) {
+                number(unary.right);
+            } else {
+                object(unary.right);
+                Label error = code.newLabel();
+                Label end = code.newLabel();
+                code.op(DUP, 1);
+                code.type(INSTANCEOF, DOUBLE);
+                code.jump(IFEQ, error);
+                unbox();
+                code.jump(GOTO, end);
+                code.mark(error);
+                code.op(POP, -1);
+                throwError("operandError", unary.operator);
+                code.setStack(end.stack);
+                code.mark(end);
+            }
+            code.op(DNEG, 0);
+        } else {
+            Expr.Binary binary = (Expr.Binary) expr;
+            numberOperands(binary);
+            switch (binary.operator.type) {
+                case PLUS:
+                    code.op(DADD, -2);
+                    break;
+                case MINUS:
+                    code.op(DSUB, -2);
+                    break;
+                case STAR:
+                    code.op(DMUL, -2);
+                    break;
+                default:
+                    code.op(DDIV, -2);
+            }
+        }
+    }
+
+    // 把栈顶的Double拆箱
+    private void unbox() {
+        code.type(CHECKCAST, DOUBLE);
+        code.invoke(INVOKEVIRTUAL, DOUBLE, "doubleValue", "()D");
+    }
+
+    // 生成抛出运行时错误的代码
+    private void throwError(String factory, Token token) {
+        constant(token, TOKEN);
+        code.invoke(INVOKESTATIC, RUNTIME, factory, "(L" + TOKEN + ";)Lcn/gjz/lox/RuntimeError;");
+        code.op(ATHROW, -1);
+    }
+
+    // 对数字运算的两个操作数求值，两个未装箱的double留在栈上
+    // 与解释器相同：先对左右操作数都求值，再检查它们是否都是数字
+    private void numberOperands(Expr.Binary expr) {
+        if (isNumber(expr.left) && isNumber(expr.right)) {
+            number(expr.left);
+            number(expr.right);
+            return;
+        }
+        int left = storeOperand(expr.left);
+        int right = storeOperand(expr.right);
+        Label error = code.newLabel();
+        Label end = code.newLabel();
+        checkNumber(expr.left, left, error);
+        checkNumber(expr.right, right, error);
+        loadNumber(expr.left, left);
+        loadNumber(expr.right, right);
+        code.jump(GOTO, end);
+        code.mark(error);
+        throwError("operandsError", expr.operator);
+        code.setStack(end.stack);
+        code.mark(end);
+    }
+
+    // 把操作数的值保存在新的局部变量中
+    private int storeOperand(Expr operand) {
+        if (isNumber(operand)) {
+            number(operand);
+            int local = code.newLocal(2);
+            code.local(DSTORE, local);
+            return local;
+        }
+        object(operand);
+        int local = code.newLocal(1);
+        code.local(ASTORE, local);
+        return local;
+    }
+
+    private void checkNumber(Expr operand, int local, Label error) {
+        if (!isNumber(operand)) {
+            code.local(ALOAD, local);
+            code.type(INSTANCEOF, DOUBLE);
+            code.jump(IFEQ, error);
+        }
+    }
+
+    private void loadNumber(Expr operand, int local) {
+        if (isNumber(operand)) {
+            code.local(DLOAD, local);
+        } else {
+            code.local(ALOAD, local);
+            unbox();
+        }
+    }
+
+    private void loadObject(Expr operand, int local) {
+        if (isNumber(operand)) {
+            code.local(DLOAD, local);
+            code.invoke(INVOKESTATIC, DOUBLE, "valueOf", "(D)L" + DOUBLE + ";");
+        } else {
+            code.local(ALOAD, local);
+        }
+    }
+
+    // 对表达式求值并按Lox的真值规则转换为0或1
+    private void condition(Expr expr) {
+        if (expr instanceof Expr.Grouping) {
+            condition(((Expr.Grouping) expr).expression);
+            return;
+        }
+        if (expr instanceof Expr.Literal && ((Expr.Literal) expr).value instanceof Boolean) {
+            code.pushInt((boolean) ((Expr.Literal) expr).value ? 1 : 0);
+            return;
+        }
+        if (expr instanceof Expr.Unary && ((Expr.Unary) expr).operator.type == TokenType.BANG) {
+            condition(((Expr.Unary) expr).right);
+            code.pushInt(1);
+            code.op(IXOR, -1);
+            return;
+        }
+        if (expr instanceof Expr.Logical) {
+            Expr.Logical logical = (Expr.Logical) expr;
+            Label shortCircuit = code.newLabel();
+            Label end = code.newLabel();
+            boolean isOr = logical.operator.type == TokenType.OR;
+            condition(logical.left);
+            code.jump(isOr ? IFNE : IFEQ, shortCircuit);
+            condition(logical.right);
+            code.jump(GOTO, end);
+            code.mark(shortCircuit);
+            code.pushInt(isOr ? 1 : 0);
+            code.mark(end);
+            return;
+        }
+        if (expr instanceof Expr.Binary && isCondition(expr)) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            switch (binary.operator.type) {
+                case GREATER:
+                    compare(binary, DCMPL, IFGT);
+                    return;
+                case GREATER_EQUAL:
+                    compare(binary, DCMPL, IFGE);
+                    return;
+                case LESS:
+                    compare(binary, DCMPG, IFLT);
+                    return;
+                case LESS_EQUAL:
+                    compare(binary, DCMPG, IFLE);
+                    return;
+                default:
+                    if (isNumber(binary.left) && isNumber(binary.right)) {
+                        number(binary.left);
+                        number(binary.right);
+                        code.invoke(INVOKESTATIC, RUNTIME, "numbersEqual", "(DD)Z");
+                    } else {
+                        object(binary.left);
+                        object(binary.right);
+                        code.invoke(INVOKESTATIC, RUNTIME, "isEqual", "(L" + OBJECT + ";L" + OBJECT + ";)Z");
+                    }
+                    if (binary.operator.type == TokenType.BANG_EQUAL) {
+                        code.pushInt(1);
+                        code.op(IXOR, -1);
+                    }
+                    return;
+            }
+        }
+        object(expr);
+        code.invoke(INVOKESTATIC, RUNTIME, "isTruthy", "(L" + OBJECT + ";)Z");
+    }
+
+    // 数字比较：NaN与任何数字比较的结果都是false，所以<和<=使用DCMPG，>和>=使用DCMPL
+    private void compare(Expr.Binary expr, int compareOp, int jumpOp) {
+        numberOperands(expr);
+        code.op(compareOp, -3);
+        Label isTrue = code.newLabel();
+        Label end = code.newLabel();
+        code.jump(jumpOp, isTrue);
+        code.pushInt(0);
+        code.jump(GOTO, end);
+        code.mark(isTrue);
+        code.pushInt(1);
+        code.mark(end);
+    }
+
+    // 创建参数数组
+    private void arguments(List<Expr> arguments) {
+        code.pushInt(arguments.size());
+        code.type(ANEWARRAY, OBJECT);
+        for (int i = 0; i < arguments.size(); i++) {
+            code.op(DUP, 1);
+            code.pushInt(i);
+            object(arguments.get(i));
+            code.op(AASTORE, -3);
+        }
+    }
+
+    // 读取局部变量
+    private void local(int depth, int slot) {
+        code.local(ALOAD, environment);
+        code.pushInt(depth);
+        code.pushInt(slot);
+        code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "getAt", "(II)L" + OBJECT + ";");
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        object(expr.value);
+        int value = code.newLocal(1);
+        code.local(ASTORE, value);
+        if (expr.depth >= 0) {
+            code.local(ALOAD, environment);
+            code.pushInt(expr.depth);
+            code.pushInt(expr.slot);
+            code.local(ALOAD, value);
+            code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "assignAt", "(IIL" + OBJECT + ";)V");
+        } else {
+            constant(interpreter.globals, ENVIRONMENT);
+            constant(expr.name, TOKEN);
+            code.local(ALOAD, value);
+            code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "assign", "(L" + TOKEN + ";L" + OBJECT + ";)V");
+        }
+        code.local(ALOAD, value);
+        return null;
+    }
+
+    // 只有结果不一定是数字或布尔值的二元表达式会到达这里，即操作数不全是数字的加法
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        int left = storeOperand(expr.left);
+        int right = storeOperand(expr.right);
+        Label slow = code.newLabel();
+        Label end = code.newLabel();
+        checkNumber(expr.left, left, slow);
+        checkNumber(expr.right, right, slow);
+        loadNumber(expr.left, left);
+        loadNumber(expr.right, right);
+        code.op(DADD, -2);
+        code.invoke(INVOKESTATIC, DOUBLE, "valueOf", "(D)L" + DOUBLE + ";");
+        code.jump(GOTO, end);
+        // 字符串拼接或者报错
+        code.mark(slow);
+        loadObject(expr.left, left);
+        loadObject(expr.right, right);
+        constant(expr.operator, TOKEN);
+        code.invoke(INVOKESTATIC, RUNTIME, "add", "(L" + OBJECT + ";L" + OBJECT + ";L" + TOKEN + ";)L" + OBJECT + ";");
+        code.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        call(expr, false);
+        return null;
+    }
+
+    // tail为true时是return语句中的尾调用，Lox函数不在这里调用，而是返回TailCall交给LoxFunction的蹦床执行
+    private void call(Expr.Call expr, boolean tail) {
+        // obj.method(args)：查找方法(或者读取字段)，对参数求值，然后直接以obj作为this调用方法
+        if (expr.callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get) expr.callee;
+            PropertyCache cache = get.cache;
+            object(get.object);
+            int receiver = code.newLocal(1);
+            code.local(ASTORE, receiver);
+            code.local(ALOAD, receiver);
+            constant(cache, "cn/gjz/lox/PropertyCache");
+            constant(get.name, TOKEN);
+            code.invoke(INVOKESTATIC, RUNTIME, "findMethod", "(L" + OBJECT + ";Lcn/gjz/lox/PropertyCache;L" + TOKEN + ";)Lcn/gjz/lox/LoxFunction;");
+            int method = code.newLocal(1);
+            code.local(ASTORE, method);
+            int field = code.newLocal(1);
+            code.op(ACONST_NULL, 1);
+            code.local(ASTORE, field);
+            Label isMethod = code.newLabel();
+            code.local(ALOAD, method);
+            code.jump(IFNONNULL, isMethod);
+            code.local(ALOAD, receiver);
+            constant(cache, "cn/gjz/lox/PropertyCache");
+            constant(get.name, TOKEN);
+            code.invoke(INVOKESTATIC, RUNTIME, "fieldValue", "(L" + OBJECT + ";Lcn/gjz/lox/PropertyCache;L" + TOKEN + ";)L" + OBJECT + ";");
+            code.local(ASTORE, field);
+            code.mark(isMethod);
+            code.local(ALOAD, receiver);
+            code.local(ALOAD, method);
+            code.local(ALOAD, field);
+            arguments(expr.arguments);
+            constant(interpreter, "cn/gjz/lox/Interpreter");
+            constant(expr.paren, TOKEN);
+            code.invoke(INVOKESTATIC, RUNTIME, tail ? "invokeTail" : "invoke", "(L" + OBJECT + ";Lcn/gjz/lox/LoxFunction;L" + OBJECT + ";" + CONSTANTS
+                    + "Lcn/gjz/lox/Interpreter;L" + TOKEN + ";)L" + OBJECT + ";");
+            return;
+        }
+        // super.method(args)同理
+        if (expr.callee instanceof Expr.Super) {
+            Expr.Super superExpr = (Expr.Super) expr.callee;
+            code.local(ALOAD, environment);
+            constant(superExpr, "cn/gjz/lox/Expr$Super");
+            code.invoke(INVOKESTATIC, RUNTIME, "superMethod", "(L" + ENVIRONMENT + ";Lcn/gjz/lox/Expr$Super;)Lcn/gjz/lox/LoxFunction;");
+            arguments(expr.arguments);
+            code.local(ALOAD, environment);
+            constant(superExpr, "cn/gjz/lox/Expr$Super");
+            constant(interpreter, "cn/gjz/lox/Interpreter");
+            constant(expr.paren, TOKEN);
+            code.invoke(INVOKESTATIC, RUNTIME, tail ? "invokeSuperTail" : "invokeSuper", "(Lcn/gjz/lox/LoxFunction;" + CONSTANTS + "L" + ENVIRONMENT
+                    + ";Lcn/gjz/lox/Expr$Super;Lcn/gjz/lox/Interpreter;L" + TOKEN + ";)L" + OBJECT + ";");
+            return;
+        }
+        // 尾调用只创建TailCall，不需要链接被调用者
+        if (tail) {
+            object(expr.callee);
+            arguments(expr.arguments);
+            constant(interpreter, "cn/gjz/lox/Interpreter");
+            constant(expr.paren, TOKEN);
+            code.invoke(INVOKESTATIC, RUNTIME, "tailCall", "(L" + OBJECT + ";" + CONSTANTS + "Lcn/gjz/lox/Interpreter;L" + TOKEN + ";)L" + OBJECT + ";");
+            return;
+        }
+        // 其余的调用经过这个调用点自己的LoxCallSite，由它链接见过的被调用者
+        String site = "site" + callSites++;
+        code.field(GETSTATIC, className, site, "L" + METHOD_HANDLE + ";");
+        object(expr.callee);
+        arguments(expr.arguments);
+        constant(interpreter, "cn/gjz/lox/Interpreter");
+        constant(expr.paren, TOKEN);
+        code.invoke(INVOKEVIRTUAL, METHOD_HANDLE, "invokeExact", "(L" + OBJECT + ";" + CONSTANTS + "Lcn/gjz/lox/Interpreter;L" + TOKEN + ";)L" + OBJECT + ";");
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        object(expr.object);
+        constant(expr.cache, "cn/gjz/lox/PropertyCache");
+        constant(expr.name, TOKEN);
+        code.invoke(INVOKESTATIC, RUNTIME, "get", "(L" + OBJECT + ";Lcn/gjz/lox/PropertyCache;L" + TOKEN + ";)L" + OBJECT + ";");
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        object(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            code.op(ACONST_NULL, 1);
+        } else if (expr.value instanceof Boolean) {
+            code.field(GETSTATIC, BOOLEAN, (boolean) expr.value ? "TRUE" : "FALSE", "L" + BOOLEAN + ";");
+        } else if (expr.value instanceof String) {
+            code.ldc(writer.string((String) expr.value), false);
+        } else {
+            // 数字字面量使用同一个装箱对象
+            constant(expr.value, OBJECT);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        Label end = code.newLabel();
+        object(expr.left);
+        code.op(DUP, 1);
+        code.invoke(INVOKESTATIC, RUNTIME, "isTruthy", "(L" + OBJECT + ";)Z");
+        // 能够短路时左操作数就是结果
+        code.jump(expr.operator.type == TokenType.OR ? IFNE : IFEQ, end);
+        code.op(POP, -1);
+        object(expr.right);
+        code.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        object(expr.object);
+        constant(expr.name, TOKEN);
+        code.invoke(INVOKESTATIC, RUNTIME, "instanceForSet", "(L" + OBJECT + ";L" + TOKEN + ";)Lcn/gjz/lox/LoxInstance;");
+        object(expr.value);
+        constant(expr.cache, "cn/gjz/lox/PropertyCache");
+        constant(expr.name, TOKEN);
+        code.invoke(INVOKESTATIC, RUNTIME, "set", "(Lcn/gjz/lox/LoxInstance;L" + OBJECT + ";Lcn/gjz/lox/PropertyCache;L" + TOKEN + ";)L" + OBJECT + ";");
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        code.local(ALOAD, environment);
+        constant(expr, "cn/gjz/lox/Expr$Super");
+        code.invoke(INVOKESTATIC, RUNTIME, "bindSuper", "(L" + ENVIRONMENT + ";Lcn/gjz/lox/Expr$Super;)L" + OBJECT + ";");
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        local(expr.depth, expr.slot);
+        return null;
+    }
+
+    // 只有取负会到达这里，逻辑非由condition()处理
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        number(expr);
+        code.invoke(INVOKESTATIC, DOUBLE, "valueOf", "(D)L" + DOUBLE + ";");
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        if (expr.depth >= 0) {
+            local(expr.depth, expr.slot);
+        } else {
+            constant(interpreter.globals, ENVIRONMENT);
+            constant(expr.name, TOKEN);
+            code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "get", "(L" + TOKEN + ";)L" + OBJECT + ";");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        int enclosing = environment;
+        code.type(NEW, ENVIRONMENT);
+        code.op(DUP, 1);
+        code.local(ALOAD, enclosing);
+        code.invoke(INVOKESPECIAL, ENVIRONMENT, "<init>", "(L" + ENVIRONMENT + ";)V");
+        environment = code.newLocal(1);
+        code.local(ASTORE, environment);
+        for (Stmt statement : stmt.statements) {
+            statement(statement);
+        }
+        environment = enclosing;
+        return null;
+    }
+
+    // 环境保存在JVM局部变量中，跳出语法块时不需要恢复，直接跳转即可
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        code.jump(GOTO, breakLabel);
+        return null;
+    }
+
+    @Override
+    public Void visitContinueStmt(Stmt.Continue stmt) {
+        code.jump(GOTO, continueLabel);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        code.local(ALOAD, environment);
+        constant(stmt, "cn/gjz/lox/Stmt$Class");
+        if (stmt.superclass != null) {
+            object(stmt.superclass);
+        } else {
+            code.op(ACONST_NULL, 1);
+        }
+        code.invoke(INVOKESTATIC, RUNTIME, "defineClass", "(L" + ENVIRONMENT + ";Lcn/gjz/lox/Stmt$Class;L" + OBJECT + ";)V");
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        object(stmt.expression);
+        code.op(POP, -1);
+        return null;
+    }
+
+    // 内层函数有自己的调用计数，变热之后单独编译
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        code.local(ALOAD, environment);
+        constant(stmt, "cn/gjz/lox/Stmt$Function");
+        code.invoke(INVOKESTATIC, RUNTIME, "defineFunction", "(L" + ENVIRONMENT + ";Lcn/gjz/lox/Stmt$Function;)V");
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        Label elseBranch = code.newLabel();
+        Label end = code.newLabel();
+        condition(stmt.condition);
+        code.jump(IFEQ, elseBranch);
+        statement(stmt.thenBranch);
+        code.jump(GOTO, end);
+        code.mark(elseBranch);
+        if (stmt.elseBranch != null) {
+            statement(stmt.elseBranch);
+        }
+        code.mark(end);
+        return null;
+    }
+
+    // import只出现在顶层：JIT只编译函数体，预先编译时AotCompiler已经把导入的模块展开到顶层代码中
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt) {
+        throw new Unsupported("import");
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        object(stmt.expression);
+        code.invoke(INVOKESTATIC, RUNTIME, "print", "(L" + OBJECT + ";)V");
+        return null;
+    }
+
+    // return直接从生成的方法中返回，不需要抛出Return异常
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tailCall) {
+            call((Expr.Call) stmt.value, true);
+        } else if (stmt.value != null) {
+            object(stmt.value);
+        } else {
+            code.op(ACONST_NULL, 1);
+        }
+        code.op(ARETURN, -1);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        code.local(ALOAD, environment);
+        constant(stmt.name, TOKEN);
+        code.field(GETFIELD, TOKEN, "symbol", "Lcn/gjz/lox/Symbol;");
+        if (stmt.initializer != null) {
+            object(stmt.initializer);
+        } else {
+            code.op(ACONST_NULL, 1);
+        }
+        code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "define", "(Lcn/gjz/lox/Symbol;L" + OBJECT + ";)V");
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        Label start = code.newLabel();
+        Label next = code.newLabel();
+        Label end = code.newLabel();
+        Label enclosingBreak = breakLabel;
+        Label enclosingContinue = continueLabel;
+        breakLabel = end;
+        continueLabel = next;
+        code.mark(start);
+        condition(stmt.condition);
+        code.jump(IFEQ, end);
+        statement(stmt.body);
+        code.mark(next);
+        if (stmt.increment != null) {
+            object(stmt.increment);
+            code.op(POP, -1);
+        }
+        code.jump(GOTO, start);
+        code.mark(end);
+        breakLabel = enclosingBreak;
+        continueLabel = enclosingContinue;
+        return null;
+    }
+}
@@ -0,0 +1,39 @@
+package cn.gjz.lox;
+
+/**
+ * JIT引擎：以树遍历解释器执行程序，并统计每个函数的调用次数
+ * 调用次数达到阈值的函数由JitCompiler编译为JVM字节码，之后的调用直接执行编译后的代码
+ * 编译失败(遇到不支持的情况或者生成的类无法加载)的函数以后一直解释执行
+ */
+
+public class JitInterpreter extends Interpreter {
+
+    // 默认的编译阈值
+    static final int DEFAULT_THRESHOLD = 1000;
+
+    private final int threshold;
+
+    public JitInterpreter(int threshold) {
+        this.threshold = threshold;
+    }
+
+    // 调用次数按函数声明统计，同一个声明创建的多个闭包共享编译结果
+    @Override
+    Object executeBody(Stmt.Function declaration, Environment environment) {
+        if (declaration.jitCode == null) {
+            if (++declaration.calls < threshold) {
+                return super.executeBody(declaration, environment);
+            }
+            declaration.jitCode = compile(declaration);
+        }
+        return declaration.jitCode.execute(environment);
+    }
+
+    private CompiledBody compile(Stmt.Function declaration) {
+        try {
+            return JitCompiler.compile(this, declaration);
+        } catch (JitCompiler.Unsupported | LinkageError e) {
+            return environment -> JitInterpreter.super.executeBody(declaration, environment);
+        }
+    }
+}
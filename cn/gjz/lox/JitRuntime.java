@@ -0,0 +1,190 @@
+package cn.gjz.lox;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+
+/**
+ * JIT生成的代码调用的辅助方法
+ * 不适合直接展开成字节码的操作(调用、属性访问、运行时错误等)都放在这里，语义与树遍历解释器完全相同
+ */
+
+final class JitRuntime {
+
+    private JitRuntime() {
+    }
+
+    static RuntimeError operandError(Token operator) {
+        return new RuntimeError(operator, "Operand must be a number.");
+    }
+
+    static RuntimeError operandsError(Token operator) {
+        return new RuntimeError(operator, "Operands must be numbers.");
+    }
+
+    // 操作数不全是数字时的加法：字符串拼接或者报错
+    static Object add(Object left, Object right, Token operator) {
+        return Interpreter.binaryOperation(operator, left, right);
+    }
+
+    static boolean isTruthy(Object object) {
+        return Interpreter.isTruthy(object);
+    }
+
+    static boolean isEqual(Object a, Object b) {
+        return Interpreter.isEqual(a, b);
+    }
+
+    // 与Double.equals()的语义保持一致
+    static boolean numbersEqual(double a, double b) {
+        return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+    }
+
+    static void print(Object value) {
+        System.out.println(Interpreter.stringify(value));
+    }
+
+    // 以下方法的参数顺序与生成代码中操作数栈上的顺序一致
+    // 调用已经求值的被调用者
+    static Object call(Object callee, Object[] arguments, Interpreter interpreter, Token paren) {
+        if (!(callee instanceof LoxCallable)) {
+            throw new RuntimeError(paren, "Can only call functions and classes.");
+        }
+        LoxCallable function = (LoxCallable) callee;
+        if (arguments.length != function.arity()) {
+            throw new RuntimeError(paren, "Expected " + function.arity() + " arguments but got " + arguments.length + ".");
+        }
+        Profiler.calling(paren);
+        try {
+            return function.call(interpreter, Arrays.asList(arguments));
+        } catch (StackOverflowError error) {
+            throw Interpreter.stackOverflow(paren);
+        }
+    }
+
+    // return语句中的尾调用：Lox函数返回TailCall，由LoxFunction的蹦床执行
+    static Object tailCall(Object callee, Object[] arguments, Interpreter interpreter, Token paren) {
+        if (callee instanceof LoxFunction) {
+            LoxFunction function = (LoxFunction) callee;
+            if (arguments.length != function.arity()) {
+                throw new RuntimeError(paren, "Expected " + function.arity() + " arguments but got " + arguments.length + ".");
+            }
+            Profiler.calling(paren);
+            return function.tailCall(Arrays.asList(arguments));
+        }
+        return call(callee, arguments, interpreter, paren);
+    }
+
+    // 生成的类在静态初始化时为每个普通调用创建一个调用点
+    static MethodHandle callSite() {
+        return new LoxCallSite().dynamicInvoker();
+    }
+
+    // obj.method(args)的第一步：查找方法，属性是字段时返回null
+    static LoxFunction findMethod(Object receiver, PropertyCache cache, Token name) {
+        if (!(receiver instanceof LoxInstance)) {
+            throw new RuntimeError(name, "Only instances have properties.");
+        }
+        return cache.method((LoxInstance) receiver, name);
+    }
+
+    // obj.method(args)中的属性是字段时读取字段的值
+    static Object fieldValue(Object receiver, PropertyCache cache, Token name) {
+        return cache.get((LoxInstance) receiver, name);
+    }
+
+    // obj.method(args)的第二步：参数求值之后直接调用方法，或者调用字段中保存的值
+    static Object invoke(Object receiver, LoxFunction method, Object field, Object[] arguments, Interpreter interpreter, Token paren) {
+        if (method == null) {
+            return call(field, arguments, interpreter, paren);
+        }
+        if (arguments.length != method.arity()) {
+            throw new RuntimeError(paren, "Expected " + method.arity() + " arguments but got " + arguments.length + ".");
+        }
+        Profiler.calling(paren);
+        try {
+            return method.invoke(interpreter, (LoxInstance) receiver, Arrays.asList(arguments));
+        } catch (StackOverflowError error) {
+            throw Interpreter.stackOverflow(paren);
+        }
+    }
+
+    static Object invokeTail(Object receiver, LoxFunction method, Object field, Object[] arguments, Interpreter interpreter, Token paren) {
+        if (method == null) {
+            return tailCall(field, arguments, interpreter, paren);
+        }
+        if (arguments.length != method.arity()) {
+            throw new RuntimeError(paren, "Expected " + method.arity() + " arguments but got " + arguments.length + ".");
+        }
+        Profiler.calling(paren);
+        return method.tailCall((LoxInstance) receiver, Arrays.asList(arguments));
+    }
+
+    static Object get(Object object, PropertyCache cache, Token name) {
+        if (object instanceof LoxInstance) {
+            return cache.get((LoxInstance) object, name);
+        }
+        throw new RuntimeError(name, "Only instances have properties.");
+    }
+
+    // 写入属性之前先检查对象，再对要写入的值求值
+    static LoxInstance instanceForSet(Object object, Token name) {
+        if (!(object instanceof LoxInstance)) {
+            throw new RuntimeError(name, "Only instances have fields.");
+        }
+        return (LoxInstance) object;
+    }
+
+    static Object set(LoxInstance instance, Object value, PropertyCache cache, Token name) {
+        cache.set(instance, name, value);
+        return value;
+    }
+
+    static LoxFunction superMethod(Environment environment, Expr.Super expr) {
+        LoxClass superClass = (LoxClass) environment.getAt(expr.depth, expr.slot);
+        return Interpreter.findSuperMethod(expr, superClass);
+    }
+
+    static Object invokeSuper(LoxFunction method, Object[] arguments, Environment environment, Expr.Super expr, Interpreter interpreter, Token paren) {
+        if (arguments.length != method.arity()) {
+            throw new RuntimeError(paren, "Expected " + method.arity() + " arguments but got " + arguments.length + ".");
+        }
+        Profiler.calling(paren);
+        LoxInstance object = (LoxInstance) environment.getAt(expr.depth - 1, 0);
+        try {
+            return method.invoke(interpreter, object, Arrays.asList(arguments));
+        } catch (StackOverflowError error) {
+            throw Interpreter.stackOverflow(paren);
+        }
+    }
+
+    static Object invokeSuperTail(LoxFunction method, Object[] arguments, Environment environment, Expr.Super expr, Interpreter interpreter, Token paren) {
+        if (arguments.length != method.arity()) {
+            throw new RuntimeError(paren, "Expected " + method.arity() + " arguments but got " + arguments.length + ".");
+        }
+        Profiler.calling(paren);
+        return method.tailCall((LoxInstance) environment.getAt(expr.depth - 1, 0), Arrays.asList(arguments));
+    }
+
+    static Object bindSuper(Environment environment, Expr.Super expr) {
+        LoxInstance object = (LoxInstance) environment.getAt(expr.depth - 1, 0);
+        return superMethod(environment, expr).bind(object);
+    }
+
+    static void defineFunction(Environment environment, Stmt.Function declaration) {
+        environment.define(declaration.name.symbol, new LoxFunction(declaration, environment, false));
+    }
+
+    static void defineClass(Environment environment, Stmt.Class declaration, Object superClass) {
+        Interpreter.defineClass(declaration, superClass, environment);
+    }
+
+    // 预先编译的jar从这里开始执行脚本，运行时错误的输出和退出码与Lox.runFile()相同
+    static void runScript(CompiledBody script, Interpreter interpreter) {
+        try {
+            script.execute(interpreter.globals);
+        } catch (RuntimeError error) {
+            System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
+            System.exit(65);
+        }
+    }
+}
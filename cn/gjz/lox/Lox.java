@@ -3,48 +3,194 @@ package cn.gjz.lox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 
+import cn.gjz.lox.vm.VM;
+
 
 /**
  * 进入 out/production/lox 目录下
  * 测试:
  *  解释源代码程序 java cn.gjz.lox.Lox /Users/gjz/Documents/idea-project/lox/src/test
  *  命令行交互的方式启动解释器 java cn.gjz.lox.Lox
+ *  使用字节码虚拟机执行 java cn.gjz.lox.Lox --engine=vm /Users/gjz/Documents/idea-project/lox/src/test
+ *  使用自我特化的节点解释器执行 java cn.gjz.lox.Lox --engine=node /Users/gjz/Documents/idea-project/lox/src/test
+ *  使用闭包编译引擎执行 java cn.gjz.lox.Lox --engine=closure /Users/gjz/Documents/idea-project/lox/src/test
+ *  把热点函数编译为JVM字节码执行 java cn.gjz.lox.Lox --engine=jit --jit-threshold=1000 /Users/gjz/Documents/idea-project/lox/src/test
+ *  预先编译为可以直接运行的jar java cn.gjz.lox.Lox --compile=test.jar /Users/gjz/Documents/idea-project/lox/src/test，再执行 java -jar test.jar
+ *  执行完脚本后保存快照 java cn.gjz.lox.Lox --snapshot=prelude.snap prelude，之后从快照恢复再执行 java cn.gjz.lox.Lox --restore=prelude.snap test
+ *  采样分析Lox函数的耗时 java cn.gjz.lox.Lox --profile=test.folded --profile-rate=1000 test，折叠栈写入test.folded，前20个函数输出到stderr
+ *  通过JMX查看运行指标 java -Dlox.metrics=true cn.gjz.lox.Lox test，之后用jconsole连接进程查看cn.gjz.lox:type=Metrics
+ *  记录JFR事件 java -XX:StartFlightRecording=filename=test.jfr cn.gjz.lox.Lox test，之后用JDK Mission Control或者jfr print --categories Lox test.jfr查看
  */
 
 public class Lox {
 
+    // 执行引擎：树遍历解释器、字节码虚拟机、节点解释器、闭包编译引擎或JIT引擎
+    private enum Engine {
+        TREE,
+        VM,
+        NODE,
+        CLOSURE,
+        JIT
+    }
+
     // 解释器
     private static final Interpreter interpreter = new Interpreter();
+    // 字节码虚拟机
+    private static final VM vm = new VM();
+    // 节点解释器
+    private static final NodeInterpreter nodeInterpreter = new NodeInterpreter();
+    // 闭包编译引擎
+    private static final ClosureInterpreter closureInterpreter = new ClosureInterpreter();
+    // JIT引擎，编译阈值由参数决定，第一次执行时创建
+    private static JitInterpreter jitInterpreter;
+    private static int jitThreshold = JitInterpreter.DEFAULT_THRESHOLD;
+    private static Engine engine = Engine.TREE;
+    // 预先编译生成的jar，为null时直接执行脚本
+    private static String compileTarget = null;
+    // 执行完毕后写入的快照文件，以及执行之前恢复的快照文件
+    private static String snapshotTarget = null;
+    private static String restoreSource = null;
+    // 性能分析的折叠栈输出文件(为null时不分析)、每秒采样次数以及输出的函数个数
+    private static String profileOutput = null;
+    private static int profileRate = 1000;
+    private static int profileTop = 20;
 
     // 确保解释器不会尝试执行有错误的代码
     static boolean hadError = false;
     static boolean hadRuntimeError = false;
 
     public static void main(String[] args) throws IOException {
-        // 参数个数大于1报错
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            // 参数个数等于1，解析参数中提供的源代码文件
-            runFile(args[0]);
+        String script = null;
+        for (String arg : args) {
+            if (option(arg)) {
+                continue;
+            }
+            if (script == null && !arg.startsWith("--")) {
+                script = arg;
+            } else {
+                // 无法识别的参数或多于一个源代码文件时报错
+                usage();
+            }
+        }
+        // 快照保存的是Interpreter的运行时对象，虚拟机和预先编译都不使用它们
+        if ((snapshotTarget != null || restoreSource != null) && (engine == Engine.VM || compileTarget != null)) {
+            usage();
+        }
+        // 性能分析只用于执行脚本文件
+        if (profileOutput != null && (script == null || compileTarget != null)) {
+            usage();
+        }
+        if (compileTarget != null) {
+            // 预先编译必须提供源代码文件
+            if (script == null) {
+                usage();
+            }
+            compileFile(script, compileTarget);
+            return;
+        }
+        // -Dlox.metrics=true时注册运行指标的MBean
+        Metrics.register();
+        if (restoreSource != null) {
+            Snapshot.restore(interpreter(), Paths.get(restoreSource));
+        }
+        if (script != null) {
+            // 解析参数中提供的源代码文件
+            runFile(script);
         } else {
             // 参数个数为0，命令行交互的方式启动
             runPrompt();
         }
+        // 脚本有错误时runFile()已经退出，不会写入快照
+        if (snapshotTarget != null) {
+            Snapshot.write(interpreter(), Paths.get(snapshotTarget));
+        }
+    }
+
+    // 识别一个选项并修改对应的设置，不是选项或者无法识别时返回false
+    static boolean option(String arg) {
+        if (arg.equals("--engine=tree")) {
+            engine = Engine.TREE;
+        } else if (arg.equals("--engine=vm")) {
+            engine = Engine.VM;
+        } else if (arg.equals("--engine=node")) {
+            engine = Engine.NODE;
+        } else if (arg.equals("--engine=closure")) {
+            engine = Engine.CLOSURE;
+        } else if (arg.equals("--engine=jit")) {
+            engine = Engine.JIT;
+        } else if (arg.startsWith("--jit-threshold=") && isThreshold(arg.substring("--jit-threshold=".length()))) {
+            jitThreshold = Integer.parseInt(arg.substring("--jit-threshold=".length()));
+        } else if (arg.startsWith("--compile=") && arg.length() > "--compile=".length()) {
+            compileTarget = arg.substring("--compile=".length());
+        } else if (arg.startsWith("--snapshot=") && arg.length() > "--snapshot=".length()) {
+            snapshotTarget = arg.substring("--snapshot=".length());
+        } else if (arg.startsWith("--restore=") && arg.length() > "--restore=".length()) {
+            restoreSource = arg.substring("--restore=".length());
+        } else if (arg.equals("--profile")) {
+            profileOutput = "profile.folded";
+        } else if (arg.startsWith("--profile=") && arg.length() > "--profile=".length()) {
+            profileOutput = arg.substring("--profile=".length());
+        } else if (arg.startsWith("--profile-rate=") && isThreshold(arg.substring("--profile-rate=".length()))) {
+            profileRate = Integer.parseInt(arg.substring("--profile-rate=".length()));
+        } else if (arg.startsWith("--profile-top=") && isThreshold(arg.substring("--profile-top=".length()))) {
+            profileTop = Integer.parseInt(arg.substring("--profile-top=".length()));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static void usage() {
+        System.out.println("Usage: jlox [--engine=tree|vm|node|closure|jit] [--jit-threshold=N] [--compile=jar] [--snapshot=file] [--restore=file]"
+                + " [--profile[=file]] [--profile-rate=N] [--profile-top=N] [script]");
+        System.exit(64);
+    }
+
+    // 当前执行引擎使用的解释器，虚拟机之外的引擎都是Interpreter的子类
+    private static Interpreter interpreter() {
+        switch (engine) {
+            case NODE:
+                return nodeInterpreter;
+            case CLOSURE:
+                return closureInterpreter;
+            case JIT:
+                if (jitInterpreter == null) {
+                    jitInterpreter = new JitInterpreter(jitThreshold);
+                }
+                return jitInterpreter;
+            default:
+                return interpreter;
+        }
+    }
+
+    // 编译阈值等数值参数必须是正整数
+    private static boolean isThreshold(String value) {
+        try {
+            return Integer.parseInt(value) > 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
     }
 
     // 从命令行启动jlox并为其提供文件路径，读取文件并执行
-    private static void runFile(String path) throws IOException {
-        // 读取源代码文件
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        // 将源代码文件送到run这个函数中进行处理
-        run(new String(bytes, Charset.defaultCharset()));
+    static void runFile(String path) throws IOException {
+        // 以流的方式读取源代码文件，扫描器边读边扫描，不需要先把整个文件读入内存
+        Path file = Paths.get(path).toAbsolutePath();
+        try (Reader reader = openSource(file)) {
+            // 将源代码文件送到run这个函数中进行处理，脚本中导入的模块相对于脚本所在的目录查找
+            run(reader, file.getParent());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
 
         // 如果代码中出现错误则停止运行并退出
         if (hadError) {
@@ -55,6 +201,37 @@ public class Lox {
         }
     }
 
+    // 源代码文件中无法解码的字节替换为替换字符，与一次性读入再转换为String时相同
+    static Reader openSource(Path path) throws IOException {
+        return new InputStreamReader(Files.newInputStream(path), Charset.defaultCharset());
+    }
+
+    // 把源代码文件预先编译为jar，之后用java -jar执行时不再经过扫描、解析和变量解析
+    private static void compileFile(String path, String jar) throws IOException {
+        List<Stmt> statements;
+        Path file = Paths.get(path).toAbsolutePath();
+        try (Reader reader = openSource(file)) {
+            Parser parser = new Parser(new Scanner(reader), file.getParent());
+            statements = parser.parse();
+            // 导入的模块一起编译进jar
+            LoxModule.await(parser.imports());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (!hadError) {
+            new Resolver().resolve(statements);
+        }
+        if (hadError) {
+            System.exit(65);
+        }
+        try {
+            AotCompiler.compile(statements, Paths.get(jar));
+        } catch (JitCompiler.Unsupported e) {
+            System.err.println("Can't compile " + path + ": " + e.getMessage());
+            System.exit(70);
+        }
+    }
+
     // 交互式的启动解释器，通过命令行与解释器进行逐句对话，启动时不需要加任何参数
     private static void runPrompt() throws IOException {
         InputStreamReader input = new InputStreamReader(System.in);
@@ -67,30 +244,29 @@ public class Lox {
             if (line == null) {
                 break;
             }
-            // 将命令行中输入的一行代码送到run函数中进行解析
-            run(line);
+            // 将命令行中输入的一行代码送到run函数中进行解析，导入的模块相对于当前目录查找
+            run(new StringReader(line), Paths.get("").toAbsolutePath());
             // 如果用户输入有误，不应该终止整个会话
             hadError = false;
         }
     }
 
     // 交互式提示符和文件运行工具都通过这个核心函数运行
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        // 读出所有token
-        List<Token> tokens = scanner.scanTokens();
-
-        // 输出所有扫描到的token
+    // 各个阶段分别记录为JFR事件，扫描是解析过程中按需进行的，计入解析阶段
+    private static void run(Reader source, Path directory) {
+        LoxEvents.ScriptPhase parsing = LoxEvents.beginPhase("parse");
+        // 扫描器按需产生token，解析器每取走一个token就输出它
         System.out.println("Scanning - Tokens:");
-        for (Token token : tokens) {
-            System.out.println(token);
-        }
+        Parser parser = new Parser(new Scanner(source).echo(System.out), directory);
+        // Expr expression = parser.parse();
+        List<Stmt> statements = parser.parse();
 
         System.out.println("----------");
 
-        Parser parser = new Parser(tokens);
-        // Expr expression = parser.parse();
-        List<Stmt> statements = parser.parse();
+        // 模块在解析时已经开始在后台加载，等它们全部加载完毕，模块中的错误同样阻止执行
+        LoxModule.await(parser.imports());
+        LoxEvents.endPhase(parsing);
+
         if (hadError) {
             return;
         }
@@ -100,24 +276,59 @@ public class Lox {
         // System.out.println("----------");
         // System.out.println("Execution - Expression interpreter output:");
 
-        Resolver resolver = new Resolver(interpreter);
+        LoxEvents.ScriptPhase resolving = LoxEvents.beginPhase("resolve");
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        LoxEvents.endPhase(resolving);
+        // 静态分析发现错误时同样不执行代码
         if (hadError) {
             return;
         }
-        resolver.resolve(statements);
 
         // interpreter.interpret(expression);
-        interpreter.interpret(statements);
+        // 只对执行阶段采样，扫描和解析的时间不计入
+        if (profileOutput != null) {
+            Profiler.start(profileRate);
+        }
+        LoxEvents.ScriptPhase executing = LoxEvents.beginPhase("execute");
+        try {
+            if (engine == Engine.VM) {
+                vm.interpret(statements);
+            } else {
+                interpreter().interpret(statements);
+            }
+        } finally {
+            LoxEvents.endPhase(executing);
+            if (profileOutput != null) {
+                stopProfiler();
+            }
+        }
+    }
+
+    // 停止采样并输出结果，统计表输出到stderr，不与程序的输出混在一起
+    private static void stopProfiler() {
+        try {
+            Profiler.stop(Paths.get(profileOutput), profileTop, System.err);
+        } catch (IOException e) {
+            System.err.println("Can't write profile " + profileOutput + ": " + e.getMessage());
+        }
     }
 
     // 错误处理 传入错误发生的行数和错误信息
-    static void error(int line, String message) {
+    public static void error(int line, String message) {
         report(line, " ", message);
     }
 
     // 打印出错误提示 将hadError置为true
     private static void report(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error" + where + ": " + message);
+        LoxModule module = LoxModule.loading();
+        if (module == null) {
+            System.err.println("[line " + line + "] Error" + where + ": " + message);
+        } else {
+            // 加载模块时发现的错误，标出模块的路径
+            module.hadError = true;
+            System.err.println("[" + module + ", line " + line + "] Error" + where + ": " + message);
+        }
         hadError = true;
     }
 
@@ -0,0 +1,84 @@
+package cn.gjz.lox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.Arrays;
+
+/**
+ * JIT生成的代码中每个普通调用(callee(args))对应的调用点
+ * 调用点的目标是一串以被调用者为条件的MethodHandle：见过的LoxFunction、LoxClass或本地函数各占一个条件，
+ * 都不满足时进入miss()检查被调用者和参数个数，再把新的被调用者链接到最前面
+ * 见过的被调用者超过MAX_TARGETS个之后调用点变为多态的，不再链接，每次都走通用的调用路径
+ * 生成的代码把调用点的dynamicInvoker()保存在static final字段中，JVM可以把链接好的目标一直内联到被调用的函数
+ */
+
+final class LoxCallSite extends MutableCallSite {
+
+    // 调用点的类型：被调用者、参数、解释器以及用于报错的右括号
+    static final MethodType TYPE = MethodType.methodType(Object.class, Object.class, Object[].class, Interpreter.class, Token.class);
+    // 一个调用点最多链接的被调用者个数
+    static final int MAX_TARGETS = 4;
+
+    private static final MethodHandle MISS;
+    private static final MethodHandle IS_SAME;
+    private static final MethodHandle CALL;
+    private static final MethodHandle GENERIC;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            MISS = lookup.findVirtual(LoxCallSite.class, "miss", TYPE);
+            IS_SAME = lookup.findStatic(LoxCallSite.class, "isSame", MethodType.methodType(boolean.class, Object.class, Object.class));
+            CALL = lookup.findStatic(LoxCallSite.class, "call", TYPE.insertParameterTypes(0, LoxCallable.class));
+            GENERIC = lookup.findStatic(JitRuntime.class, "call", TYPE);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private int targets = 0;
+
+    LoxCallSite() {
+        super(TYPE);
+        setTarget(MISS.bindTo(this));
+    }
+
+    private static boolean isSame(Object expected, Object callee) {
+        return expected == callee;
+    }
+
+    // 链接好的目标：被调用者和参数个数都已经在链接时检查过
+    private static Object call(LoxCallable function, Object callee, Object[] arguments, Interpreter interpreter, Token paren) {
+        Profiler.calling(paren);
+        try {
+            return function.call(interpreter, Arrays.asList(arguments));
+        } catch (StackOverflowError error) {
+            throw Interpreter.stackOverflow(paren);
+        }
+    }
+
+    private Object miss(Object callee, Object[] arguments, Interpreter interpreter, Token paren) {
+        if (!(callee instanceof LoxCallable)) {
+            throw new RuntimeError(paren, "Can only call functions and classes.");
+        }
+        LoxCallable function = (LoxCallable) callee;
+        if (arguments.length != function.arity()) {
+            throw new RuntimeError(paren, "Expected " + function.arity() + " arguments but got " + arguments.length + ".");
+        }
+        if (++targets > MAX_TARGETS) {
+            setTarget(GENERIC);
+        } else {
+            // 新的条件放在最前面，未命中时依次检查之前链接的被调用者，最后回到miss()
+            MethodHandle test = MethodHandles.dropArguments(IS_SAME.bindTo(callee), 1, Object[].class, Interpreter.class, Token.class);
+            setTarget(MethodHandles.guardWithTest(test, CALL.bindTo(function), getTarget()));
+        }
+        Profiler.calling(paren);
+        try {
+            return function.call(interpreter, Arrays.asList(arguments));
+        } catch (StackOverflowError error) {
+            throw Interpreter.stackOverflow(paren);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package cn.gjz.lox;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -11,26 +12,34 @@ public class LoxClass implements LoxCallable {
 
     final String name;
     final LoxClass superClass;
-    // 包含方法的map
-    private final Map<String, LoxFunction> methods;
+    // 包含方法的map，其中也包含了从父类链上继承来的方法
+    final Map<Symbol, LoxFunction> methods;
+    // 构造方法init()及其参数个数，没有构造方法时initializer为null、元数为0
+    private final LoxFunction initializer;
+    private final int arity;
+    // 该类实例的根形状，实例添加字段时从这里开始做形状转换
+    final Shape rootShape = new Shape(this);
+    // 该类的实例通常拥有的字段个数，用于在创建实例时预先分配字段数组
+    int expectedFields = 0;
 
-    LoxClass(String name, LoxClass superClass, Map<String, LoxFunction> methods) {
+    LoxClass(String name, LoxClass superClass, Map<Symbol, LoxFunction> methods) {
         this.name = name;
         this.superClass = superClass;
-        this.methods = methods;
-    }
-
-    // 查找类中的方法
-    LoxFunction findMethod(String name) {
-        // 首先在当前类中查找，然后遍历父类链；如果在子类和父类中包含相同的方法，那么子类中的方法将优先于或覆盖父类的方法
-        if (methods.containsKey(name)) {
-            return methods.get(name);
-        }
-        // 在子类实例上查找父类的方法
+        // 类定义之后不会再改变，所以在创建类时就把父类链上的方法展平到一个map中
+        // 先放入父类(已经展平)的方法，再放入当前类的方法；如果在子类和父类中包含相同的方法，那么子类中的方法将覆盖父类的方法
+        Map<Symbol, LoxFunction> flattened = new HashMap<>();
         if (superClass != null) {
-            return superClass.findMethod(name);
+            flattened.putAll(superClass.methods);
         }
-        return null;
+        flattened.putAll(methods);
+        this.methods = flattened;
+        this.initializer = flattened.get(Symbol.INIT);
+        this.arity = initializer == null ? 0 : initializer.arity();
+    }
+
+    // 查找类中的方法，查找时不需要再遍历父类链
+    LoxFunction findMethod(Symbol name) {
+        return methods.get(name);
     }
 
     @Override
@@ -41,24 +50,23 @@ public class LoxClass implements LoxCallable {
     // 当“调用”一个类时，它会为被调用的类实例化一个新的LoxInstance并返回
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        LoxInstance instance = new LoxInstance(this);
-        // 用户自定义的构造方法，为类建立新对象
-        LoxFunction initializer = findMethod("init");
-        if (initializer != null) {
-            initializer.bind(instance).call(interpreter, arguments);
+        LoxEvents.ClassInstantiation event = LoxEvents.beginInstantiation(name);
+        // 与LoxFunction.enter()一样，构造方法抛出运行时错误时同样结束事件
+        try {
+            LoxInstance instance = new LoxInstance(this);
+            // 用户自定义的构造方法，为类建立新对象
+            if (initializer != null) {
+                initializer.invoke(interpreter, instance, arguments);
+            }
+            return instance;
+        } finally {
+            LoxEvents.endInstantiation(event);
         }
-        return instance;
     }
 
     @Override
     public int arity() {
-        // 类构造方法init()的参数列表
-        LoxFunction initializer = findMethod("init");
-        // 没有构造方法元数仍然是0
-        if (initializer == null) {
-            return 0;
-        }
-        // 如果有构造方法，该方法的元数就决定了在调用类本身的时候需要传入多少个参数
-        return initializer.arity();
+        // 如果有构造方法，该方法的元数就决定了在调用类本身的时候需要传入多少个参数；没有构造方法元数仍然是0
+        return arity;
     }
 }
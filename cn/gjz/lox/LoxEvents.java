@@ -0,0 +1,141 @@
+package cn.gjz.lox;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 解释器发出的JDK Flight Recorder事件，在JDK Mission Control中与GC、JIT编译等事件显示在同一条时间线上
+ * 执行引擎只通过下面的begin/end方法发出事件：先检查事件是否开启，没有开启时不创建事件对象，只多出一次检查和分支
+ * 函数调用和类实例化默认只记录超过1毫秒的，可以在JFR配置中修改threshold，例如cn.gjz.lox.FunctionCall#threshold=0 ms
+ */
+
+public final class LoxEvents {
+
+    // 只用来检查各个事件是否开启
+    private static final FunctionCall CALLS = new FunctionCall(null);
+    private static final ClassInstantiation INSTANTIATIONS = new ClassInstantiation(null);
+    private static final ScriptPhase PHASES = new ScriptPhase(null);
+    private static final RuntimeErrorThrown RUNTIME_ERRORS = new RuntimeErrorThrown(null, 0);
+
+    private LoxEvents() {
+    }
+
+    @Name("cn.gjz.lox.FunctionCall")
+    @Label("Lox Function Call")
+    @Category("Lox")
+    @Description("A Lox function call, from entering the function to returning from it")
+    @Threshold("1 ms")
+    public static final class FunctionCall extends Event {
+        @Label("Function")
+        String function;
+
+        FunctionCall(String function) {
+            this.function = function;
+        }
+    }
+
+    @Name("cn.gjz.lox.ClassInstantiation")
+    @Label("Lox Class Instantiation")
+    @Category("Lox")
+    @Description("A Lox class called to create an instance, including its initializer")
+    @Threshold("1 ms")
+    public static final class ClassInstantiation extends Event {
+        @Label("Class")
+        String className;
+
+        ClassInstantiation(String className) {
+            this.className = className;
+        }
+    }
+
+    @Name("cn.gjz.lox.ScriptPhase")
+    @Label("Lox Script Phase")
+    @Category("Lox")
+    @Description("Parsing (scanning on demand and loading imported modules), resolving or executing a script")
+    @StackTrace(false)
+    public static final class ScriptPhase extends Event {
+        @Label("Phase")
+        String phase;
+
+        ScriptPhase(String phase) {
+            this.phase = phase;
+        }
+    }
+
+    @Name("cn.gjz.lox.RuntimeError")
+    @Label("Lox Runtime Error")
+    @Category("Lox")
+    @Description("A Lox runtime error thrown by any execution engine")
+    public static final class RuntimeErrorThrown extends Event {
+        @Label("Message")
+        String message;
+
+        @Label("Line")
+        int line;
+
+        RuntimeErrorThrown(String message, int line) {
+            this.message = message;
+            this.line = line;
+        }
+    }
+
+    // begin方法在事件没有开启时返回null，对应的end方法忽略null
+    // 字节码虚拟机把函数调用事件保存在调用帧中，返回时提交
+    public static FunctionCall beginCall(String function) {
+        if (!CALLS.isEnabled()) {
+            return null;
+        }
+        FunctionCall event = new FunctionCall(function);
+        event.begin();
+        return event;
+    }
+
+    public static void endCall(FunctionCall event) {
+        if (event != null) {
+            event.commit();
+        }
+    }
+
+    static ClassInstantiation beginInstantiation(String className) {
+        if (!INSTANTIATIONS.isEnabled()) {
+            return null;
+        }
+        ClassInstantiation event = new ClassInstantiation(className);
+        event.begin();
+        return event;
+    }
+
+    static void endInstantiation(ClassInstantiation event) {
+        if (event != null) {
+            event.commit();
+        }
+    }
+
+    static ScriptPhase beginPhase(String phase) {
+        if (!PHASES.isEnabled()) {
+            return null;
+        }
+        ScriptPhase event = new ScriptPhase(phase);
+        event.begin();
+        return event;
+    }
+
+    static void endPhase(ScriptPhase event) {
+        if (event != null) {
+            event.commit();
+        }
+    }
+
+    // 运行时错误是瞬时事件，创建错误时直接提交
+    static void runtimeError(String message, int line) {
+        if (!RUNTIME_ERRORS.isEnabled()) {
+            return;
+        }
+        new RuntimeErrorThrown(message, line).commit();
+    }
+}
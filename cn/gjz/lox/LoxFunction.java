@@ -4,27 +4,35 @@ import java.util.List;
 
 public class LoxFunction implements LoxCallable {
 
-    private final Stmt.Function declaration;
+    final Stmt.Function declaration;
 
     // 存储环境
-    private final Environment closure;
+    final Environment closure;
 
-    private final boolean isInitializer;
+    final boolean isInitializer;
+
+    // 是否是类中的方法，方法被调用时this保存在方法环境的槽位0中
+    final boolean isMethod;
+
+    // 绑定方法的接收者，普通函数和还没有绑定的方法为null
+    final LoxInstance receiver;
 
     LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer) {
+        this(declaration, closure, isInitializer, false, null);
+    }
+
+    LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer, boolean isMethod, LoxInstance receiver) {
         this.closure = closure;
         this.declaration = declaration;
         this.isInitializer = isInitializer;
+        this.isMethod = isMethod;
+        this.receiver = receiver;
     }
 
-    // 基于方法的原始闭包创建了一个新的环境，就像是闭包内的闭包
-    // 当方法被调用时，它将变成方法体对应环境的父环境
+    // 只有把方法当作值来使用时(例如var m = obj.method;)才需要创建绑定了接收者的方法
+    // 绑定方法只记住接收者，等到被调用时再把接收者放入方法的环境中
     LoxFunction bind(LoxInstance instance) {
-        // 将this声明为该环境中的一个变量，并将其绑定到给定的实例
-        Environment environment = new Environment(closure);
-        environment.define("this", instance);
-        // 在创建闭包并将this绑定到新方法时，将原始方法的值传递给新方法
-        return new LoxFunction(declaration, environment, isInitializer);
+        return new LoxFunction(declaration, closure, isInitializer, true, instance);
     }
 
     // 返回函数参数个数
@@ -37,30 +45,90 @@ public class LoxFunction implements LoxCallable {
     // call()会告诉解释器在这个新的函数局部环境中执行函数体
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
+        return trampoline(interpreter, enter(interpreter, receiver, arguments));
+    }
+
+    // 以instance作为this直接调用方法，不需要先创建绑定方法
+    Object invoke(Interpreter interpreter, LoxInstance instance, List<Object> arguments) {
+        return trampoline(interpreter, enter(interpreter, instance, arguments));
+    }
+
+    // 以尾调用的方式调用这个函数，instance是方法的接收者，普通函数为null
+    TailCall tailCall(LoxInstance instance, List<Object> arguments) {
+        return new TailCall(this, instance, arguments);
+    }
+
+    TailCall tailCall(List<Object> arguments) {
+        return new TailCall(this, receiver, arguments);
+    }
+
+    // 函数体以尾调用结束时返回的是TailCall，在这里的循环中依次执行，Java栈不会随着尾调用的次数增长
+    private static Object trampoline(Interpreter interpreter, Object result) {
+        while (result instanceof TailCall) {
+            TailCall call = (TailCall) result;
+            result = call.function.enter(interpreter, call.receiver, call.arguments);
+        }
+        return result;
+    }
+
+    // 在新的环境中执行一次函数体，结果可能是还没有执行的尾调用
+    // 性能分析时在影子栈中记录这一次调用，函数返回(包括返回尾调用)或者抛出异常时弹出
+    // JFR事件同样在这时结束，尾调用的被调用者由trampoline()再次进入，单独记录
+    private Object enter(Interpreter interpreter, LoxInstance instance, List<Object> arguments) {
+        if (Metrics.ENABLED) {
+            Metrics.call();
+        }
+        LoxEvents.FunctionCall event = LoxEvents.beginCall(declaration.name.lexeme);
+        boolean profiling = Profiler.enabled();
+        if (profiling) {
+            Profiler.enter(declaration.name.lexeme);
+        }
+        try {
+            return execute(interpreter, instance, arguments);
+        } finally {
+            if (profiling) {
+                Profiler.exit();
+            }
+            LoxEvents.endCall(event);
+        }
+    }
+
+    private Object execute(Interpreter interpreter, LoxInstance instance, List<Object> arguments) {
         // 动态创建函数的环境 每次函数调用都会获得自己的环境
         // 创建了一个环境链，从函数体开始，经过函数被声明的环境，然后到全局作用域
-        Environment environment = new Environment(closure);
+        Environment environment;
+        if (isMethod) {
+            // 接收者占用方法环境的槽位0，参数依次排在它后面
+            environment = new Environment(closure, declaration.params.size() + 1);
+            environment.define(Symbol.THIS, instance);
+        } else {
+            environment = new Environment(closure, declaration.params.size());
+        }
         // 以同步的方式遍历形参和实参列表，将每个函数中的变量存储在自己的环境中
         for (int i = 0; i < declaration.params.size(); i++) {
             // 对每一对参数，用形参的名字创建一个新的变量，并将其与实参的值绑定
-            environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+            environment.define(declaration.params.get(i).symbol, arguments.get(i));
         }
         // 通过在执行函数主体时使用不同的环境，用同样的代码调用相同的函数可以产生不同的结果
-        try {
-            // 如果没有捕获任何异常，意味着函数到达了函数体的末尾，而且没有遇到return语句，在这种情况下，隐式地返回nil
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (Return returnValue) {
-            // 构造方法的return返回this
-            if (isInitializer) {
-                return closure.getAt(0, "this");
-            }
-            return returnValue.value;
-        }
-        // 如果该函数是一个构造方法，覆盖实际的返回值并强行返回this
+        Object result = interpreter.executeBody(declaration, environment);
+        // 如果该函数是一个构造方法，覆盖实际的返回值并强行返回this(构造方法中不能return一个值，所以也不会有尾调用)
         if (isInitializer) {
-            return closure.getAt(0, "this");
+            return instance;
+        }
+        return result;
+    }
+
+    // 尚未执行的尾调用
+    static final class TailCall {
+        final LoxFunction function;
+        final LoxInstance receiver;
+        final List<Object> arguments;
+
+        private TailCall(LoxFunction function, LoxInstance receiver, List<Object> arguments) {
+            this.function = function;
+            this.receiver = receiver;
+            this.arguments = arguments;
         }
-        return null;
     }
 
     @Override
@@ -1,30 +1,41 @@
 package cn.gjz.lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * Lox类实例的运行时表示
  */
 
 public class LoxInstance {
-    private LoxClass klass;
+    private static final Object[] EMPTY = new Object[0];
 
-    // map中的每个键是一个属性名称，对应的值就是该属性的值
-    private final Map<String, Object> fields = new HashMap<>();
+    final LoxClass klass;
+
+    // 实例的形状决定了每个字段在fields数组中的下标，同一个类中字段添加顺序相同的实例共享形状
+    Shape shape;
+    Object[] fields = EMPTY;
 
     public LoxInstance(LoxClass klass) {
         this.klass = klass;
+        this.shape = klass.rootShape;
+        // 按照该类实例通常拥有的字段个数预先分配数组，避免在构造方法中反复扩容
+        if (klass.expectedFields > 0) {
+            this.fields = new Object[klass.expectedFields];
+        }
+        if (Metrics.ENABLED) {
+            Metrics.instance();
+        }
     }
 
     // 查找实例中的一个属性
     Object get(Token name) {
-        if (fields.containsKey(name.lexeme)) {
-            return fields.get(name.lexeme);
+        int slot = shape.slotOf(name.symbol);
+        if (slot >= 0) {
+            return fields[slot];
         }
         // 在实例上查找属性时，如果没有找到匹配的字段，就在实例的类中查找是否包含该名称的方法
         // 当访问一个属性时，可能会得到一个字段（存储在实例上的状态值），或者会得到一个实例类中定义的方法
-        LoxFunction method = klass.findMethod(name.lexeme);
+        LoxFunction method = klass.findMethod(name.symbol);
         if (method != null) {
             return method.bind(this);
         }
@@ -32,7 +43,26 @@ public class LoxInstance {
     }
 
     void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+        int slot = shape.slotOf(name.symbol);
+        if (slot >= 0) {
+            fields[slot] = value;
+            return;
+        }
+        // 新字段：转换到新的形状，字段追加在数组末尾
+        addField(shape.addField(name.symbol), value);
+    }
+
+    // 切换到添加了一个字段之后的形状，并写入新字段的值
+    void addField(Shape next, Object value) {
+        int slot = shape.size();
+        if (slot == fields.length) {
+            fields = Arrays.copyOf(fields, Math.max(4, slot * 2));
+        }
+        fields[slot] = value;
+        shape = next;
+        if (slot >= klass.expectedFields) {
+            klass.expectedFields = slot + 1;
+        }
     }
 
     @Override
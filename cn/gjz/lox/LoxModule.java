@@ -0,0 +1,130 @@
+package cn.gjz.lox;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * import "path";导入的模块
+ * 同一个进程中每个模块文件只扫描、解析和变量解析一次，得到的语法树保存在缓存中，之后的导入直接使用，各个执行引擎共享
+ * 解析器解析到import语句时就在后台线程中开始加载，模块中的import语句同样如此，互不依赖的模块并行加载
+ * 模块没有单独的命名空间：它的顶层代码在导入者的全局环境中执行，定义的变量、函数和类直接绑定到导入者的全局环境中
+ */
+
+public final class LoxModule {
+
+    // 已经加载或正在加载的模块，键是规范化之后的绝对路径
+    private static final Map<Path, LoxModule> CACHE = new ConcurrentHashMap<>();
+    // 当前线程正在加载的模块，报告错误时标出出错的文件
+    private static final ThreadLocal<LoxModule> LOADING = new ThreadLocal<>();
+
+    final Path path;
+    private final CompletableFuture<List<Stmt>> statements;
+    // 模块中的import语句导入的模块，在加载完成前写入
+    private List<LoxModule> imports;
+    // 加载时是否报告过错误，出错的模块在加载完成后移出缓存，下次导入时重新加载
+    volatile boolean hadError = false;
+
+    private LoxModule(Path path) {
+        this.path = path;
+        this.statements = CompletableFuture.supplyAsync(this::parse);
+    }
+
+    // 开始加载相对于directory的模块，已经加载过或者正在加载时返回缓存中的模块，文件无法读取时返回null
+    static LoxModule load(Path directory, String path) {
+        Path file;
+        try {
+            file = directory.resolve(path).toAbsolutePath().normalize();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+        LoxModule module = CACHE.get(file);
+        if (module == null) {
+            if (!Files.isRegularFile(file) || !Files.isReadable(file)) {
+                return null;
+            }
+            module = CACHE.computeIfAbsent(file, LoxModule::new);
+        }
+        return module;
+    }
+
+    // 当前线程正在加载的模块，不在加载模块时返回null
+    static LoxModule loading() {
+        return LOADING.get();
+    }
+
+    // 等待这些模块以及它们间接导入的模块全部加载完毕，之后才能检查是否有错误并执行程序
+    // 加载不会等待被导入的模块，所以循环导入不会互相等待
+    static void await(List<LoxModule> modules) {
+        Set<LoxModule> visited = new HashSet<>(modules);
+        Deque<LoxModule> pending = new ArrayDeque<>(modules);
+        while (!pending.isEmpty()) {
+            LoxModule module = pending.poll();
+            try {
+                module.statements();
+            } catch (RuntimeException e) {
+                CACHE.remove(module.path, module);
+                throw e;
+            }
+            if (module.hadError) {
+                CACHE.remove(module.path, module);
+            }
+            for (LoxModule imported : module.imports) {
+                if (visited.add(imported)) {
+                    pending.add(imported);
+                }
+            }
+        }
+    }
+
+    // 模块的顶层语句，加载完成之前调用时等待加载完成
+    public List<Stmt> statements() {
+        try {
+            return statements.join();
+        } catch (CompletionException e) {
+            // 读取文件时的IO错误与读取主脚本时一样向外抛出
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw (UncheckedIOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // 在后台线程中扫描、解析并完成变量解析，模块中的错误与主脚本一样报告给Lox
+    private List<Stmt> parse() {
+        LOADING.set(this);
+        try (Reader reader = Lox.openSource(path)) {
+            Parser parser = new Parser(new Scanner(reader), path.getParent());
+            List<Stmt> statements = parser.parse();
+            imports = parser.imports();
+            if (!hadError) {
+                new Resolver().resolve(statements);
+            }
+            return statements;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            LOADING.remove();
+        }
+    }
+
+    // 报告错误时使用相对于当前目录的路径
+    @Override
+    public String toString() {
+        Path current = Paths.get("").toAbsolutePath();
+        return path.startsWith(current) ? current.relativize(path).toString() : path.toString();
+    }
+}
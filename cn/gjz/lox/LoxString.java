@@ -0,0 +1,97 @@
+package cn.gjz.lox;
+
+/**
+ * 字符串拼接的结果
+ * 字面量仍然是String，a + b的结果是共享一个可追加缓冲区的LoxString：左操作数正好是缓冲区的全部内容时，
+ * 右操作数直接追加到缓冲区末尾，新的字符串只是缓冲区更长的一个前缀，所以s = s + x的循环总共只复制线性长度的字符
+ * 输出、比较相等和计算哈希值时才展开为String，展开的结果会被缓存
+ */
+
+public final class LoxString implements CharSequence {
+
+    // 结果比这更短时直接拼接为String，短字符串不值得占用一个缓冲区
+    private static final int MIN_BUFFER_LENGTH = 64;
+
+    // 可能被多个LoxString共享，每个LoxString只看到其中的前length个字符，缓冲区只会在末尾追加
+    private final StringBuilder buffer;
+    private final int length;
+    // 展开后的字符串
+    private String flat;
+
+    private LoxString(StringBuilder buffer, int length) {
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    // Lox中的字符串值：字面量String或者拼接得到的LoxString
+    public static boolean isString(Object value) {
+        return value instanceof String || value instanceof LoxString;
+    }
+
+    // 拼接两个字符串值，调用者已经检查过两个操作数都是字符串
+    public static Object concat(Object left, Object right) {
+        CharSequence head = (CharSequence) left;
+        CharSequence tail = (CharSequence) right;
+        int length = head.length() + tail.length();
+        if (length < MIN_BUFFER_LENGTH) {
+            return head.toString().concat(tail.toString());
+        }
+        if (head instanceof LoxString) {
+            LoxString string = (LoxString) head;
+            // 缓冲区后面还没有被其他字符串使用时才能原地追加
+            if (string.buffer.length() == string.length) {
+                string.buffer.append(tail.toString());
+                return new LoxString(string.buffer, length);
+            }
+        }
+        StringBuilder buffer = new StringBuilder(length + (length >> 1));
+        buffer.append(head.toString()).append(tail.toString());
+        return new LoxString(buffer, length);
+    }
+
+    // 按内容比较两个值，其中至少有一个是LoxString
+    public static boolean contentEquals(Object a, Object b) {
+        if (!isString(a) || !isString(b)) {
+            return false;
+        }
+        CharSequence left = (CharSequence) a;
+        CharSequence right = (CharSequence) b;
+        return left.length() == right.length() && left.toString().equals(right.toString());
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        return buffer.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (flat == null) {
+            flat = buffer.substring(0, length);
+        }
+        return flat;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        return object instanceof LoxString && contentEquals(this, object);
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
@@ -0,0 +1,133 @@
+package cn.gjz.lox;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * 解释器的运行指标，以JMX MBean的形式提供给jconsole等工具(-Dlox.metrics=true时开启)
+ * 计数器使用LongAdder，多个线程同时计数时各自累加到不同的单元，读取时才求和
+ * 执行引擎在热点路径上先检查ENABLED再计数；ENABLED是static final，关闭时JIT编译器把检查和计数一起当作死代码删除
+ */
+
+public final class Metrics implements MetricsMBean {
+
+    public static final boolean ENABLED = Boolean.getBoolean("lox.metrics");
+
+    private static final LongAdder CALLS = new LongAdder();
+    private static final LongAdder ENVIRONMENTS = new LongAdder();
+    private static final LongAdder INSTANCES = new LongAdder();
+    private static final LongAdder RUNTIME_ERRORS = new LongAdder();
+    private static final LongAdder ANCESTOR_WALKS = new LongAdder();
+    private static final LongAdder ANCESTOR_DEPTH = new LongAdder();
+    private static final LongAdder STATEMENTS = new LongAdder();
+
+    // 上一次读取每秒语句条数时的语句条数和时间
+    private long lastStatements = 0;
+    private long lastNanos = System.nanoTime();
+
+    private Metrics() {
+    }
+
+    // 开启时注册MBean，进程中只注册一次
+    static synchronized void register() {
+        if (!ENABLED) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName("cn.gjz.lox:type=Metrics");
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new Metrics(), name);
+            }
+        } catch (JMException e) {
+            System.err.println("Can't register metrics: " + e.getMessage());
+        }
+    }
+
+    // 以下计数方法的调用者先检查ENABLED，public方法也供字节码虚拟机使用
+    public static void call() {
+        CALLS.increment();
+    }
+
+    static void environment() {
+        ENVIRONMENTS.increment();
+    }
+
+    public static void instance() {
+        INSTANCES.increment();
+    }
+
+    static void runtimeError() {
+        RUNTIME_ERRORS.increment();
+    }
+
+    static void ancestor(int distance) {
+        ANCESTOR_WALKS.increment();
+        ANCESTOR_DEPTH.add(distance);
+    }
+
+    static void statement() {
+        STATEMENTS.increment();
+    }
+
+    @Override
+    public long getCalls() {
+        return CALLS.sum();
+    }
+
+    @Override
+    public long getEnvironments() {
+        return ENVIRONMENTS.sum();
+    }
+
+    @Override
+    public long getInstances() {
+        return INSTANCES.sum();
+    }
+
+    @Override
+    public long getRuntimeErrors() {
+        return RUNTIME_ERRORS.sum();
+    }
+
+    @Override
+    public long getAncestorWalks() {
+        return ANCESTOR_WALKS.sum();
+    }
+
+    @Override
+    public double getAverageAncestorDepth() {
+        long walks = ANCESTOR_WALKS.sum();
+        return walks == 0 ? 0 : (double) ANCESTOR_DEPTH.sum() / walks;
+    }
+
+    @Override
+    public long getStatements() {
+        return STATEMENTS.sum();
+    }
+
+    @Override
+    public synchronized double getStatementsPerSecond() {
+        long statements = STATEMENTS.sum();
+        long now = System.nanoTime();
+        double rate = now == lastNanos ? 0 : (statements - lastStatements) * 1e9 / (now - lastNanos);
+        lastStatements = statements;
+        lastNanos = now;
+        return rate;
+    }
+
+    @Override
+    public synchronized void reset() {
+        CALLS.reset();
+        ENVIRONMENTS.reset();
+        INSTANCES.reset();
+        RUNTIME_ERRORS.reset();
+        ANCESTOR_WALKS.reset();
+        ANCESTOR_DEPTH.reset();
+        STATEMENTS.reset();
+        lastStatements = 0;
+        lastNanos = System.nanoTime();
+    }
+}
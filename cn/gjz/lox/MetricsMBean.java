@@ -0,0 +1,33 @@
+package cn.gjz.lox;
+
+/**
+ * 解释器运行指标的JMX接口，在jconsole等工具中显示为cn.gjz.lox:type=Metrics
+ */
+
+public interface MetricsMBean {
+
+    // 执行过的Lox函数调用次数
+    long getCalls();
+
+    // 创建过的Environment个数
+    long getEnvironments();
+
+    // 创建过的类实例个数
+    long getInstances();
+
+    // 抛出过的运行时错误个数
+    long getRuntimeErrors();
+
+    // 按距离查找变量所在环境的次数，以及平均每次沿着环境链向上走过的层数
+    long getAncestorWalks();
+
+    double getAverageAncestorDepth();
+
+    // 执行过的语句条数，以及从上一次读取这个属性到现在平均每秒执行的语句条数
+    long getStatements();
+
+    double getStatementsPerSecond();
+
+    // 所有计数清零
+    void reset();
+}
@@ -0,0 +1,35 @@
+package cn.gjz.lox;
+
+/**
+ * 节点解释器中节点树的节点
+ * 节点可以在运行时用另一个节点替换自己(节点重写)，父节点负责把对应的子节点引用换成新的节点
+ */
+
+abstract class Node {
+    // 父节点，根节点为null
+    Node parent;
+    // 已经被替换掉的节点不再属于节点树，例如递归调用中内层的求值已经完成了替换，外层仍在执行旧节点
+    // 这样的节点不能再替换自己，否则会从新节点手中抢走子节点
+    boolean replaced = false;
+
+    // 把子节点挂到当前节点下
+    <T extends Node> T adopt(T child) {
+        if (child != null) {
+            child.parent = this;
+        }
+        return child;
+    }
+
+    // 在父节点中用replacement替换当前节点，当前这次求值仍然由旧节点完成，之后的求值都会进入新节点
+    <T extends Node> T replace(T replacement) {
+        replaced = true;
+        parent.replaceChild(this, replacement);
+        replacement.parent = parent;
+        return replacement;
+    }
+
+    // 有子节点可能被替换的节点需要覆盖这个方法
+    void replaceChild(Node oldChild, Node newChild) {
+        throw new IllegalStateException("Node has no replaceable child.");
+    }
+}
@@ -0,0 +1,207 @@
+package cn.gjz.lox;
+
+import java.util.List;
+
+/**
+ * 把已经通过Resolver静态检查的语法树转换为节点解释器的节点树
+ * 二元、一元和逻辑表达式都转换为未初始化的节点，由它们在运行时自行特化
+ * 函数体和方法体的节点树保存在函数声明的语法树节点上
+ */
+
+final class NodeBuilder implements Expr.Visitor<ExprNode>, Stmt.Visitor<StmtNode> {
+
+    private final Interpreter interpreter;
+
+    NodeBuilder(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    StmtNode.Sequence build(List<Stmt> statements) {
+        return new StmtNode.Sequence(buildStatements(statements));
+    }
+
+    private StmtNode[] buildStatements(List<Stmt> statements) {
+        StmtNode[] nodes = new StmtNode[statements.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = build(statements.get(i));
+        }
+        return nodes;
+    }
+
+    // 开启运行指标时每条语句外面套一个计数节点，关闭时节点树不变
+    private StmtNode build(Stmt stmt) {
+        if (stmt == null) {
+            return null;
+        }
+        StmtNode node = stmt.accept(this);
+        return Metrics.ENABLED ? new StmtNode.Counted(node) : node;
+    }
+
+    private ExprNode build(Expr expr) {
+        return expr == null ? null : expr.accept(this);
+    }
+
+    private ExprNode[] buildArguments(List<Expr> exprs) {
+        ExprNode[] nodes = new ExprNode[exprs.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = build(exprs.get(i));
+        }
+        return nodes;
+    }
+
+    // 函数体只转换一次
+    void buildBody(Stmt.Function function) {
+        if (function.node == null) {
+            function.node = build(function.body);
+        }
+    }
+
+    @Override
+    public ExprNode visitAssignExpr(Expr.Assign expr) {
+        ExprNode value = build(expr.value);
+        if (expr.depth >= 0) {
+            return new ExprNode.LocalAssign(expr.depth, expr.slot, value);
+        }
+        return new ExprNode.GlobalAssign(expr.name, interpreter.globals, value);
+    }
+
+    @Override
+    public ExprNode visitBinaryExpr(Expr.Binary expr) {
+        return new ExprNode.UninitializedBinary(expr.operator, build(expr.left), build(expr.right));
+    }
+
+    @Override
+    public ExprNode visitCallExpr(Expr.Call expr) {
+        return buildCall(expr, false);
+    }
+
+    // tail为true时构建return语句中的尾调用
+    private ExprNode buildCall(Expr.Call expr, boolean tail) {
+        if (expr.callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get) expr.callee;
+            return new ExprNode.Invoke(interpreter, build(get.object), get.name, expr.paren, buildArguments(expr.arguments), tail);
+        }
+        if (expr.callee instanceof Expr.Super) {
+            return new ExprNode.SuperInvoke(interpreter, (Expr.Super) expr.callee, expr.paren, buildArguments(expr.arguments), tail);
+        }
+        return new ExprNode.Call(interpreter, build(expr.callee), expr.paren, buildArguments(expr.arguments), tail);
+    }
+
+    @Override
+    public ExprNode visitGetExpr(Expr.Get expr) {
+        return new ExprNode.Get(build(expr.object), expr.name);
+    }
+
+    @Override
+    public ExprNode visitGroupingExpr(Expr.Grouping expr) {
+        return build(expr.expression);
+    }
+
+    @Override
+    public ExprNode visitLiteralExpr(Expr.Literal expr) {
+        return new ExprNode.Literal(expr.value);
+    }
+
+    @Override
+    public ExprNode visitLogicalExpr(Expr.Logical expr) {
+        return new ExprNode.UninitializedLogical(expr.operator, build(expr.left), build(expr.right));
+    }
+
+    @Override
+    public ExprNode visitSetExpr(Expr.Set expr) {
+        return new ExprNode.Set(build(expr.object), expr.name, build(expr.value));
+    }
+
+    @Override
+    public ExprNode visitSuperExpr(Expr.Super expr) {
+        return new ExprNode.Super(expr);
+    }
+
+    @Override
+    public ExprNode visitThisExpr(Expr.This expr) {
+        return new ExprNode.LocalRead(expr.depth, expr.slot);
+    }
+
+    @Override
+    public ExprNode visitUnaryExpr(Expr.Unary expr) {
+        if (expr.operator.type == TokenType.BANG) {
+            return new ExprNode.Not(expr.operator, build(expr.right));
+        }
+        return new ExprNode.UninitializedNegate(expr.operator, build(expr.right));
+    }
+
+    @Override
+    public ExprNode visitVariableExpr(Expr.Variable expr) {
+        if (expr.depth >= 0) {
+            return new ExprNode.LocalRead(expr.depth, expr.slot);
+        }
+        return new ExprNode.GlobalRead(expr.name, interpreter.globals);
+    }
+
+    @Override
+    public StmtNode visitBlockStmt(Stmt.Block stmt) {
+        return new StmtNode.Block(buildStatements(stmt.statements));
+    }
+
+    @Override
+    public StmtNode visitBreakStmt(Stmt.Break stmt) {
+        return new StmtNode.Break();
+    }
+
+    @Override
+    public StmtNode visitContinueStmt(Stmt.Continue stmt) {
+        return new StmtNode.Continue();
+    }
+
+    @Override
+    public StmtNode visitClassStmt(Stmt.Class stmt) {
+        for (Stmt.Function method : stmt.methods) {
+            buildBody(method);
+        }
+        return new StmtNode.Class(stmt, build(stmt.superclass));
+    }
+
+    @Override
+    public StmtNode visitExpressionStmt(Stmt.Expression stmt) {
+        return new StmtNode.Expression(build(stmt.expression));
+    }
+
+    @Override
+    public StmtNode visitFunctionStmt(Stmt.Function stmt) {
+        buildBody(stmt);
+        return new StmtNode.Function(stmt);
+    }
+
+    @Override
+    public StmtNode visitIfStmt(Stmt.If stmt) {
+        return new StmtNode.If(build(stmt.condition), build(stmt.thenBranch), build(stmt.elseBranch));
+    }
+
+    @Override
+    public StmtNode visitImportStmt(Stmt.Import stmt) {
+        return new StmtNode.Import(interpreter, stmt);
+    }
+
+    @Override
+    public StmtNode visitPrintStmt(Stmt.Print stmt) {
+        return new StmtNode.Print(build(stmt.expression));
+    }
+
+    @Override
+    public StmtNode visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tailCall) {
+            return new StmtNode.Return(buildCall((Expr.Call) stmt.value, true));
+        }
+        return new StmtNode.Return(build(stmt.value));
+    }
+
+    @Override
+    public StmtNode visitVarStmt(Stmt.Var stmt) {
+        return new StmtNode.Var(stmt.name.symbol, build(stmt.initializer));
+    }
+
+    @Override
+    public StmtNode visitWhileStmt(Stmt.While stmt) {
+        return new StmtNode.While(build(stmt.condition), build(stmt.body), build(stmt.increment));
+    }
+}
@@ -0,0 +1,41 @@
+package cn.gjz.lox;
+
+import java.util.List;
+
+/**
+ * 节点解释器：把语法树转换为可以自我特化的节点树再执行
+ * 与树遍历解释器共享全局环境、本地函数以及LoxFunction、LoxClass、LoxInstance等运行时对象
+ * 数字运算通过executeDouble()传递未装箱的值，数字类型的局部变量也以未装箱的形式保存在环境中
+ */
+
+public class NodeInterpreter extends Interpreter {
+
+    private final NodeBuilder builder = new NodeBuilder(this);
+
+    @Override
+    public void interpret(List<Stmt> statements) {
+        StmtNode program = builder.build(statements);
+        try {
+            program.execute(globals);
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    // 模块的顶层代码同样先转换为节点树
+    @Override
+    void executeModule(List<Stmt> statements) {
+        builder.build(statements).execute(globals);
+    }
+
+    // 函数体的节点树在转换函数声明时已经生成，函数体正常执行完毕时隐式地返回nil
+    // 从快照恢复的函数还没有节点树，第一次调用时生成
+    @Override
+    Object executeBody(Stmt.Function declaration, Environment environment) {
+        if (declaration.node == null) {
+            builder.buildBody(declaration);
+        }
+        Object result = declaration.node.execute(environment);
+        return result == StmtNode.NORMAL ? null : result;
+    }
+}
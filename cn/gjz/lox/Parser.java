@@ -1,5 +1,6 @@
 package cn.gjz.lox;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -15,12 +16,21 @@ public class Parser {
     private static class ParseError extends RuntimeException {
     }
 
-    private final List<Token> tokens;
-    // 指向下一个标记待解析的标记
-    private int current = 0;
+    // 按需扫描标记的扫描器，最后一个标记是EOF
+    private final Scanner scanner;
+    // 下一个待解析的标记以及上一个消费了的标记在扫描器中的序号
+    // 只按序号读取类型，需要放进语法树或者报告错误时才创建Token
+    private int current;
+    private int previous = -1;
+    // 源代码所在的目录，import语句中的相对路径从这里开始查找
+    private final Path directory;
+    // 解析过程中遇到的import语句已经开始加载的模块
+    private final List<LoxModule> imports = new ArrayList<>();
 
-    public Parser(List<Token> tokens) {
-        this.tokens = tokens;
+    public Parser(Scanner scanner, Path directory) {
+        this.scanner = scanner;
+        this.directory = directory;
+        this.current = scanner.scan();
     }
 
     // 尽可能多地解析一系列语句，直到命中输入内容的结尾为止 直接将program规则转换为递归下降风格的方式
@@ -31,6 +41,11 @@ public class Parser {
         }
         return statements;
     }
+
+    // 解析得到的import语句导入的模块，不包括它们间接导入的模块
+    List<LoxModule> imports() {
+        return imports;
+    }
     // 初始方法来启动解析器
     // Expr parse() {
     //     try {
@@ -65,6 +80,10 @@ public class Parser {
             if (match(VAR)) {
                 return varDeclaration();
             }
+            // 匹配import关键字
+            if (match(IMPORT)) {
+                return importDeclaration();
+            }
             // 进入statement方法解析print和语句表达式
             return statement();
         } catch (ParseError error) {
@@ -73,10 +92,26 @@ public class Parser {
         }
     }
 
+    // 解析import "path";
+    // 解析到完整的import语句时就开始在后台加载模块，解析器继续解析后面的代码，多个模块同时加载
+    private Stmt importDeclaration() {
+        Token keyword = previous();
+        Token path = consumeToken(STRING, "Expect module path after 'import'.");
+        consume(SEMICOLON, "Expect ';' after module path.");
+        LoxModule module = LoxModule.load(directory, (String) path.literal);
+        if (module == null) {
+            // 只报告错误，不需要进入错误恢复
+            error(path, "Can't read module.");
+        } else {
+            imports.add(module);
+        }
+        return new Stmt.Import(keyword, path, module);
+    }
+
     // 解析class定义
     private Stmt classDeclaration() {
         // 查找预期的类名
-        Token name = consume(IDENTIFIER, "Expect class name.");
+        Token name = consumeToken(IDENTIFIER, "Expect class name.");
         // 匹配 < 解析可能存在的父类
         Expr.Variable superClass = null;
         if (match(LESS)) {
@@ -115,6 +150,17 @@ public class Parser {
         if (match(RETURN)) {
             return returnStatement();
         }
+        // 匹配break和continue关键字
+        if (match(BREAK)) {
+            Token keyword = previous();
+            consume(SEMICOLON, "Expect ';' after 'break'.");
+            return new Stmt.Break(keyword);
+        }
+        if (match(CONTINUE)) {
+            Token keyword = previous();
+            consume(SEMICOLON, "Expect ';' after 'continue'.");
+            return new Stmt.Continue(keyword);
+        }
         // 检测当前statement是否以while开头
         if (match(WHILE)) {
             return whileStatement();
@@ -158,15 +204,12 @@ public class Parser {
         // 循环主体
         Stmt body = statement();
         // 语法糖脱糖：利用上面匹配到的变量合成表示for循环语义的语法树节点，从后向前处理
-        if (increment != null) {
-            // 如果存在增量子句的话，会在循环的每个迭代中在循环体结束之后执行
-            body = new Stmt.Block(Arrays.asList(body, new Stmt.Expression(increment)));
-        }
+        // 如果存在增量子句的话，会在循环的每个迭代中在循环体结束之后(包括执行了continue之后)执行，因此单独保存在While中
         // 获取条件式和循环体，如果条件式被省略了就使用true来创建一个无限循环
         if (condition == null) {
             condition = new Expr.Literal(true);
         }
-        body = new Stmt.While(condition, body);
+        body = new Stmt.While(condition, body, increment);
         if (initializer != null) {
             body = new Stmt.Block(Arrays.asList(initializer, body));
         }
@@ -209,7 +252,7 @@ public class Parser {
     // 当解析器匹配到一个var标记时，执行如下匹配
     private Stmt varDeclaration() {
         // 消费一个标识符标记作为变量的名称
-        Token name = consume(IDENTIFIER, "Expect variable name.");
+        Token name = consumeToken(IDENTIFIER, "Expect variable name.");
         Expr initializer = null;
         // 匹配等号
         if (match(EQUAL)) {
@@ -228,7 +271,7 @@ public class Parser {
         Expr condition = expression();
         consume(RIGHT_PAREN, "Expect ')' after condition.");
         Stmt body = statement();
-        return new Stmt.While(condition, body);
+        return new Stmt.While(condition, body, null);
     }
 
     // 没有匹配到print语句，那一定是一条下面的语句 解析一个后面带分号的表达式
@@ -241,7 +284,7 @@ public class Parser {
     // 解析函数定义语法
     private Stmt.Function function(String kind) {
         // 消费标识符标记作为函数名称
-        Token name = consume(IDENTIFIER, "Expect " + kind + " name.");
+        Token name = consumeToken(IDENTIFIER, "Expect " + kind + " name.");
         consume(LEFT_PAREN, "Expect '(' after " + kind + " name.");
         List<Token> parameters = new ArrayList<>();
         if (!check(RIGHT_PAREN)) {
@@ -249,7 +292,7 @@ public class Parser {
                 if (parameters.size() >= 255) {
                     error(peek(), "Can't have more than 255 parameters.");
                 }
-                parameters.add(consume(IDENTIFIER, "Expect parameter name."));
+                parameters.add(consumeToken(IDENTIFIER, "Expect parameter name."));
             } while (match(COMMA));
         }
         consume(RIGHT_PAREN, "Expect ')' after parameters.");
@@ -383,7 +426,7 @@ public class Parser {
             } while (match(COMMA));
         }
         // 消费预期的)
-        Token paren = consume(RIGHT_PAREN, "Expect ')' after arguments.");
+        Token paren = consumeToken(RIGHT_PAREN, "Expect ')' after arguments.");
         // 封装成函数调用的AST节点
         return new Expr.Call(callee, paren, arguments);
     }
@@ -399,7 +442,7 @@ public class Parser {
                 expr = finalCall(expr);
             } else if (match(DOT)) {
                 // 查找 . 沿着标记构建一系列的call和get
-                Token name = consume(IDENTIFIER, "Expect property name after '.'.");
+                Token name = consumeToken(IDENTIFIER, "Expect property name after '.'.");
                 expr = new Expr.Get(expr, name);
             } else {
                 break;
@@ -431,7 +474,7 @@ public class Parser {
         }
 
         if (match(NUMBER, STRING)) {
-            return new Expr.Literal(previous().literal);
+            return new Expr.Literal(scanner.literal(previous));
         }
 
         // 解析super关键字
@@ -439,7 +482,7 @@ public class Parser {
             Token keyword = previous();
             // 消费预期的.和方法名称
             consume(DOT, "Expect '.' after 'super'.");
-            Token method = consume(IDENTIFIER, "Expect superclass method name.");
+            Token method = consumeToken(IDENTIFIER, "Expect superclass method name.");
             return new Expr.Super(keyword, method);
         }
 
@@ -475,43 +518,50 @@ public class Parser {
     }
 
     // 调用consume()方法查找收尾的)
-    private Token consume(TokenType type, String message) {
+    private void consume(TokenType type, String message) {
         // 检查下一个标记是否是预期的类型，如果是就会消费该标记
         if (check(type)) {
-            return advance();
+            advance();
+            return;
         }
         throw error(peek(), message);
     }
 
+    // 同consume()，并返回消费的标记
+    private Token consumeToken(TokenType type, String message) {
+        consume(type, message);
+        return previous();
+    }
+
     // 如果当前标记属于给定类型返回true 不消费标记只是读取
     private boolean check(TokenType type) {
         if (isAtEnd()) {
             return false;
         }
-        return peek().type == type;
+        return scanner.type(current) == type;
     }
 
-    // 消费当前的标记并返回它
-    private Token advance() {
+    // 消费当前的标记
+    private void advance() {
         if (!isAtEnd()) {
-            current++;
+            previous = current;
+            current = scanner.scan();
         }
-        return previous();
     }
 
     // 是否处理完了待解析的标记
     private boolean isAtEnd() {
-        return peek().type == EOF;
+        return scanner.type(current) == EOF;
     }
 
     // 返回还未消费的当前标记
     private Token peek() {
-        return tokens.get(current);
+        return scanner.token(current);
     }
 
     // 返回上一个消费了的标记
     private Token previous() {
-        return tokens.get(current - 1);
+        return scanner.token(previous);
     }
 
     // 报告错误
@@ -525,16 +575,17 @@ public class Parser {
         advance();
         while (!isAtEnd()) {
             // 遇到分号前进到下一个statement开头
-            if (previous().type == SEMICOLON) {
+            if (scanner.type(previous) == SEMICOLON) {
                 return;
             }
             // 通过以下关键词判断是否是新的statement开头
-            switch (peek().type) {
+            switch (scanner.type(current)) {
                 case CLASS:
                 case FUN:
                 case VAR:
                 case FOR:
                 case IF:
+                case IMPORT:
                 case WHILE:
                 case PRINT:
                 case RETURN:
@@ -0,0 +1,14 @@
+package cn.gjz.lox;
+
+/**
+ * 预先编译的jar使用的解释器
+ * 每个函数体都已经编译为类并保存在函数声明的jitCode中，调用时直接执行，不需要JIT引擎统计调用次数和编译
+ */
+
+final class PrecompiledInterpreter extends Interpreter {
+
+    @Override
+    Object executeBody(Stmt.Function declaration, Environment environment) {
+        return declaration.jitCode.execute(environment);
+    }
+}
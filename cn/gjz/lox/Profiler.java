@@ -0,0 +1,201 @@
+package cn.gjz.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lox代码的采样性能分析器(--profile)
+ * 执行引擎在进入和离开Lox函数时维护一个影子栈，栈帧记录函数名称和调用所在的行；后台线程按固定频率读取栈顶并计数
+ * 结束时写出折叠栈(每行一个以分号分隔的调用栈和它的样本数，可以直接交给flamegraph.pl等火焰图工具)，并输出自身时间最多的前N个函数
+ * 影子栈的栈帧创建后不再修改，采样线程读到的任何栈顶都是一条完整的调用链，不需要加锁
+ */
+
+public final class Profiler {
+
+    // 影子栈的栈帧，label是采样线程第一次读到它时生成的"名称:调用行"
+    private static final class Frame {
+        final Frame parent;
+        final String name;
+        final int line;
+        String label;
+
+        Frame(Frame parent, String name, int line) {
+            this.parent = parent;
+            this.name = name;
+            this.line = line;
+        }
+    }
+
+    // 顶层代码
+    private static final Frame ROOT = new Frame(null, "<script>", 0);
+
+    // 关闭时执行引擎只多出一次字段读取和分支
+    private static boolean enabled = false;
+    private static volatile Frame top = ROOT;
+    // 最近一次调用所在的行，由下一个进入的Lox函数记录到栈帧中
+    private static int callLine = 0;
+
+    private static Thread sampler;
+    private static volatile boolean running;
+    private static long intervalNanos;
+    // 折叠栈及其样本数，只有采样线程写入，stop()等采样线程结束之后才读取
+    private static Map<String, Integer> samples;
+
+    private Profiler() {
+    }
+
+    public static boolean enabled() {
+        return enabled;
+    }
+
+    // 以每秒rate次的频率开始采样
+    static void start(int rate) {
+        top = ROOT;
+        samples = new HashMap<>();
+        intervalNanos = 1_000_000_000L / rate;
+        running = true;
+        enabled = true;
+        sampler = new Thread(Profiler::sample, "lox-profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    // 停止采样，把折叠栈写入output，并向report输出前topCount个函数
+    static void stop(Path output, int topCount, PrintStream report) throws IOException {
+        enabled = false;
+        running = false;
+        LockSupport.unpark(sampler);
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        top = ROOT;
+        try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Integer> entry : samples.entrySet()) {
+                writer.write(entry.getKey() + " " + entry.getValue() + "\n");
+            }
+        }
+        report(output, topCount, report);
+    }
+
+    // 调用位置，在检查参数个数时记录
+    static void calling(Token paren) {
+        if (enabled) {
+            callLine = paren.line;
+        }
+    }
+
+    // 进入一个Lox函数，调用位置是最近一次记录的调用行
+    static void enter(String name) {
+        enter(name, callLine);
+    }
+
+    // 以下方法也供字节码虚拟机使用，调用前由调用者检查enabled()
+    public static void enter(String name, int line) {
+        top = new Frame(top, name, line);
+    }
+
+    public static void exit() {
+        Frame frame = top;
+        if (frame != ROOT) {
+            top = frame.parent;
+        }
+    }
+
+    // 尾调用：刚进入的函数取代它的调用者
+    public static void replaceCaller() {
+        Frame frame = top;
+        if (frame != ROOT && frame.parent != ROOT) {
+            top = new Frame(frame.parent.parent, frame.name, frame.line);
+        }
+    }
+
+    // 运行时错误之后回到顶层
+    public static void reset() {
+        top = ROOT;
+    }
+
+    // 采样线程
+    private static void sample() {
+        List<Frame> stack = new ArrayList<>();
+        StringBuilder key = new StringBuilder();
+        while (running) {
+            LockSupport.parkNanos(intervalNanos);
+            if (!running) {
+                break;
+            }
+            stack.clear();
+            for (Frame frame = top; frame != null; frame = frame.parent) {
+                stack.add(frame);
+            }
+            key.setLength(0);
+            for (int i = stack.size() - 1; i >= 0; i--) {
+                Frame frame = stack.get(i);
+                if (frame.label == null) {
+                    frame.label = frame == ROOT ? frame.name : frame.name + ":" + frame.line;
+                }
+                key.append(frame.label);
+                if (i > 0) {
+                    key.append(';');
+                }
+            }
+            samples.merge(key.toString(), 1, Integer::sum);
+        }
+    }
+
+    // 按函数名称汇总：自身时间是函数位于栈顶的样本数，总时间是函数出现在栈中的样本数(递归调用只计一次)
+    private static void report(Path output, int topCount, PrintStream out) {
+        Map<String, int[]> functions = new HashMap<>();
+        int total = 0;
+        for (Map.Entry<String, Integer> entry : samples.entrySet()) {
+            int count = entry.getValue();
+            total += count;
+            String[] frames = entry.getKey().split(";");
+            Set<String> seen = new HashSet<>();
+            for (int i = 0; i < frames.length; i++) {
+                String name = functionName(frames[i]);
+                int[] counts = functions.computeIfAbsent(name, key -> new int[2]);
+                if (i == frames.length - 1) {
+                    counts[0] += count;
+                }
+                if (seen.add(name)) {
+                    counts[1] += count;
+                }
+            }
+        }
+        List<Map.Entry<String, int[]>> sorted = new ArrayList<>(functions.entrySet());
+        sorted.sort((a, b) -> a.getValue()[0] != b.getValue()[0]
+                ? Integer.compare(b.getValue()[0], a.getValue()[0])
+                : Integer.compare(b.getValue()[1], a.getValue()[1]));
+
+        out.printf("Profile: %d samples every %.1f ms, collapsed stacks written to %s%n", total, intervalNanos / 1e6, output);
+        out.printf("%8s %8s %8s %8s  %s%n", "self", "self%", "total", "total%", "function");
+        for (int i = 0; i < Math.min(topCount, sorted.size()); i++) {
+            String name = sorted.get(i).getKey();
+            int[] counts = sorted.get(i).getValue();
+            out.printf("%8d %7.1f%% %8d %7.1f%%  %s%n", counts[0], percent(counts[0], total), counts[1], percent(counts[1], total), name);
+        }
+    }
+
+    // 栈帧标签去掉调用行之后的函数名称
+    private static String functionName(String label) {
+        int colon = label.lastIndexOf(':');
+        return colon < 0 ? label : label.substring(0, colon);
+    }
+
+    private static double percent(int count, int total) {
+        return total == 0 ? 0 : count * 100.0 / total;
+    }
+}
@@ -0,0 +1,124 @@
+package cn.gjz.lox;
+
+/**
+ * 属性访问点(Expr.Get和Expr.Set)上的内联缓存
+ * 记录在这个访问点上见过的实例形状以及对应的查找结果，再次遇到相同形状的实例时跳过字段表和方法表的查找
+ * 只见过一种形状时是单态缓存，最多记录MAX_ENTRIES种形状(多态缓存)，超过之后不再缓存(超多态)
+ */
+
+final class PropertyCache {
+    private static final int MAX_ENTRIES = 4;
+
+    // 缓存项：见过的形状
+    private Shape[] shapes;
+    // 读取时：字段下标，-1表示该属性是方法；写入时：字段下标
+    private int[] slots;
+    // 读取时：属性对应的方法
+    private LoxFunction[] methods;
+    // 写入时：写入之后实例的形状，与shapes中的形状不同时表示写入会添加新字段
+    private Shape[] targets;
+    private int count = 0;
+    private boolean megamorphic = false;
+
+    // 读取属性
+    Object get(LoxInstance instance, Token name) {
+        Shape shape = instance.shape;
+        for (int i = 0; i < count; i++) {
+            if (shapes[i] == shape) {
+                int slot = slots[i];
+                if (slot >= 0) {
+                    return instance.fields[slot];
+                }
+                return methods[i].bind(instance);
+            }
+        }
+        if (megamorphic) {
+            return instance.get(name);
+        }
+        // 缓存未命中：完整地查找一次并记录结果，字段优先于方法
+        int slot = shape.slotOf(name.symbol);
+        if (slot >= 0) {
+            add(shape, slot, null, null);
+            return instance.fields[slot];
+        }
+        LoxFunction method = shape.klass.findMethod(name.symbol);
+        if (method == null) {
+            throw new RuntimeError(name, " Undefined property '" + name.lexeme + "'.");
+        }
+        add(shape, -1, method, null);
+        return method.bind(instance);
+    }
+
+    // 为obj.method(args)查找属性：属性是方法时返回还没有绑定接收者的方法，属性是字段时返回null
+    LoxFunction method(LoxInstance instance, Token name) {
+        Shape shape = instance.shape;
+        for (int i = 0; i < count; i++) {
+            if (shapes[i] == shape) {
+                return methods[i];
+            }
+        }
+        if (!megamorphic) {
+            int slot = shape.slotOf(name.symbol);
+            if (slot >= 0) {
+                add(shape, slot, null, null);
+                return null;
+            }
+        } else if (shape.slotOf(name.symbol) >= 0) {
+            return null;
+        }
+        LoxFunction method = shape.klass.findMethod(name.symbol);
+        if (method == null) {
+            throw new RuntimeError(name, " Undefined property '" + name.lexeme + "'.");
+        }
+        add(shape, -1, method, null);
+        return method;
+    }
+
+    // 写入属性
+    void set(LoxInstance instance, Token name, Object value) {
+        Shape shape = instance.shape;
+        for (int i = 0; i < count; i++) {
+            if (shapes[i] == shape) {
+                Shape target = targets[i];
+                if (target == shape) {
+                    instance.fields[slots[i]] = value;
+                } else {
+                    instance.addField(target, value);
+                }
+                return;
+            }
+        }
+        if (megamorphic) {
+            instance.set(name, value);
+            return;
+        }
+        int slot = shape.slotOf(name.symbol);
+        if (slot >= 0) {
+            add(shape, slot, null, shape);
+            instance.fields[slot] = value;
+            return;
+        }
+        // 添加新字段，缓存形状转换的结果
+        Shape target = shape.addField(name.symbol);
+        add(shape, shape.size(), null, target);
+        instance.addField(target, value);
+    }
+
+    private void add(Shape shape, int slot, LoxFunction method, Shape target) {
+        if (count == MAX_ENTRIES) {
+            megamorphic = true;
+            return;
+        }
+        if (shapes == null) {
+            shapes = new Shape[MAX_ENTRIES];
+            slots = new int[MAX_ENTRIES];
+            methods = new LoxFunction[MAX_ENTRIES];
+            targets = new Shape[MAX_ENTRIES];
+        }
+        shapes[count] = shape;
+        slots[count] = slot;
+        methods[count] = method;
+        targets[count] = target;
+        count++;
+    }
+}
@@ -11,10 +11,20 @@ import java.util.Stack;
 
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
-    private final Interpreter interpreter;
-
-    // 记录当前作用域内的栈 栈中的每个元素是代表一个块作用域的Map，key是变量名，value代表是否已经结束了对变量初始化式的解析
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    // 记录当前作用域内的栈 栈中的每个元素是代表一个块作用域的Map，key是变量名，value是该变量的解析状态
+    private final Stack<Map<String, Variable>> scopes = new Stack<>();
+
+    // 局部变量的解析状态
+    private static class Variable {
+        // 变量在运行时环境中的槽位，按声明顺序从0开始分配
+        final int slot;
+        // 是否已经结束了对变量初始化式的解析
+        boolean defined = false;
+
+        Variable(int slot) {
+            this.slot = slot;
+        }
+    }
 
     private FunctionType currentFunction = FunctionType.NONE;
 
@@ -35,9 +45,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     // 一开始是NONE意味着不在类中
     private ClassType currentClass = ClassType.NONE;
 
-    Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
-    }
+    // 当前所在的循环层数，break和continue只能出现在循环中
+    private int loopDepth = 0;
 
     // 块语法（块语法创建了局部作用域）
     @Override
@@ -48,8 +57,24 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        if (loopDepth == 0) {
+            Lox.error(stmt.keyword, "Can't use 'break' outside of a loop.");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitContinueStmt(Stmt.Continue stmt) {
+        if (loopDepth == 0) {
+            Lox.error(stmt.keyword, "Can't use 'continue' outside of a loop.");
+        }
+        return null;
+    }
+
     // 将名称和方法列表封装到Stmt.Class节点中 进入分析器中对节点进行分析
-    // 只要遇到this表达式（至少是在方法内部），它就会解析为一个“局部变量”，该变量定义在方法体块之外的隐含作用域中
+    // 只要遇到this表达式（至少是在方法内部），它就会解析为一个“局部变量”，该变量是方法作用域中的第一个变量，位于所有参数之前
     @Override
     public Void visitClassStmt(Stmt.Class stmt) {
         // 与currentFunction一样，将字段的前一个值存储在一个局部变量中，在JVM中保持一个currentClass的栈
@@ -70,11 +95,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         // 如果该类声明有父类，那么就在其所有方法的外围创建一个新的作用域 super
         if (stmt.superclass != null) {
             beginScope();
-            scopes.peek().put("super", true);
+            declareImplicit("super");
         }
-        // 开始分析方法体之前，推入一个新的作用域，并在其中像定义变量一样定义“this”
-        beginScope();
-        scopes.peek().put("this", true);
         // 遍历类主体中的方法
         for (Stmt.Function method : stmt.methods) {
             FunctionType declaration = FunctionType.METHOD;
@@ -85,8 +107,6 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             // 调用已经写好的用来处理函数声明的resolveFunction()方法
             resolveFunction(method, declaration);
         }
-        // 完成后会丢弃这个外围作用域
-        endScope();
         // 完成了对父类中方法的分析就丢弃这个作用域
         if (stmt.superclass != null) {
             endScope();
@@ -124,6 +144,16 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    // 模块在自己的线程中完成变量解析，这里只检查import语句是否在顶层
+    // 模块的顶层代码在全局环境中执行，在语法块或函数中导入会让模块中的定义看起来属于局部作用域
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt) {
+        if (!scopes.isEmpty()) {
+            Lox.error(stmt.keyword, "Can only import at top level.");
+        }
+        return null;
+    }
+
     // print语句包含一个子表达式
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
@@ -143,6 +173,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             if (currentFunction == FunctionType.INITIALIZER) {
                 Lox.error(stmt.keyword, "Can't return a value from an initializer.");
             }
+            // return之后函数就结束了，所以return f(...)中的调用总是处于尾部位置，解释器可以不在当前栈帧中执行它
+            stmt.tailCall = stmt.value instanceof Expr.Call;
             resolve(stmt.value);
         }
         return null;
@@ -164,7 +196,13 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitWhileStmt(Stmt.While stmt) {
         resolve(stmt.condition);
+        loopDepth++;
         resolve(stmt.body);
+        loopDepth--;
+        // 增量表达式在循环体之外，与条件表达式处于同一个作用域
+        if (stmt.increment != null) {
+            resolve(stmt.increment);
+        }
         return null;
     }
 
@@ -267,7 +305,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitVariableExpr(Expr.Variable expr) {
         // 检查变量是否在其自身的初始化式中被访问
-        if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
+        if (!scopes.isEmpty() && scopes.peek().containsKey(expr.name.lexeme) && !scopes.peek().get(expr.name.lexeme).defined) {
             // 如果当前作用域中存在该变量，但是它的值是false，意味着已经声明了它，但是还没有定义它。我们会报告一个错误出来
             Lox.error(expr.name, "Can't read local variable in its own initializer.");
         }
@@ -297,8 +335,15 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         // 在解析函数体之前将FunctionType保存在字段中
         FunctionType enclosingFunction = currentFunction;
         currentFunction = type;
+        // 函数体中的break和continue不能跳出函数外面的循环
+        int enclosingLoopDepth = loopDepth;
+        loopDepth = 0;
         // 为函数体创建一个新的作用域
         beginScope();
+        // 方法调用时接收者直接放在方法环境的槽位0中，像定义变量一样定义“this”，这样调用方法时不需要额外创建一层环境
+        if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+            declareImplicit("this");
+        }
         // 为函数的每个参数绑定变量
         for (Token param : function.params) {
             declare(param);
@@ -309,12 +354,13 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         endScope();
         // 完成函数体的解析之后将该字段恢复为之前的值
         currentFunction = enclosingFunction;
+        loopDepth = enclosingLoopDepth;
     }
 
     // 创建一个新的块作用域
     private void beginScope() {
         // 解释器是使用链表（Environment对象组成的链）来实现栈的，在解析器中，使用一个真正的Java Stack
-        scopes.push(new HashMap<String, Boolean>());
+        scopes.push(new HashMap<String, Variable>());
     }
 
     // 退出作用域
@@ -328,14 +374,21 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         if (scopes.isEmpty()) {
             return;
         }
-        Map<String, Boolean> scope = scopes.peek();
+        Map<String, Variable> scope = scopes.peek();
         // 在局部作用域中声明一个变量时，已经知道了之前在同一作用域中声明的每个变量的名字
         // 如果看到有冲突，就报告一个错误
         if (scope.containsKey(name.lexeme)) {
             Lox.error(name, "Already variable with this name in this scope.");
         }
-        // 过在作用域map中将其名称绑定到false来表明该变量“尚未就绪”
-        scope.put(name.lexeme, false);
+        // 新变量占用作用域中的下一个槽位，defined为false表明该变量“尚未就绪”
+        scope.put(name.lexeme, new Variable(scope.size()));
+    }
+
+    // 声明this和super这类由解释器隐式定义的变量，它们总是所在作用域中的第一个变量(槽位0)
+    private void declareImplicit(String name) {
+        Variable variable = new Variable(scopes.peek().size());
+        variable.defined = true;
+        scopes.peek().put(name, variable);
     }
 
     // 在作用域map中将变量的值置为true，以标记它已完全初始化并可使用
@@ -343,7 +396,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         if (scopes.isEmpty()) {
             return;
         }
-        scopes.peek().put(name.lexeme, true);
+        scopes.peek().get(name.lexeme).defined = true;
     }
 
     // 解析变量
@@ -351,8 +404,23 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         // 从最内层的作用域开始，向外扩展，在每个map中寻找一个可以匹配的名称
         for (int i = scopes.size() - 1; i >= 0; i--) {
             // 找到了这个变量就对其解析
-            if (scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expr, scopes.size() - 1 - i);
+            Variable variable = scopes.get(i).get(name.lexeme);
+            if (variable != null) {
+                // 把作用域距离和槽位直接记录在语法树节点上，解释器执行时从节点中读取
+                int depth = scopes.size() - 1 - i;
+                if (expr instanceof Expr.Variable) {
+                    ((Expr.Variable) expr).depth = depth;
+                    ((Expr.Variable) expr).slot = variable.slot;
+                } else if (expr instanceof Expr.Assign) {
+                    ((Expr.Assign) expr).depth = depth;
+                    ((Expr.Assign) expr).slot = variable.slot;
+                } else if (expr instanceof Expr.This) {
+                    ((Expr.This) expr).depth = depth;
+                    ((Expr.This) expr).slot = variable.slot;
+                } else if (expr instanceof Expr.Super) {
+                    ((Expr.Super) expr).depth = depth;
+                    ((Expr.Super) expr).slot = variable.slot;
+                }
                 return;
             }
         }
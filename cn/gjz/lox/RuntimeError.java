@@ -6,5 +6,9 @@ public class RuntimeError extends RuntimeException {
     public RuntimeError(Token token, String message) {
         super(message);
         this.token = token;
+        if (Metrics.ENABLED) {
+            Metrics.runtimeError();
+        }
+        LoxEvents.runtimeError(message, token.line);
     }
 }
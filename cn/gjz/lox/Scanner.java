@@ -1,19 +1,60 @@
 package cn.gjz.lox;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import static cn.gjz.lox.TokenType.*;
 
 /**
  * 扫描器
+ * 从Reader中按块读取源代码，每次调用scan()时才扫描出下一个token，最后一个token是EOF
+ * 扫描结果不创建Token对象，而是以序号为下标循环记录在几个并列的基本类型数组中(类型、在源代码中的位置和长度、行号)，
+ * 解析器按序号读取类型，只有需要放进语法树的token才通过token()创建Token，词素和字面量也在取用时才从源代码中截取
+ * 缓冲区中只保留最近WINDOW个token开始之后的字符，扫描任意大小的文件时占用的内存与最长的token有关，而与文件大小无关
  */
 
-public class Scanner {
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+public class Scanner implements Iterator<Token> {
+    // 每次从Reader中读取的字符数
+    private static final int CHUNK_SIZE = 8192;
+    // 可以按序号访问的最近的token个数(2的幂)，解析器只需要当前token和上一个token
+    private static final int WINDOW = 4;
+    private static final int MASK = WINDOW - 1;
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final Reader reader;
+    // 已经读入但还没有丢弃的字符，有效部分为[0, limit)，buffer[0]在源代码中的位置是offset
+    private char[] buffer = new char[CHUNK_SIZE];
+    private int limit = 0;
+    private int offset = 0;
+    // Reader中的字符已经全部读入
+    private boolean drained = false;
+
+    // 最近扫描出的token，序号为n的token保存在下标n & MASK处
+    private final byte[] types = new byte[WINDOW];
+    // 在源代码中的起始位置
+    private final int[] starts = new int[WINDOW];
+    private final int[] lengths = new int[WINDOW];
+    private final int[] lines = new int[WINDOW];
+    // 已经创建的Token视图，同一个token只创建一次
+    private final Token[] views = new Token[WINDOW];
+    // 已经扫描出的token个数，也就是下一个token的序号
+    private int count = 0;
+    // 扫描当前token时是否产生了token，空白和注释不产生token
+    private boolean produced = false;
+    // 已经扫描出了EOF
+    private boolean finished = false;
+    // 不为null时把扫描出的每个token输出到这里
+    private PrintStream echo = null;
 
     // 在map中定义关键字，key为关键字，value为TokenType
     private static final Map<String, TokenType> keywords;
@@ -22,12 +63,15 @@ public class Scanner {
     static {
         keywords = new HashMap<>();
         keywords.put("and", AND);
+        keywords.put("break", BREAK);
         keywords.put("class", CLASS);
+        keywords.put("continue", CONTINUE);
         keywords.put("else", ELSE);
         keywords.put("false", FALSE);
         keywords.put("for", FOR);
         keywords.put("fun", FUN);
         keywords.put("if", IF);
+        keywords.put("import", IMPORT);
         keywords.put("nil", NIL);
         keywords.put("or", OR);
         keywords.put("print", PRINT);
@@ -39,114 +83,239 @@ public class Scanner {
         keywords.put("while", WHILE);
     }
 
-    // 跟踪扫描器在源代码中的位置
+    // 字符分类表，只覆盖ASCII字符，其余字符在token开头都是非法字符
+    // 分类决定scanToken()怎样处理以该字符开头的token
+    private static final byte OTHER = 0;
+    private static final byte SPACE = 1;
+    private static final byte NEWLINE = 2;
+    private static final byte ALPHA = 3;
+    private static final byte DIGIT = 4;
+    private static final byte SINGLE = 5; // 单字符token
+    private static final byte OPERATOR = 6; // 可以后跟=的运算符
+    private static final byte SLASH_OR_COMMENT = 7;
+    private static final byte QUOTE = 8;
+    private static final byte[] CLASSES = new byte[128];
+    // 单字符token以及运算符单独出现时的类型
+    private static final TokenType[] SINGLE_TYPES = new TokenType[128];
+    // 运算符后跟=时的类型
+    private static final TokenType[] EQUAL_TYPES = new TokenType[128];
+    // 可以出现在标识符中的字符(字母、数字、下划线)
+    private static final boolean[] IDENTIFIER_CHARS = new boolean[128];
+
+    // 按长度分组的关键字，匹配标识符时只与长度相同的关键字逐个比较缓冲区中的字符，不需要截取子串
+    private static final char[][][] KEYWORD_CHARS = new char[16][][];
+    private static final TokenType[][] KEYWORD_TYPES = new TokenType[16][];
+
+    // 可以精确表示的10的幂，用于数字字面量的快速路径
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            CLASSES[c] = ALPHA;
+            CLASSES[c - 'a' + 'A'] = ALPHA;
+            IDENTIFIER_CHARS[c] = true;
+            IDENTIFIER_CHARS[c - 'a' + 'A'] = true;
+        }
+        CLASSES['_'] = ALPHA;
+        IDENTIFIER_CHARS['_'] = true;
+        for (char c = '0'; c <= '9'; c++) {
+            CLASSES[c] = DIGIT;
+            IDENTIFIER_CHARS[c] = true;
+        }
+        CLASSES[' '] = SPACE;
+        CLASSES['\r'] = SPACE;
+        CLASSES['\t'] = SPACE;
+        CLASSES['\n'] = NEWLINE;
+        CLASSES['/'] = SLASH_OR_COMMENT;
+        CLASSES['"'] = QUOTE;
+        single('(', LEFT_PAREN);
+        single(')', RIGHT_PAREN);
+        single('{', LEFT_BRACE);
+        single('}', RIGHT_BRACE);
+        single(',', COMMA);
+        single('.', DOT);
+        single('-', MINUS);
+        single('+', PLUS);
+        single(';', SEMICOLON);
+        single('*', STAR);
+        operator('!', BANG, BANG_EQUAL);
+        operator('=', EQUAL, EQUAL_EQUAL);
+        operator('<', LESS, LESS_EQUAL);
+        operator('>', GREATER, GREATER_EQUAL);
+
+        for (Map.Entry<String, TokenType> keyword : keywords.entrySet()) {
+            int length = keyword.getKey().length();
+            char[][] chars = KEYWORD_CHARS[length];
+            int size = chars == null ? 0 : chars.length;
+            KEYWORD_CHARS[length] = chars = chars == null ? new char[1][] : Arrays.copyOf(chars, size + 1);
+            KEYWORD_TYPES[length] = KEYWORD_TYPES[length] == null ? new TokenType[1] : Arrays.copyOf(KEYWORD_TYPES[length], size + 1);
+            chars[size] = keyword.getKey().toCharArray();
+            KEYWORD_TYPES[length][size] = keyword.getValue();
+        }
+    }
+
+    private static void single(char c, TokenType type) {
+        CLASSES[c] = SINGLE;
+        SINGLE_TYPES[c] = type;
+    }
+
+    private static void operator(char c, TokenType alone, TokenType withEqual) {
+        CLASSES[c] = OPERATOR;
+        SINGLE_TYPES[c] = alone;
+        EQUAL_TYPES[c] = withEqual;
+    }
+
+    // 跟踪扫描器在缓冲区中的位置
     private int start = 0; // 指向被扫描的词第一个字符
     private int current = 0; // 当前正在处理的字符
     private int line = 0; // current所在源文件的行数
 
     public Scanner(String source) {
-        this.source = source;
+        this(new StringReader(source));
+    }
+
+    public Scanner(Reader reader) {
+        this.reader = reader;
     }
 
-    // 用一个列表来保存扫描时产生的token
+    // 一次扫描出所有token并保存在列表中
     public List<Token> scanTokens() {
-        // 没有读到文件末尾就一只调用scanToken()函数扫描字符
-        while (!isAtEnd()) {
+        List<Token> tokens = new ArrayList<>();
+        while (hasNext()) {
+            tokens.add(next());
+        }
+        return tokens;
+    }
+
+    // 扫描过程中输出每个token
+    Scanner echo(PrintStream out) {
+        this.echo = out;
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !finished;
+    }
+
+    @Override
+    public Token next() {
+        if (finished) {
+            throw new NoSuchElementException();
+        }
+        return token(scan());
+    }
+
+    // 扫描下一个token并返回它的序号，源代码读完之后扫描出的是EOF
+    int scan() {
+        produced = false;
+        while (!produced && !isAtEnd()) {
             // 每扫描完一个token，把下一个token的其实位置start变量置为上一个token结束位置+1，即current
             start = current;
-            scanToken();
+            // 连续的空白一次跳过，不逐个字符进入scanToken()
+            skipWhitespace();
+            start = current;
+            if (!isAtEnd()) {
+                scanToken();
+            }
+        }
+        if (!produced) {
+            start = current;
+            addToken(EOF);
+            finished = true;
+        }
+        int token = count++;
+        if (echo != null) {
+            echo.println(token(token));
+        }
+        return token;
+    }
+
+    // 以下方法读取序号为token的token，它必须是最近扫描出的WINDOW个token之一
+    TokenType type(int token) {
+        return TYPES[types[token & MASK]];
+    }
+
+    int line(int token) {
+        return lines[token & MASK];
+    }
+
+    String lexeme(int token) {
+        int slot = token & MASK;
+        return new String(buffer, starts[slot] - offset, lengths[slot]);
+    }
+
+    // 数字和字符串的字面量在这里才从源代码中转换出来
+    Object literal(int token) {
+        int slot = token & MASK;
+        switch (TYPES[types[slot]]) {
+            case NUMBER:
+                return number(starts[slot] - offset, lengths[slot]);
+            case STRING:
+                // 去掉两边的"
+                return new String(buffer, starts[slot] - offset + 1, lengths[slot] - 2);
+            default:
+                return null;
         }
-        tokens.add(new Token(EOF, "", null, line));
-        return tokens;
     }
 
-    // 消费字符
+    // 序号为token的token的对象视图，用于语法树和错误报告
+    Token token(int token) {
+        int slot = token & MASK;
+        Token view = views[slot];
+        if (view == null) {
+            view = new Token(type(token), lexeme(token), literal(token), lines[slot]);
+            views[slot] = view;
+        }
+        return view;
+    }
+
+    // 消费字符，按第一个字符的分类决定token的种类
     private void scanToken() {
         // advance函数获取原文件中当前字符，并将current变量加一(相当于消费掉当前current所指的字符)
         char c = advance();
-        switch (c) {
-            // 以下为单字符匹配
-            case '(':
-                addToken(LEFT_PAREN);
-                break;
-            case ')':
-                addToken(RIGHT_PAREN);
-                break;
-            case '{':
-                addToken(LEFT_BRACE);
-                break;
-            case '}':
-                addToken(RIGHT_BRACE);
-                break;
-            case ',':
-                addToken(COMMA);
-                break;
-            case '.':
-                addToken(DOT);
-                break;
-            case '-':
-                addToken(MINUS);
-                break;
-            case '+':
-                addToken(PLUS);
-                break;
-            case ';':
-                addToken(SEMICOLON);
+        switch (c < 128 ? CLASSES[c] : OTHER) {
+            // 单字符token
+            case SINGLE:
+                addToken(SINGLE_TYPES[c]);
                 break;
-            case '*':
-                addToken(STAR);
-                break;
-            // 以下为双字符匹配 读到当前符号后，用match检查下一个符号是否是双字符符号的第二个字符
-            case '!':
-                addToken(match('=') ? BANG_EQUAL : BANG);
-                break;
-            case '=':
-                addToken(match('=') ? EQUAL_EQUAL : EQUAL);
-                break;
-            case '<':
-                addToken(match('=') ? LESS_EQUAL : LESS);
-                break;
-            case '>':
-                addToken(match('=') ? GREATER_EQUAL : GREATER);
+            // 双字符匹配 读到当前符号后，用match检查下一个符号是否是=
+            case OPERATOR:
+                addToken(match('=') ? EQUAL_TYPES[c] : SINGLE_TYPES[c]);
                 break;
             // 除号/要特殊处理，因为注释开头也是/
-            case '/':
-                // 找到第二个/时会继续消费字符直到行尾
+            case SLASH_OR_COMMENT:
+                // 找到第二个/时跳过行尾之前的所有字符，保留句末的\n，由skipWhitespace()对line变量加一
                 if (match('/')) {
-                    // peek不消费字符只会前瞻字符，不会修改current变量，保留句末的\n换行符标志，以便下次进入switch中能匹配到换行符\n对line变量加一
-                    while (peek() != '\n' && !isAtEnd()) {
-                        advance();
-                    }
+                    skipComment();
                 } else {
                     addToken(SLASH);
                 }
                 break;
-            // 跳过无意义的字符：换行和空格
-            case ' ':
-            case '\r':
-            case '\t':
+            case SPACE:
                 break;
-            case '\n':
+            case NEWLINE:
                 // 遇到换行符时将line变量加一
                 line++;
                 break;
             // 处理字符串
-            case '"':
-                // 匹配到双引号调用string函数
+            case QUOTE:
                 string();
                 break;
+            case DIGIT:
+                number();
+                break;
+            case ALPHA:
+                // 匹配关键字或变量名
+                // 使用最大匹配的思想，例如关键字or和变量名orchid都可以被匹配到，那么优先选择能匹配到字符数最多的情况，即orchid
+                identifier();
+                break;
             default:
-                // 识别数字
-                if (isDigit(c)) {
-                    number();
-                } else if (isAlpha(c)) {
-                    // 匹配关键字或变量名
-                    // 使用最大匹配的思想，例如关键字or和变量名orchid都可以被匹配到，那么优先选择能匹配到字符数最多的情况，即orchid
-                    identifier();
-                } else {
-                    // 违法的字符
-                    Lox.error(line, "Unexpected character.");
-                }
+                // 违法的字符
+                Lox.error(line, "Unexpected character.");
                 break;
         }
     }
@@ -154,44 +323,83 @@ public class Scanner {
     // 扫描一个标识符(即关键字例如and、or，和变量名)
     private void identifier() {
         // 消费字符和数字
-        while (isAlphaNumeric(peek())) {
-            advance();
+        skipIdentifierChars();
+        // 扫描到标识符后，检查是否与某个关键字匹配，如果匹配就使用关键字标识及类型，否则就是一个用户定义的变量名
+        addToken(keyword(start, current - start));
+    }
+
+    // 在长度相同的关键字中查找缓冲区中[from, from + length)处的标识符
+    private TokenType keyword(int from, int length) {
+        if (length >= KEYWORD_CHARS.length || KEYWORD_CHARS[length] == null) {
+            return IDENTIFIER;
         }
-        // 扫描到标识符后，检查是否与map中的某些关键字匹配，如果匹配就使用关键字标识及类型，否则就是一个用户定义的变量名
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        if (type == null) {
-            type = IDENTIFIER;
+        char[][] candidates = KEYWORD_CHARS[length];
+        for (int i = 0; i < candidates.length; i++) {
+            char[] candidate = candidates[i];
+            if (candidate[0] == buffer[from] && Arrays.equals(candidate, 0, length, buffer, from, from + length)) {
+                return KEYWORD_TYPES[length][i];
+            }
         }
-        addToken(type);
+        return IDENTIFIER;
     }
 
     // 处理当前扫描到的数字及其后面的数字字符 匹配思路类似string()函数
     private void number() {
-        while (isDigit(peek())) {
-            advance();
-        }
+        skipDigits();
         // 找到小数点并且小数点后面仍有数字
         if (peek() == '.' && isDigit(peekNext())) {
             // 消费小数点.
             advance();
             // 匹配并消费掉小数点后面的数字
-            while (isDigit(peek())) {
-                advance();
+            skipDigits();
+        }
+        addToken(NUMBER);
+    }
+
+    // 把缓冲区中的数字字面量转换为double
+    // 有效数字不超过15位、小数不超过22位时，整数部分和10的幂都可以用double精确表示，一次乘除法得到的就是正确舍入的结果
+    // 其余的数字交给Double.parseDouble()
+    private double number(int from, int length) {
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (int i = from; i < from + length; i++) {
+            char c = buffer[i];
+            if (c == '.') {
+                scale = 0;
+                continue;
+            }
+            mantissa = mantissa * 10 + (c - '0');
+            digits++;
+            if (scale >= 0) {
+                scale++;
             }
         }
-        addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+        if (digits <= 15 && scale < POWERS_OF_TEN.length) {
+            return scale <= 0 ? (double) mantissa : mantissa / POWERS_OF_TEN[scale];
+        }
+        return Double.parseDouble(new String(buffer, from, length));
     }
 
     // 一直消费字符直到遇到第二个"，如果内容耗尽则报错
     private void string() {
-        // 类似判断注释的思路
-        while (peek() != '"' && !isAtEnd()) {
-            if (peek() == '\n') {
-                line++;
+        // 类似判断注释的思路，直接在缓冲区中查找"
+        do {
+            char[] chars = buffer;
+            int i = current;
+            int end = limit;
+            while (i < end) {
+                char c = chars[i];
+                if (c == '"') {
+                    break;
+                }
+                if (c == '\n') {
+                    line++;
+                }
+                i++;
             }
-            advance();
-        }
+            current = i;
+        } while (current == limit && fill(current + 1));
 
         if (isAtEnd()) {
             Lox.error(line, "Unterminated string.");
@@ -199,9 +407,69 @@ public class Scanner {
         }
         // 第二个"
         advance();
-        // 提取两个"之间的字符串
-        String value = source.substring(start + 1, current - 1);
-        addToken(STRING, value);
+        // 两个"之间的字符串在取用字面量时才提取
+        addToken(STRING);
+    }
+
+    // 以下方法在缓冲区中成段地跳过字符，只在到达缓冲区末尾时才调用fill()读入更多字符
+    // 跳过空格、制表符、回车和换行
+    private void skipWhitespace() {
+        do {
+            char[] chars = buffer;
+            int i = current;
+            int end = limit;
+            while (i < end) {
+                char c = chars[i];
+                if (c == '\n') {
+                    line++;
+                } else if (c != ' ' && c != '\t' && c != '\r') {
+                    break;
+                }
+                i++;
+            }
+            current = i;
+        } while (current == limit && fill(current + 1));
+    }
+
+    // 跳过注释直到行尾(不包括\n)
+    private void skipComment() {
+        do {
+            char[] chars = buffer;
+            int i = current;
+            int end = limit;
+            while (i < end && chars[i] != '\n') {
+                i++;
+            }
+            current = i;
+        } while (current == limit && fill(current + 1));
+    }
+
+    private void skipIdentifierChars() {
+        do {
+            char[] chars = buffer;
+            int i = current;
+            int end = limit;
+            while (i < end) {
+                char c = chars[i];
+                if (c >= 128 || !IDENTIFIER_CHARS[c]) {
+                    break;
+                }
+                i++;
+            }
+            current = i;
+        } while (current == limit && fill(current + 1));
+    }
+
+    private void skipDigits() {
+        do {
+            char[] chars = buffer;
+            int i = current;
+            int end = limit;
+            while (i < end && isDigit(chars[i])) {
+                i++;
+            }
+            current = i;
+        } while (current == limit && fill(current + 1));
     }
 
     // 只有当前字符是正在寻找的字符时才会消费
@@ -210,7 +478,7 @@ public class Scanner {
         if (isAtEnd()) {
             return false;
         }
-        if (source.charAt(current) != expected) {
+        if (buffer[current] != expected) {
             return false;
         }
         // 如果想要匹配的下一个字符是预想的字符，current向后移动一位(相当于消费掉下一个字符)，返回true
@@ -223,52 +491,76 @@ public class Scanner {
         if (isAtEnd()) {
             return '\0';
         }
-        return source.charAt(current);
+        return buffer[current];
     }
 
     // 找到小数点后继续前瞻下一个字符是否为数字
     private char peekNext() {
-        if (current + 1 >= source.length()) {
+        if (current + 1 >= limit && !fill(current + 2)) {
             return '\0';
         }
-        return source.charAt(current + 1);
-    }
-
-    // 判断是否是构成标识符的字符(大小写字母、下划线)
-    private boolean isAlpha(char c) {
-        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
-    }
-
-    // 判断是否是构成标识符的字符(大小写字母、数字、下划线)
-    private boolean isAlphaNumeric(char c) {
-        return isAlpha(c) || isDigit(c);
+        return buffer[current + 1];
     }
 
     // 判断是否是数字
-    private boolean isDigit(char c) {
+    private static boolean isDigit(char c) {
         return c >= '0' && c <= '9';
     }
 
     // 获取源文件中的下一个字符并返回它（输入）
     private char advance() {
-        current++;
-        return source.charAt(current - 1);
+        if (current >= limit) {
+            fill(current + 1);
+        }
+        return buffer[current++];
     }
 
-    // 每次判断出一个词后调用addToken函数 获取当前词的文本并为其创建一个新的token（输出）
+    // 每次判断出一个词后调用addToken函数 记录当前词的类型和位置（输出）
     private void addToken(TokenType type) {
-        addToken(type, null);
-    }
-
-    // 同上面的重载方法，处理带有字面值的token
-    private void addToken(TokenType type, Object literal) {
-        // 变量中具体的内容(例如字符串或数字)
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        int slot = count & MASK;
+        types[slot] = (byte) type.ordinal();
+        starts[slot] = offset + start;
+        lengths[slot] = current - start;
+        lines[slot] = line;
+        views[slot] = null;
+        produced = true;
     }
 
     // 是否读到文件的结尾
     private boolean isAtEnd() {
-        return current >= source.length();
+        return current >= limit && !fill(current + 1);
+    }
+
+    // 继续从Reader中读入字符，直到缓冲区中至少有end个字符，读到结尾还不够时返回false
+    // 读入之前先丢弃最近WINDOW个token和当前token之前的字符，剩下的字符比缓冲区还长时把缓冲区扩大一倍
+    private boolean fill(int end) {
+        int keep = start;
+        if (count > 0) {
+            keep = Math.min(keep, starts[Math.max(0, count - WINDOW) & MASK] - offset);
+        }
+        if (keep > 0) {
+            System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+            offset += keep;
+            limit -= keep;
+            current -= keep;
+            end -= keep;
+            start -= keep;
+        }
+        while (limit < end && !drained) {
+            if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            try {
+                int count = reader.read(buffer, limit, Math.min(buffer.length - limit, CHUNK_SIZE));
+                if (count < 0) {
+                    drained = true;
+                } else {
+                    limit += count;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return limit >= end;
     }
 }
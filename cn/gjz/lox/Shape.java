@@ -0,0 +1,60 @@
+package cn.gjz.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 实例的形状(隐藏类)
+ * 记录字段名称到字段数组下标的映射，以相同顺序添加了相同字段的实例共享同一个形状
+ * 每个类有自己的根形状，所以形状相同的两个实例一定属于同一个类
+ */
+
+final class Shape {
+    final LoxClass klass;
+    // 字段名称(驻留的符号)到字段数组下标的映射
+    private final Map<Symbol, Integer> slots;
+    // 在当前形状上添加一个字段之后得到的形状
+    private final Map<Symbol, Shape> transitions = new HashMap<>();
+
+    // 创建类的根形状(没有任何字段)
+    Shape(LoxClass klass) {
+        this.klass = klass;
+        this.slots = new HashMap<>();
+    }
+
+    private Shape(Shape parent, Symbol name) {
+        this.klass = parent.klass;
+        this.slots = new HashMap<>(parent.slots);
+        this.slots.put(name, parent.slots.size());
+    }
+
+    // 字段个数
+    int size() {
+        return slots.size();
+    }
+
+    // 按下标排列的字段名称
+    Symbol[] names() {
+        Symbol[] names = new Symbol[slots.size()];
+        for (Map.Entry<Symbol, Integer> entry : slots.entrySet()) {
+            names[entry.getValue()] = entry.getKey();
+        }
+        return names;
+    }
+
+    // 查找字段所在的下标，没有该字段时返回-1
+    int slotOf(Symbol name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    // 添加一个新字段，新字段的下标为当前字段个数；同样的转换只创建一次形状
+    Shape addField(Symbol name) {
+        Shape next = transitions.get(name);
+        if (next == null) {
+            next = new Shape(this, name);
+            transitions.put(name, next);
+        }
+        return next;
+    }
+}
@@ -0,0 +1,810 @@
+package cn.gjz.lox;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 解释器状态的快照
+ * 执行完预加载的脚本之后，把全局变量以及从它们能够到达的函数、类、实例和闭包环境写入文件，之后的运行直接从快照恢复，不需要重新执行脚本
+ * 函数和方法的语法树连同Resolver得到的距离、槽位一起写入；本地函数只记录名称，恢复时链接到新解释器中同名的本地函数
+ * 文件是一串记录：对象记录创建一个对象，只引用之前创建的对象；内容记录填写已经创建的环境中的变量和实例的字段，可以引用任何已经创建的对象，
+ * 环境和实例之间的循环引用都经过内容记录，所以恢复时按顺序读一遍即可
+ * 节点树、闭包、JIT编译结果和内联缓存都不写入，恢复之后第一次执行时重新生成
+ */
+
+final class Snapshot {
+
+    private static final int MAGIC = 0x4c4f5853; // "LOXS"
+    private static final int VERSION = 1;
+
+    // 记录
+    private static final byte END = 0;
+    private static final byte LOCAL_ENVIRONMENT = 1; // 对象：外层环境
+    private static final byte FUNCTION = 2; // 对象：声明、闭包环境、是否是构造方法和方法、接收者
+    private static final byte CLASS = 3; // 对象：类名、父类、方法
+    private static final byte INSTANCE = 4; // 对象：所属的类
+    private static final byte NATIVE = 5; // 对象：本地函数的名称
+    private static final byte GLOBALS = 6; // 内容：全局变量的名称和值
+    private static final byte LOCALS = 7; // 内容：局部环境中按槽位排列的变量
+    private static final byte FIELDS = 8; // 内容：实例的字段名称和值
+    private static final byte MODULE = 9; // 已经执行过的模块路径
+
+    // 值
+    private static final byte NIL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte NUMBER = 3;
+    private static final byte STRING = 4;
+    private static final byte OBJECT = 5;
+
+    // 语法树节点，0表示null
+    private static final byte ASSIGN = 1;
+    private static final byte BINARY = 2;
+    private static final byte CALL = 3;
+    private static final byte GET = 4;
+    private static final byte GROUPING = 5;
+    private static final byte LITERAL = 6;
+    private static final byte LOGICAL = 7;
+    private static final byte SET = 8;
+    private static final byte SUPER = 9;
+    private static final byte THIS = 10;
+    private static final byte UNARY = 11;
+    private static final byte VARIABLE = 12;
+
+    private static final byte BLOCK = 1;
+    private static final byte BREAK = 2;
+    private static final byte CLASS_STMT = 3;
+    private static final byte CONTINUE = 4;
+    private static final byte EXPRESSION = 5;
+    private static final byte FUNCTION_STMT = 6;
+    private static final byte IF = 7;
+    private static final byte PRINT = 8;
+    private static final byte RETURN = 9;
+    private static final byte VAR = 10;
+    private static final byte WHILE = 11;
+
+    private Snapshot() {
+    }
+
+    // 把解释器的状态写入快照文件
+    static void write(Interpreter interpreter, Path path) throws IOException {
+        ByteBuffer buffer = new Writer(interpreter).write();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    // 把快照文件中的状态恢复到解释器中，快照中的全局变量覆盖解释器中的同名变量
+    static void restore(Interpreter interpreter, Path path) throws IOException {
+        ByteBuffer buffer;
+        // 映射到内存中直接读取，映射在通道关闭之后仍然有效
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            new Reader(interpreter, buffer).read();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | ClassCastException e) {
+            throw new IOException("Corrupt snapshot " + path + ".", e);
+        }
+    }
+
+    // 写入内存中的缓冲区，全部写完之后一次写入文件；访问者方法不需要处理IOException
+    private static final class Writer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        private final Interpreter interpreter;
+        private ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+        // 已经写出的对象、字符串和函数声明，值是它们的编号，按写出的顺序从0开始分配
+        private final Map<Object, Integer> objects = new IdentityHashMap<>();
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final Map<Stmt.Function, Integer> declarations = new IdentityHashMap<>();
+        // 已经创建但还没有写出内容的环境和实例
+        private final Deque<Object> pending = new ArrayDeque<>();
+        // 本地函数到名称的映射
+        private final Map<Object, String> natives = new IdentityHashMap<>();
+
+        Writer(Interpreter interpreter) {
+            this.interpreter = interpreter;
+            for (Map.Entry<String, LoxCallable> entry : interpreter.natives.entrySet()) {
+                natives.put(entry.getValue(), entry.getKey());
+            }
+        }
+
+        ByteBuffer write() throws IOException {
+            putInt(MAGIC);
+            putInt(VERSION);
+            // 全局环境是编号为0的对象，恢复时对应目标解释器的全局环境
+            objects.put(interpreter.globals, 0);
+            pending.add(interpreter.globals);
+            while (!pending.isEmpty()) {
+                Object next = pending.poll();
+                if (next instanceof Environment) {
+                    contents((Environment) next);
+                } else {
+                    contents((LoxInstance) next);
+                }
+            }
+            for (Path module : interpreter.imported) {
+                putByte(MODULE);
+                string(module.toString());
+            }
+            putByte(END);
+            out.flip();
+            return out;
+        }
+
+        private void contents(Environment environment) throws IOException {
+            Map<Symbol, Object> globals = environment.globalValues();
+            if (globals != null) {
+                for (Object value : globals.values()) {
+                    define(value);
+                }
+                putByte(GLOBALS);
+                putInt(globals.size());
+                for (Map.Entry<Symbol, Object> entry : globals.entrySet()) {
+                    string(entry.getKey().name);
+                    value(entry.getValue());
+                }
+                return;
+            }
+            int size = environment.size();
+            for (int slot = 0; slot < size; slot++) {
+                define(environment.getValueAt(0, slot));
+            }
+            putByte(LOCALS);
+            putInt(objects.get(environment));
+            putInt(size);
+            for (int slot = 0; slot < size; slot++) {
+                value(environment.getValueAt(0, slot));
+            }
+        }
+
+        private void contents(LoxInstance instance) throws IOException {
+            Symbol[] names = instance.shape.names();
+            for (int slot = 0; slot < names.length; slot++) {
+                define(instance.fields[slot]);
+            }
+            putByte(FIELDS);
+            putInt(objects.get(instance));
+            putInt(names.length);
+            for (int slot = 0; slot < names.length; slot++) {
+                string(names[slot].name);
+                value(instance.fields[slot]);
+            }
+        }
+
+        // 写出创建对象的记录，对象引用的其他对象先写出；环境和实例的内容之后再写
+        private void define(Object value) throws IOException {
+            if (value == null || value instanceof Boolean || value instanceof Double || LoxString.isString(value)
+                    || objects.containsKey(value)) {
+                return;
+            }
+            if (value instanceof Environment) {
+                Environment environment = (Environment) value;
+                if (environment.enclosing == null) {
+                    throw new IOException("Can't snapshot a second global environment.");
+                }
+                define(environment.enclosing);
+                putByte(LOCAL_ENVIRONMENT);
+                putInt(objects.get(environment.enclosing));
+                pending.add(environment);
+            } else if (value instanceof LoxFunction) {
+                LoxFunction function = (LoxFunction) value;
+                define(function.closure);
+                define(function.receiver);
+                putByte(FUNCTION);
+                declaration(function.declaration);
+                putInt(objects.get(function.closure));
+                putByte(function.isInitializer ? 1 : 0);
+                putByte(function.isMethod ? 1 : 0);
+                value(function.receiver);
+            } else if (value instanceof LoxClass) {
+                LoxClass klass = (LoxClass) value;
+                define(klass.superClass);
+                for (LoxFunction method : klass.methods.values()) {
+                    define(method);
+                }
+                putByte(CLASS);
+                string(klass.name);
+                value(klass.superClass);
+                putInt(klass.methods.size());
+                for (Map.Entry<Symbol, LoxFunction> method : klass.methods.entrySet()) {
+                    string(method.getKey().name);
+                    putInt(objects.get(method.getValue()));
+                }
+            } else if (value instanceof LoxInstance) {
+                define(((LoxInstance) value).klass);
+                putByte(INSTANCE);
+                putInt(objects.get(((LoxInstance) value).klass));
+                pending.add(value);
+            } else if (natives.containsKey(value)) {
+                putByte(NATIVE);
+                string(natives.get(value));
+            } else {
+                throw new IOException("Can't snapshot " + value + ".");
+            }
+            objects.put(value, objects.size());
+        }
+
+        private void value(Object value) {
+            if (value == null) {
+                putByte(NIL);
+            } else if (value instanceof Boolean) {
+                putByte((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Double) {
+                putByte(NUMBER);
+                ensure(8);
+                out.putDouble((Double) value);
+            } else if (LoxString.isString(value)) {
+                putByte(STRING);
+                string(value.toString());
+            } else {
+                putByte(OBJECT);
+                putInt(objects.get(value));
+            }
+        }
+
+        // 第一次出现的字符串写出编号和内容，之后只写编号
+        private void string(String value) {
+            Integer index = strings.get(value);
+            if (index != null) {
+                putInt(index);
+                return;
+            }
+            putInt(strings.size());
+            strings.put(value, strings.size());
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            ensure(bytes.length);
+            out.put(bytes);
+        }
+
+        // 函数声明与字符串一样按编号共享，同一个声明创建的多个函数在恢复之后仍然共享声明
+        private void declaration(Stmt.Function function) {
+            Integer index = declarations.get(function);
+            if (index != null) {
+                putInt(index);
+                return;
+            }
+            putInt(declarations.size());
+            declarations.put(function, declarations.size());
+            token(function.name);
+            putInt(function.params.size());
+            for (Token param : function.params) {
+                token(param);
+            }
+            statements(function.body);
+        }
+
+        private void token(Token token) {
+            putByte(token.type.ordinal());
+            string(token.lexeme);
+            value(token.literal);
+            putInt(token.line);
+        }
+
+        private void statements(List<Stmt> statements) {
+            putInt(statements.size());
+            for (Stmt statement : statements) {
+                statement(statement);
+            }
+        }
+
+        private void expressions(List<Expr> expressions) {
+            putInt(expressions.size());
+            for (Expr expression : expressions) {
+                expression(expression);
+            }
+        }
+
+        // 可能为null的子节点写出0
+        private void statement(Stmt stmt) {
+            if (stmt == null) {
+                putByte(0);
+            } else {
+                stmt.accept(this);
+            }
+        }
+
+        private void expression(Expr expr) {
+            if (expr == null) {
+                putByte(0);
+            } else {
+                expr.accept(this);
+            }
+        }
+
+        private void putByte(int value) {
+            ensure(1);
+            out.put((byte) value);
+        }
+
+        private void putInt(int value) {
+            ensure(4);
+            out.putInt(value);
+        }
+
+        // 缓冲区不够时扩大一倍
+        private void ensure(int length) {
+            if (out.remaining() < length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + length));
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            putByte(ASSIGN);
+            token(expr.name);
+            expression(expr.value);
+            putInt(expr.depth);
+            putInt(expr.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            putByte(BINARY);
+            expression(expr.left);
+            token(expr.operator);
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            putByte(CALL);
+            expression(expr.callee);
+            token(expr.paren);
+            expressions(expr.arguments);
+            return null;
+        }
+
+        @Override
+        public Void visitGetExpr(Expr.Get expr) {
+            putByte(GET);
+            expression(expr.object);
+            token(expr.name);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            putByte(GROUPING);
+            expression(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            putByte(LITERAL);
+            value(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            putByte(LOGICAL);
+            expression(expr.left);
+            token(expr.operator);
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitSetExpr(Expr.Set expr) {
+            putByte(SET);
+            expression(expr.object);
+            token(expr.name);
+            expression(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitSuperExpr(Expr.Super expr) {
+            putByte(SUPER);
+            token(expr.keyword);
+            token(expr.method);
+            putInt(expr.depth);
+            putInt(expr.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitThisExpr(Expr.This expr) {
+            putByte(THIS);
+            token(expr.keyword);
+            putInt(expr.depth);
+            putInt(expr.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            putByte(UNARY);
+            token(expr.operator);
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            putByte(VARIABLE);
+            token(expr.name);
+            putInt(expr.depth);
+            putInt(expr.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            putByte(BLOCK);
+            statements(stmt.statements);
+            return null;
+        }
+
+        @Override
+        public Void visitBreakStmt(Stmt.Break stmt) {
+            putByte(BREAK);
+            token(stmt.keyword);
+            return null;
+        }
+
+        @Override
+        public Void visitClassStmt(Stmt.Class stmt) {
+            putByte(CLASS_STMT);
+            token(stmt.name);
+            expression(stmt.superclass);
+            putInt(stmt.methods.size());
+            for (Stmt.Function method : stmt.methods) {
+                declaration(method);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitContinueStmt(Stmt.Continue stmt) {
+            putByte(CONTINUE);
+            token(stmt.keyword);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            putByte(EXPRESSION);
+            expression(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt) {
+            putByte(FUNCTION_STMT);
+            declaration(stmt);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt) {
+            putByte(IF);
+            expression(stmt.condition);
+            statement(stmt.thenBranch);
+            statement(stmt.elseBranch);
+            return null;
+        }
+
+        // import只出现在顶层代码中，不会出现在函数体里
+        @Override
+        public Void visitImportStmt(Stmt.Import stmt) {
+            throw new IllegalStateException("import inside a function body");
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            putByte(PRINT);
+            expression(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt) {
+            putByte(RETURN);
+            token(stmt.keyword);
+            expression(stmt.value);
+            putByte(stmt.tailCall ? 1 : 0);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            putByte(VAR);
+            token(stmt.name);
+            expression(stmt.initializer);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            putByte(WHILE);
+            expression(stmt.condition);
+            statement(stmt.body);
+            expression(stmt.increment);
+            return null;
+        }
+    }
+
+    private static final class Reader {
+        private final Interpreter interpreter;
+        private final ByteBuffer in;
+        // 按编号排列的对象、字符串和函数声明，与写出时的顺序相同
+        private final List<Object> objects = new ArrayList<>();
+        private final List<String> strings = new ArrayList<>();
+        private final List<Stmt.Function> declarations = new ArrayList<>();
+
+        Reader(Interpreter interpreter, ByteBuffer in) {
+            this.interpreter = interpreter;
+            this.in = in;
+        }
+
+        void read() throws IOException {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException("Not a snapshot of this interpreter version.");
+            }
+            objects.add(interpreter.globals);
+            while (true) {
+                byte record = in.get();
+                switch (record) {
+                    case END:
+                        return;
+                    case LOCAL_ENVIRONMENT:
+                        objects.add(new Environment((Environment) object()));
+                        break;
+                    case FUNCTION: {
+                        Stmt.Function declaration = declaration();
+                        Environment closure = (Environment) object();
+                        boolean isInitializer = in.get() != 0;
+                        boolean isMethod = in.get() != 0;
+                        LoxInstance receiver = (LoxInstance) value();
+                        objects.add(new LoxFunction(declaration, closure, isInitializer, isMethod, receiver));
+                        break;
+                    }
+                    case CLASS: {
+                        String name = string();
+                        LoxClass superClass = (LoxClass) value();
+                        // 写出的是已经展平的方法表，再和父类的方法合并一次结果不变
+                        Map<Symbol, LoxFunction> methods = new HashMap<>();
+                        for (int i = in.getInt(); i > 0; i--) {
+                            methods.put(Symbol.of(string()), (LoxFunction) object());
+                        }
+                        objects.add(new LoxClass(name, superClass, methods));
+                        break;
+                    }
+                    case INSTANCE:
+                        objects.add(new LoxInstance((LoxClass) object()));
+                        break;
+                    case NATIVE: {
+                        String name = string();
+                        LoxCallable function = interpreter.natives.get(name);
+                        if (function == null) {
+                            throw new IOException("Unknown native function '" + name + "'.");
+                        }
+                        objects.add(function);
+                        break;
+                    }
+                    case GLOBALS:
+                        for (int i = in.getInt(); i > 0; i--) {
+                            Symbol name = Symbol.of(string());
+                            interpreter.globals.define(name, value());
+                        }
+                        break;
+                    case LOCALS: {
+                        // 局部变量按槽位依次定义，与define()追加槽位的顺序一致
+                        Environment environment = (Environment) object();
+                        for (int i = in.getInt(); i > 0; i--) {
+                            environment.define(null, value());
+                        }
+                        break;
+                    }
+                    case FIELDS: {
+                        LoxInstance instance = (LoxInstance) object();
+                        for (int i = in.getInt(); i > 0; i--) {
+                            Symbol name = Symbol.of(string());
+                            instance.addField(instance.shape.addField(name), value());
+                        }
+                        break;
+                    }
+                    case MODULE:
+                        interpreter.imported.add(Paths.get(string()));
+                        break;
+                    default:
+                        throw new IOException("Unknown snapshot record " + record + ".");
+                }
+            }
+        }
+
+        private Object object() {
+            return objects.get(in.getInt());
+        }
+
+        private Object value() throws IOException {
+            byte tag = in.get();
+            switch (tag) {
+                case NIL:
+                    return null;
+                case FALSE:
+                    return false;
+                case TRUE:
+                    return true;
+                case NUMBER:
+                    return in.getDouble();
+                case STRING:
+                    return string();
+                case OBJECT:
+                    return object();
+                default:
+                    throw new IOException("Unknown snapshot value " + tag + ".");
+            }
+        }
+
+        private String string() {
+            int index = in.getInt();
+            if (index < strings.size()) {
+                return strings.get(index);
+            }
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(value);
+            return value;
+        }
+
+        // 编号等于已经读到的声明个数时是一个新的声明，先占住编号再读函数体，函数体中的内层函数使用后面的编号
+        private Stmt.Function declaration() throws IOException {
+            int index = in.getInt();
+            if (index < declarations.size()) {
+                return declarations.get(index);
+            }
+            declarations.add(null);
+            Token name = token();
+            List<Token> params = new ArrayList<>();
+            for (int i = in.getInt(); i > 0; i--) {
+                params.add(token());
+            }
+            Stmt.Function function = new Stmt.Function(name, params, statements());
+            declarations.set(index, function);
+            return function;
+        }
+
+        private Token token() throws IOException {
+            TokenType type = TokenType.values()[in.get()];
+            String lexeme = string();
+            Object literal = value();
+            return new Token(type, lexeme, literal, in.getInt());
+        }
+
+        private List<Stmt> statements() throws IOException {
+            int count = in.getInt();
+            List<Stmt> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                statements.add(statement());
+            }
+            return statements;
+        }
+
+        private List<Expr> expressions() throws IOException {
+            int count = in.getInt();
+            List<Expr> expressions = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                expressions.add(expression());
+            }
+            return expressions;
+        }
+
+        private Expr expression() throws IOException {
+            byte tag = in.get();
+            switch (tag) {
+                case 0:
+                    return null;
+                case ASSIGN: {
+                    Expr.Assign expr = new Expr.Assign(token(), expression());
+                    expr.depth = in.getInt();
+                    expr.slot = in.getInt();
+                    return expr;
+                }
+                case BINARY:
+                    return new Expr.Binary(expression(), token(), expression());
+                case CALL:
+                    return new Expr.Call(expression(), token(), expressions());
+                case GET:
+                    return new Expr.Get(expression(), token());
+                case GROUPING:
+                    return new Expr.Grouping(expression());
+                case LITERAL:
+                    return new Expr.Literal(value());
+                case LOGICAL:
+                    return new Expr.Logical(expression(), token(), expression());
+                case SET:
+                    return new Expr.Set(expression(), token(), expression());
+                case SUPER: {
+                    Expr.Super expr = new Expr.Super(token(), token());
+                    expr.depth = in.getInt();
+                    expr.slot = in.getInt();
+                    return expr;
+                }
+                case THIS: {
+                    Expr.This expr = new Expr.This(token());
+                    expr.depth = in.getInt();
+                    expr.slot = in.getInt();
+                    return expr;
+                }
+                case UNARY:
+                    return new Expr.Unary(token(), expression());
+                case VARIABLE: {
+                    Expr.Variable expr = new Expr.Variable(token());
+                    expr.depth = in.getInt();
+                    expr.slot = in.getInt();
+                    return expr;
+                }
+                default:
+                    throw new IOException("Unknown snapshot expression " + tag + ".");
+            }
+        }
+
+        private Stmt statement() throws IOException {
+            byte tag = in.get();
+            switch (tag) {
+                case 0:
+                    return null;
+                case BLOCK:
+                    return new Stmt.Block(statements());
+                case BREAK:
+                    return new Stmt.Break(token());
+                case CLASS_STMT: {
+                    Token name = token();
+                    Expr.Variable superclass = (Expr.Variable) expression();
+                    List<Stmt.Function> methods = new ArrayList<>();
+                    for (int i = in.getInt(); i > 0; i--) {
+                        methods.add(declaration());
+                    }
+                    return new Stmt.Class(name, superclass, methods);
+                }
+                case CONTINUE:
+                    return new Stmt.Continue(token());
+                case EXPRESSION:
+                    return new Stmt.Expression(expression());
+                case FUNCTION_STMT:
+                    return declaration();
+                case IF:
+                    return new Stmt.If(expression(), statement(), statement());
+                case PRINT:
+                    return new Stmt.Print(expression());
+                case RETURN: {
+                    Stmt.Return stmt = new Stmt.Return(token(), expression());
+                    stmt.tailCall = in.get() != 0;
+                    return stmt;
+                }
+                case VAR:
+                    return new Stmt.Var(token(), expression());
+                case WHILE:
+                    return new Stmt.While(expression(), statement(), expression());
+                default:
+                    throw new IOException("Unknown snapshot statement " + tag + ".");
+            }
+        }
+    }
+}
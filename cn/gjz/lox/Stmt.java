@@ -2,18 +2,24 @@ package cn.gjz.lox;
 
 import java.util.List;
 
-abstract class Stmt {
-    interface Visitor<R> {
+public abstract class Stmt {
+    public interface Visitor<R> {
         R visitBlockStmt(Block stmt);
 
+        R visitBreakStmt(Break stmt);
+
         R visitClassStmt(Class stmt);
 
+        R visitContinueStmt(Continue stmt);
+
         R visitExpressionStmt(Expression stmt);
 
         R visitFunctionStmt(Function stmt);
 
         R visitIfStmt(If stmt);
 
+        R visitImportStmt(Import stmt);
+
         R visitPrintStmt(Print stmt);
 
         R visitReturnStmt(Return stmt);
@@ -24,27 +30,41 @@ abstract class Stmt {
 
     }
 
-    abstract <R> R accept(Visitor<R> visitor);
+    public abstract <R> R accept(Visitor<R> visitor);
 
-    static class Block extends Stmt {
+    public static class Block extends Stmt {
 
-        final List<Stmt> statements;
+        public final List<Stmt> statements;
 
         Block(List<Stmt> statements) {
             this.statements = statements;
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitBlockStmt(this);
         }
     }
 
-    static class Class extends Stmt {
+    public static class Break extends Stmt {
+
+        public final Token keyword;
 
-        final Token name;
-        final Expr.Variable superclass;
-        final List<Stmt.Function> methods;
+        Break(Token keyword) {
+            this.keyword = keyword;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitBreakStmt(this);
+        }
+    }
+
+    public static class Class extends Stmt {
+
+        public final Token name;
+        public final Expr.Variable superclass;
+        public final List<Stmt.Function> methods;
 
         Class(Token name, Expr.Variable superclass, List<Stmt.Function> methods) {
             this.name = name;
@@ -53,30 +73,48 @@ abstract class Stmt {
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitClassStmt(this);
         }
     }
 
-    static class Expression extends Stmt {
+    public static class Continue extends Stmt {
+
+        public final Token keyword;
+
+        Continue(Token keyword) {
+            this.keyword = keyword;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitContinueStmt(this);
+        }
+    }
+
+    public static class Expression extends Stmt {
 
-        final Expr expression;
+        public final Expr expression;
 
         Expression(Expr expression) {
             this.expression = expression;
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitExpressionStmt(this);
         }
     }
 
-    static class Function extends Stmt {
+    public static class Function extends Stmt {
 
-        final Token name;
-        final List<Token> params;
-        final List<Stmt> body;
+        public final Token name;
+        public final List<Token> params;
+        public final List<Stmt> body;
+        public CompiledBody node = null;
+        public CompiledBody closure = null;
+        public int calls = 0;
+        public CompiledBody jitCode = null;
 
         Function(Token name, List<Token> params, List<Stmt> body) {
             this.name = name;
@@ -85,16 +123,16 @@ abstract class Stmt {
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitFunctionStmt(this);
         }
     }
 
-    static class If extends Stmt {
+    public static class If extends Stmt {
 
-        final Expr condition;
-        final Stmt thenBranch;
-        final Stmt elseBranch;
+        public final Expr condition;
+        public final Stmt thenBranch;
+        public final Stmt elseBranch;
 
         If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
             this.condition = condition;
@@ -103,29 +141,48 @@ abstract class Stmt {
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitIfStmt(this);
         }
     }
 
-    static class Print extends Stmt {
+    public static class Import extends Stmt {
+
+        public final Token keyword;
+        public final Token path;
+        public final LoxModule module;
+
+        Import(Token keyword, Token path, LoxModule module) {
+            this.keyword = keyword;
+            this.path = path;
+            this.module = module;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitImportStmt(this);
+        }
+    }
+
+    public static class Print extends Stmt {
 
-        final Expr expression;
+        public final Expr expression;
 
         Print(Expr expression) {
             this.expression = expression;
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitPrintStmt(this);
         }
     }
 
-    static class Return extends Stmt {
+    public static class Return extends Stmt {
 
-        final Token keyword;
-        final Expr value;
+        public final Token keyword;
+        public final Expr value;
+        public boolean tailCall = false;
 
         Return(Token keyword, Expr value) {
             this.keyword = keyword;
@@ -133,15 +190,15 @@ abstract class Stmt {
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitReturnStmt(this);
         }
     }
 
-    static class Var extends Stmt {
+    public static class Var extends Stmt {
 
-        final Token name;
-        final Expr initializer;
+        public final Token name;
+        public final Expr initializer;
 
         Var(Token name, Expr initializer) {
             this.name = name;
@@ -149,23 +206,25 @@ abstract class Stmt {
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitVarStmt(this);
         }
     }
 
-    static class While extends Stmt {
+    public static class While extends Stmt {
 
-        final Expr condition;
-        final Stmt body;
+        public final Expr condition;
+        public final Stmt body;
+        public final Expr increment;
 
-        While(Expr condition, Stmt body) {
+        While(Expr condition, Stmt body, Expr increment) {
             this.condition = condition;
             this.body = body;
+            this.increment = increment;
         }
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitWhileStmt(this);
         }
     }
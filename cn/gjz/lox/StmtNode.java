@@ -0,0 +1,304 @@
+package cn.gjz.lox;
+
+/**
+ * 节点解释器中的语句节点
+ * 语句执行完毕后返回NORMAL，执行了break或continue时返回BREAK或CONTINUE，由所在的循环处理；
+ * 执行了return语句时返回要返回的值，由外层语句逐层向上传递到函数体，不需要抛出异常
+ */
+
+abstract class StmtNode extends Node {
+
+    // 完成信号与树遍历解释器相同
+    static final Object NORMAL = Interpreter.NORMAL;
+    static final Object BREAK = Interpreter.BREAK;
+    static final Object CONTINUE = Interpreter.CONTINUE;
+
+    abstract Object execute(Environment environment);
+
+    // 表达式语句，结果不被使用
+    static class Expression extends StmtNode {
+        private ExprNode expression;
+
+        Expression(ExprNode expression) {
+            this.expression = adopt(expression);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            expression.executeVoid(environment);
+            return NORMAL;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            expression = (ExprNode) newChild;
+        }
+    }
+
+    static class Print extends StmtNode {
+        private ExprNode expression;
+
+        Print(ExprNode expression) {
+            this.expression = adopt(expression);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            System.out.println(Interpreter.stringify(expression.execute(environment)));
+            return NORMAL;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            expression = (ExprNode) newChild;
+        }
+    }
+
+    // 变量声明，与LocalAssign一样，初始值一直是数字时以未装箱的形式保存局部变量
+    static class Var extends StmtNode {
+        private final Symbol name;
+        private ExprNode initializer;
+        private boolean generic;
+
+        Var(Symbol name, ExprNode initializer) {
+            this.name = name;
+            this.initializer = adopt(initializer);
+            this.generic = initializer == null;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            if (generic) {
+                environment.define(name, initializer == null ? null : initializer.execute(environment));
+                return NORMAL;
+            }
+            try {
+                environment.defineDouble(name, initializer.executeDouble(environment));
+            } catch (UnexpectedResultException e) {
+                generic = true;
+                environment.define(name, e.result);
+            }
+            return NORMAL;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            initializer = (ExprNode) newChild;
+        }
+    }
+
+    // 在给定的环境中依次执行语句，用作函数体
+    static class Sequence extends StmtNode implements CompiledBody {
+        private final StmtNode[] statements;
+
+        Sequence(StmtNode[] statements) {
+            this.statements = statements;
+            for (StmtNode statement : statements) {
+                adopt(statement);
+            }
+        }
+
+        @Override
+        public Object execute(Environment environment) {
+            for (StmtNode statement : statements) {
+                Object result = statement.execute(environment);
+                if (result != NORMAL) {
+                    return result;
+                }
+            }
+            return NORMAL;
+        }
+    }
+
+    // 开启运行指标时套在每条语句外面，统计执行过的语句条数
+    static class Counted extends StmtNode {
+        private final StmtNode statement;
+
+        Counted(StmtNode statement) {
+            this.statement = adopt(statement);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Metrics.statement();
+            return statement.execute(environment);
+        }
+    }
+
+    // 语法块，为块作用域创建新的环境
+    static class Block extends StmtNode {
+        private final StmtNode[] statements;
+
+        Block(StmtNode[] statements) {
+            this.statements = statements;
+            for (StmtNode statement : statements) {
+                adopt(statement);
+            }
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Environment blockEnvironment = new Environment(environment);
+            for (StmtNode statement : statements) {
+                Object result = statement.execute(blockEnvironment);
+                if (result != NORMAL) {
+                    return result;
+                }
+            }
+            return NORMAL;
+        }
+    }
+
+    static class If extends StmtNode {
+        private ExprNode condition;
+        private final StmtNode thenBranch;
+        private final StmtNode elseBranch;
+
+        If(ExprNode condition, StmtNode thenBranch, StmtNode elseBranch) {
+            this.condition = adopt(condition);
+            this.thenBranch = adopt(thenBranch);
+            this.elseBranch = adopt(elseBranch);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            if (condition.executeCondition(environment)) {
+                return thenBranch.execute(environment);
+            } else if (elseBranch != null) {
+                return elseBranch.execute(environment);
+            }
+            return NORMAL;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            condition = (ExprNode) newChild;
+        }
+    }
+
+    // for循环的增量表达式可能为null
+    static class While extends StmtNode {
+        private ExprNode condition;
+        private final StmtNode body;
+        private ExprNode increment;
+
+        While(ExprNode condition, StmtNode body, ExprNode increment) {
+            this.condition = adopt(condition);
+            this.body = adopt(body);
+            this.increment = adopt(increment);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            while (condition.executeCondition(environment)) {
+                Object result = body.execute(environment);
+                if (result == BREAK) {
+                    break;
+                }
+                if (result != NORMAL && result != CONTINUE) {
+                    return result;
+                }
+                if (increment != null) {
+                    increment.executeVoid(environment);
+                }
+            }
+            return NORMAL;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (condition == oldChild) {
+                condition = (ExprNode) newChild;
+            } else {
+                increment = (ExprNode) newChild;
+            }
+        }
+    }
+
+    static class Break extends StmtNode {
+        @Override
+        Object execute(Environment environment) {
+            return BREAK;
+        }
+    }
+
+    static class Continue extends StmtNode {
+        @Override
+        Object execute(Environment environment) {
+            return CONTINUE;
+        }
+    }
+
+    // 导入模块，由解释器决定是否需要执行模块的顶层代码
+    static class Import extends StmtNode {
+        private final Interpreter interpreter;
+        private final Stmt.Import stmt;
+
+        Import(Interpreter interpreter, Stmt.Import stmt) {
+            this.interpreter = interpreter;
+            this.stmt = stmt;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            interpreter.importModule(stmt);
+            return NORMAL;
+        }
+    }
+
+    static class Return extends StmtNode {
+        private ExprNode value;
+
+        Return(ExprNode value) {
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return value == null ? null : value.execute(environment);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            value = (ExprNode) newChild;
+        }
+    }
+
+    // 函数声明，函数体的节点树已经保存在声明的语法树节点上
+    static class Function extends StmtNode {
+        private final Stmt.Function declaration;
+
+        Function(Stmt.Function declaration) {
+            this.declaration = declaration;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            environment.define(declaration.name.symbol, new LoxFunction(declaration, environment, false));
+            return NORMAL;
+        }
+    }
+
+    // 类声明
+    static class Class extends StmtNode {
+        private final Stmt.Class declaration;
+        private ExprNode superclass;
+
+        Class(Stmt.Class declaration, ExprNode superclass) {
+            this.declaration = declaration;
+            this.superclass = adopt(superclass);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object superClass = superclass == null ? null : superclass.execute(environment);
+            Interpreter.defineClass(declaration, superClass, environment);
+            return NORMAL;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            superclass = (ExprNode) newChild;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package cn.gjz.lox;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 驻留的标识符
+ * 扫描得到的每个标识符都对应全局符号表中唯一的Symbol，名称相同的标识符共享同一个对象
+ * 全局变量、类的方法表和实例的形状都以Symbol为键：比较时只比较引用，哈希值是创建时分配的连续编号
+ */
+
+public final class Symbol {
+
+    // 符号表，多个线程可能同时扫描源代码
+    private static final Map<String, Symbol> TABLE = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    // 解释器内部直接使用的名称
+    static final Symbol THIS = of("this");
+    static final Symbol SUPER = of("super");
+    static final Symbol INIT = of("init");
+
+    final String name;
+    final int id;
+
+    private Symbol(String name, int id) {
+        this.name = name;
+        this.id = id;
+    }
+
+    // 查找名称对应的符号，第一次出现时创建
+    static Symbol of(String name) {
+        Symbol symbol = TABLE.get(name);
+        if (symbol == null) {
+            symbol = TABLE.computeIfAbsent(name, key -> new Symbol(key, NEXT_ID.getAndIncrement()));
+        }
+        return symbol;
+    }
+
+    // equals()继承自Object，只比较引用
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
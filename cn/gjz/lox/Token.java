@@ -5,14 +5,17 @@ package cn.gjz.lox;
  */
 
 public class Token {
-    final TokenType type; // token的类型
-    final String lexeme; // 字符表现形式
-    final Object literal; // 变量的实际值
-    final int line; // token所在行号
+    public final TokenType type; // token的类型
+    public final String lexeme; // 字符表现形式
+    public final Object literal; // 变量的实际值
+    public final int line; // token所在行号
+    public final Symbol symbol; // 标识符驻留后的符号，其他token为null
 
     public Token(TokenType type, String lexeme, Object literal, int line) {
         this.type = type;
-        this.lexeme = lexeme;
+        // 标识符在创建token时驻留，lexeme使用符号中的名称，同名的标识符共享同一个字符串
+        this.symbol = type == TokenType.IDENTIFIER ? Symbol.of(lexeme) : null;
+        this.lexeme = symbol == null ? lexeme : symbol.name;
         this.literal = literal;
         this.line = line;
     }
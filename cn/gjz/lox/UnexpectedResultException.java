@@ -0,0 +1,14 @@
+package cn.gjz.lox;
+
+/**
+ * 节点解释器中特化的求值方法(例如executeDouble)无法返回期望类型的结果时抛出，异常中带有实际的结果
+ */
+
+class UnexpectedResultException extends Exception {
+    final Object result;
+
+    UnexpectedResultException(Object result) {
+        super(null, null, false, false);
+        this.result = result;
+    }
+}
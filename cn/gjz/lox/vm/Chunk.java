@@ -0,0 +1,80 @@
+package cn.gjz.lox.vm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 一段字节码：指令序列、常量池以及行号表
+ */
+
+final class Chunk {
+    // 指令序列
+    byte[] code = new byte[64];
+    int count = 0;
+
+    // 常量池 运行时按索引直接访问
+    Object[] constants = new Object[16];
+    private int constantCount = 0;
+    // 同一个常量(例如重复出现的变量名)只在常量池中保存一份
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+
+    // 行号表 采用游程编码：lineStarts[i]是第i段指令的起始偏移量，lines[i]是这一段指令对应的源代码行号
+    private int[] lineStarts = new int[8];
+    private int[] lines = new int[8];
+    private int lineCount = 0;
+
+    // 写入一个字节，同时记录其所在的源代码行
+    void write(byte b, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+        }
+        // 只有行号发生变化时才在行号表中新增一段
+        if (lineCount == 0 || lines[lineCount - 1] != line) {
+            if (lineCount == lines.length) {
+                lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                lines = Arrays.copyOf(lines, lineCount * 2);
+            }
+            lineStarts[lineCount] = count;
+            lines[lineCount] = line;
+            lineCount++;
+        }
+        code[count++] = b;
+    }
+
+    // 向常量池中添加一个常量并返回其索引
+    int addConstant(Object value) {
+        // 函数对象每个都是独立的，不参与去重
+        boolean shareable = value instanceof String || value instanceof Double;
+        if (shareable) {
+            Integer index = constantIndex.get(value);
+            if (index != null) {
+                return index;
+            }
+        }
+        if (constantCount == constants.length) {
+            constants = Arrays.copyOf(constants, constantCount * 2);
+        }
+        int index = constantCount++;
+        constants[index] = value;
+        if (shareable) {
+            constantIndex.put(value, index);
+        }
+        return index;
+    }
+
+    // 通过二分查找行号表得到某条指令的源代码行号
+    int getLine(int offset) {
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lineStarts[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return lineCount == 0 ? 0 : lines[low];
+    }
+}
@@ -0,0 +1,758 @@
+package cn.gjz.lox.vm;
+
+import cn.gjz.lox.Expr;
+import cn.gjz.lox.Lox;
+import cn.gjz.lox.LoxModule;
+import cn.gjz.lox.Stmt;
+import cn.gjz.lox.Token;
+import cn.gjz.lox.TokenType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 字节码编译器
+ * 输入是已经通过Resolver静态检查的语法树，输出是顶层脚本对应的函数
+ * 局部变量存放在虚拟机栈的槽位上，被内层函数捕获的变量通过上值访问，只有全局变量需要按名称查找
+ */
+
+final class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    // 局部变量槽位和上值索引都只占一个字节
+    private static final int MAX_SLOTS = 256;
+
+    private enum FunctionType {
+        SCRIPT,
+        FUNCTION,
+        METHOD,
+        INITIALIZER
+    }
+
+    // 编译期的局部变量，下标就是它在栈帧中的槽位
+    private static final class Local {
+        final String name;
+        final int depth;
+        // 是否被内层函数捕获，捕获的变量离开作用域时需要关闭上值而不是直接出栈
+        boolean isCaptured = false;
+
+        Local(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    // 编译期的上值：isLocal为true时index指向外层函数的局部变量槽位，否则指向外层函数的上值
+    private static final class Upvalue {
+        final int index;
+        final boolean isLocal;
+
+        Upvalue(int index, boolean isLocal) {
+            this.index = index;
+            this.isLocal = isLocal;
+        }
+    }
+
+    // 正在编译的循环，break和continue先丢弃循环体中声明的局部变量，再跳转到循环之后或者增量表达式
+    private static final class Loop {
+        final Loop enclosing;
+        // 循环所在作用域的深度，比它更深的局部变量都在循环体中
+        final int scopeDepth;
+        final List<Integer> breakJumps = new ArrayList<>();
+        final List<Integer> continueJumps = new ArrayList<>();
+
+        Loop(Loop enclosing, int scopeDepth) {
+            this.enclosing = enclosing;
+            this.scopeDepth = scopeDepth;
+        }
+    }
+
+    // 正在编译的函数，函数嵌套时沿enclosing链回到外层函数
+    private static final class FunctionState {
+        final FunctionState enclosing;
+        final ObjFunction function;
+        final FunctionType type;
+        final List<Local> locals = new ArrayList<>();
+        final List<Upvalue> upvalues = new ArrayList<>();
+        int scopeDepth = 0;
+        // 函数中最内层的循环，break和continue不能跨越函数
+        Loop loop = null;
+
+        FunctionState(FunctionState enclosing, ObjFunction function, FunctionType type) {
+            this.enclosing = enclosing;
+            this.function = function;
+            this.type = type;
+            // 槽位0留给被调用的函数本身，在方法中它保存的是this
+            String name = (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) ? "this" : "";
+            locals.add(new Local(name, 0));
+        }
+    }
+
+    // 正在编译的类，用于判断方法中能否使用super
+    private static final class ClassState {
+        final ClassState enclosing;
+        boolean hasSuperclass = false;
+
+        ClassState(ClassState enclosing) {
+            this.enclosing = enclosing;
+        }
+    }
+
+    private FunctionState current;
+    private ClassState currentClass;
+    // 当前正在编译的源代码行，写入的每个字节都会记录这个行号
+    private int line = 0;
+    private boolean hadError = false;
+    // 虚拟机中已经编译好的模块，每个模块的顶层代码编译为一个单独的脚本函数
+    private final Map<LoxModule, ObjFunction> modules;
+    // 这次编译新加入的模块，出现编译错误时从modules中移除
+    private final List<LoxModule> compiledModules = new ArrayList<>();
+
+    Compiler(Map<LoxModule, ObjFunction> modules) {
+        this.modules = modules;
+    }
+
+    // 编译整个程序，出现编译错误时返回null
+    ObjFunction compile(List<Stmt> statements) {
+        current = new FunctionState(null, new ObjFunction(null), FunctionType.SCRIPT);
+        for (Stmt statement : statements) {
+            compile(statement);
+        }
+        ObjFunction function = endFunction();
+        if (hadError) {
+            for (LoxModule module : compiledModules) {
+                modules.remove(module);
+            }
+            return null;
+        }
+        return function;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        line = stmt.keyword.line;
+        discardLoopLocals();
+        current.loop.breakJumps.add(emitJump(OpCode.JUMP));
+        return null;
+    }
+
+    @Override
+    public Void visitContinueStmt(Stmt.Continue stmt) {
+        line = stmt.keyword.line;
+        discardLoopLocals();
+        current.loop.continueJumps.add(emitJump(OpCode.JUMP));
+        return null;
+    }
+
+    // 类声明：创建类对象并绑定到变量，存在父类时先复制父类的方法，再逐个添加自己的方法
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        line = stmt.name.line;
+        int nameConstant = makeConstant(stmt.name.lexeme);
+        emitOp(OpCode.CLASS);
+        emitShort(nameConstant);
+        defineVariable(stmt.name);
+
+        ClassState classState = new ClassState(currentClass);
+        currentClass = classState;
+
+        if (stmt.superclass != null) {
+            compile(stmt.superclass);
+            // 父类保存在一个名为super的局部变量中，方法通过上值捕获它
+            beginScope();
+            addLocal("super");
+            namedVariable(stmt.name);
+            line = stmt.superclass.name.line;
+            emitOp(OpCode.INHERIT);
+            classState.hasSuperclass = true;
+        }
+
+        // 把类对象压栈，METHOD指令把栈顶的闭包添加到它下面的类中
+        namedVariable(stmt.name);
+        for (Stmt.Function method : stmt.methods) {
+            FunctionType type = method.name.lexeme.equals("init") ? FunctionType.INITIALIZER : FunctionType.METHOD;
+            function(method, type);
+            line = method.name.line;
+            emitOp(OpCode.METHOD);
+            emitShort(makeConstant(method.name.lexeme));
+        }
+        emitOp(OpCode.POP);
+
+        if (classState.hasSuperclass) {
+            endScope();
+        }
+        currentClass = currentClass.enclosing;
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emitOp(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        line = stmt.name.line;
+        // 局部函数在编译函数体之前就完成定义，这样函数体内可以递归地引用自己
+        if (current.scopeDepth > 0) {
+            addLocal(stmt.name.lexeme);
+            function(stmt, FunctionType.FUNCTION);
+        } else {
+            function(stmt, FunctionType.FUNCTION);
+            defineVariable(stmt.name);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        compile(stmt.condition);
+        int thenJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitOp(OpCode.POP);
+        compile(stmt.thenBranch);
+        int elseJump = emitJump(OpCode.JUMP);
+        patchJump(thenJump);
+        emitOp(OpCode.POP);
+        if (stmt.elseBranch != null) {
+            compile(stmt.elseBranch);
+        }
+        patchJump(elseJump);
+        return null;
+    }
+
+    // IMPORT指令在模块第一次导入时调用模块的脚本函数，之后的导入只压入nil，两种情况都由后面的POP弹出
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt) {
+        line = stmt.keyword.line;
+        ObjFunction module = modules.get(stmt.module);
+        if (module == null) {
+            module = compileModule(stmt.module);
+        }
+        emitOp(OpCode.IMPORT);
+        emitShort(makeConstant(module));
+        emitOp(OpCode.POP);
+        return null;
+    }
+
+    // 把模块的顶层代码编译为脚本函数，import只出现在顶层，模块不会捕获导入者的局部变量
+    private ObjFunction compileModule(LoxModule module) {
+        FunctionState enclosing = current;
+        ClassState enclosingClass = currentClass;
+        int enclosingLine = line;
+        ObjFunction function = new ObjFunction(module.toString());
+        // 编译之前就放入modules，循环导入时直接引用这个函数
+        modules.put(module, function);
+        compiledModules.add(module);
+        current = new FunctionState(null, function, FunctionType.SCRIPT);
+        currentClass = null;
+        for (Stmt statement : module.statements()) {
+            compile(statement);
+        }
+        endFunction();
+        current = enclosing;
+        currentClass = enclosingClass;
+        line = enclosingLine;
+        return function;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emitOp(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        line = stmt.keyword.line;
+        if (current.type == FunctionType.INITIALIZER) {
+            // 构造方法总是返回this
+            emitBytes(OpCode.GET_LOCAL, (byte) 0);
+        } else if (stmt.tailCall) {
+            call((Expr.Call) stmt.value, true);
+        } else if (stmt.value != null) {
+            compile(stmt.value);
+        } else {
+            emitOp(OpCode.NIL);
+        }
+        emitOp(OpCode.RETURN);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        line = stmt.name.line;
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            emitOp(OpCode.NIL);
+        }
+        // 局部变量的值就留在栈上，它所在的栈槽位就是这个变量
+        defineVariable(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = current.function.chunk.count;
+        compile(stmt.condition);
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitOp(OpCode.POP);
+        Loop loop = new Loop(current.loop, current.scopeDepth);
+        current.loop = loop;
+        compile(stmt.body);
+        current.loop = loop.enclosing;
+        // continue跳转到增量表达式，没有增量表达式时直接回到循环条件
+        for (int jump : loop.continueJumps) {
+            patchJump(jump);
+        }
+        if (stmt.increment != null) {
+            compile(stmt.increment);
+            emitOp(OpCode.POP);
+        }
+        emitLoop(loopStart);
+        patchJump(exitJump);
+        emitOp(OpCode.POP);
+        // break跳转到条件值出栈之后
+        for (int jump : loop.breakJumps) {
+            patchJump(jump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        line = expr.name.line;
+        emitSet(expr.name.lexeme);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case PLUS:
+                emitOp(OpCode.ADD);
+                break;
+            case MINUS:
+                emitOp(OpCode.SUBTRACT);
+                break;
+            case STAR:
+                emitOp(OpCode.MULTIPLY);
+                break;
+            case SLASH:
+                emitOp(OpCode.DIVIDE);
+                break;
+            case GREATER:
+                emitOp(OpCode.GREATER);
+                break;
+            case GREATER_EQUAL:
+                emitOp(OpCode.GREATER_EQUAL);
+                break;
+            case LESS:
+                emitOp(OpCode.LESS);
+                break;
+            case LESS_EQUAL:
+                emitOp(OpCode.LESS_EQUAL);
+                break;
+            case EQUAL_EQUAL:
+                emitOp(OpCode.EQUAL);
+                break;
+            case BANG_EQUAL:
+                emitOp(OpCode.NOT_EQUAL);
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        call(expr, false);
+        return null;
+    }
+
+    // tail为true时生成尾调用指令，之后的RETURN只在被调用者是本地函数时执行
+    private void call(Expr.Call expr, boolean tail) {
+        // obj.method(args)直接调用方法，不需要先创建绑定方法
+        if (expr.callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get) expr.callee;
+            compile(get.object);
+            int argCount = arguments(expr.arguments);
+            line = expr.paren.line;
+            emitOp(tail ? OpCode.TAIL_INVOKE : OpCode.INVOKE);
+            emitShort(makeConstant(get.name.lexeme));
+            emitByte((byte) argCount);
+            return;
+        }
+        // super.method(args)同理
+        if (expr.callee instanceof Expr.Super) {
+            Expr.Super superExpr = (Expr.Super) expr.callee;
+            line = superExpr.keyword.line;
+            namedVariable("this");
+            int argCount = arguments(expr.arguments);
+            namedVariable("super");
+            line = expr.paren.line;
+            emitOp(tail ? OpCode.SUPER_TAIL_INVOKE : OpCode.SUPER_INVOKE);
+            emitShort(makeConstant(superExpr.method.lexeme));
+            emitByte((byte) argCount);
+            return;
+        }
+        compile(expr.callee);
+        int argCount = arguments(expr.arguments);
+        line = expr.paren.line;
+        emitBytes(tail ? OpCode.TAIL_CALL : OpCode.CALL, (byte) argCount);
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        compile(expr.object);
+        line = expr.name.line;
+        emitOp(OpCode.GET_PROPERTY);
+        emitShort(makeConstant(expr.name.lexeme));
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emitOp(OpCode.NIL);
+        } else if (expr.value == Boolean.TRUE) {
+            emitOp(OpCode.TRUE);
+        } else if (expr.value == Boolean.FALSE) {
+            emitOp(OpCode.FALSE);
+        } else {
+            emitOp(OpCode.CONSTANT);
+            emitShort(makeConstant(expr.value));
+        }
+        return null;
+    }
+
+    // 逻辑表达式通过条件跳转实现短路求值
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+        if (expr.operator.type == TokenType.OR) {
+            int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+            int endJump = emitJump(OpCode.JUMP);
+            patchJump(elseJump);
+            emitOp(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        } else {
+            int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+            emitOp(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        compile(expr.object);
+        compile(expr.value);
+        line = expr.name.line;
+        emitOp(OpCode.SET_PROPERTY);
+        emitShort(makeConstant(expr.name.lexeme));
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        line = expr.keyword.line;
+        namedVariable("this");
+        namedVariable("super");
+        line = expr.method.line;
+        emitOp(OpCode.GET_SUPER);
+        emitShort(makeConstant(expr.method.lexeme));
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        line = expr.keyword.line;
+        namedVariable("this");
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case BANG:
+                emitOp(OpCode.NOT);
+                break;
+            case MINUS:
+                emitOp(OpCode.NEGATE);
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        namedVariable(expr.name);
+        return null;
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    // 编译参数列表，返回参数个数
+    private int arguments(List<Expr> arguments) {
+        for (Expr argument : arguments) {
+            compile(argument);
+        }
+        return arguments.size();
+    }
+
+    // 编译函数体，并在外层函数中生成创建闭包的指令
+    private void function(Stmt.Function declaration, FunctionType type) {
+        FunctionState state = new FunctionState(current, new ObjFunction(declaration.name.lexeme), type);
+        current = state;
+        // 参数和函数体共享同一个作用域，与Resolver的处理方式一致
+        beginScope();
+        state.function.arity = declaration.params.size();
+        for (Token param : declaration.params) {
+            addLocal(param.lexeme);
+        }
+        for (Stmt statement : declaration.body) {
+            compile(statement);
+        }
+        // 函数体中的局部变量会随着栈帧一起丢弃，不需要逐个出栈
+        ObjFunction function = endFunction();
+
+        line = declaration.name.line;
+        emitOp(OpCode.CLOSURE);
+        emitShort(makeConstant(function));
+        for (Upvalue upvalue : state.upvalues) {
+            emitByte(upvalue.isLocal ? (byte) 1 : (byte) 0);
+            emitByte((byte) upvalue.index);
+        }
+    }
+
+    // 结束当前函数的编译，补上隐式的返回语句并回到外层函数
+    private ObjFunction endFunction() {
+        if (current.type == FunctionType.INITIALIZER) {
+            emitBytes(OpCode.GET_LOCAL, (byte) 0);
+        } else {
+            emitOp(OpCode.NIL);
+        }
+        emitOp(OpCode.RETURN);
+        ObjFunction function = current.function;
+        function.upvalueCount = current.upvalues.size();
+        current = current.enclosing;
+        return function;
+    }
+
+    private void beginScope() {
+        current.scopeDepth++;
+    }
+
+    // 丢弃作用域中的局部变量，被捕获的变量要先把它关闭到上值中
+    private void endScope() {
+        current.scopeDepth--;
+        List<Local> locals = current.locals;
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+            if (locals.get(locals.size() - 1).isCaptured) {
+                emitOp(OpCode.CLOSE_UPVALUE);
+            } else {
+                emitOp(OpCode.POP);
+            }
+            locals.remove(locals.size() - 1);
+        }
+    }
+
+    // break和continue离开循环体中的作用域：生成与endScope()相同的出栈指令，但编译期的局部变量仍然保留，循环体后面的代码还要使用它们
+    private void discardLoopLocals() {
+        List<Local> locals = current.locals;
+        for (int i = locals.size() - 1; i >= 0 && locals.get(i).depth > current.loop.scopeDepth; i--) {
+            emitOp(locals.get(i).isCaptured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+        }
+    }
+
+    private void addLocal(String name) {
+        if (current.locals.size() == MAX_SLOTS) {
+            error("Too many local variables in function.");
+            return;
+        }
+        current.locals.add(new Local(name, current.scopeDepth));
+    }
+
+    // 全局变量通过名称定义，局部变量在addLocal时就已经定义好了
+    private void defineVariable(Token name) {
+        if (current.scopeDepth > 0) {
+            addLocal(name.lexeme);
+            return;
+        }
+        emitOp(OpCode.DEFINE_GLOBAL);
+        emitShort(makeConstant(name.lexeme));
+    }
+
+    private void namedVariable(Token name) {
+        line = name.line;
+        namedVariable(name.lexeme);
+    }
+
+    // 按照局部变量、上值、全局变量的顺序解析变量，生成读取变量的指令
+    private void namedVariable(String name) {
+        int slot = resolveLocal(current, name);
+        if (slot != -1) {
+            emitBytes(OpCode.GET_LOCAL, (byte) slot);
+            return;
+        }
+        int upvalue = resolveUpvalue(current, name);
+        if (upvalue != -1) {
+            emitBytes(OpCode.GET_UPVALUE, (byte) upvalue);
+            return;
+        }
+        emitOp(OpCode.GET_GLOBAL);
+        emitShort(makeConstant(name));
+    }
+
+    // 生成给变量赋值的指令
+    private void emitSet(String name) {
+        int slot = resolveLocal(current, name);
+        if (slot != -1) {
+            emitBytes(OpCode.SET_LOCAL, (byte) slot);
+            return;
+        }
+        int upvalue = resolveUpvalue(current, name);
+        if (upvalue != -1) {
+            emitBytes(OpCode.SET_UPVALUE, (byte) upvalue);
+            return;
+        }
+        emitOp(OpCode.SET_GLOBAL);
+        emitShort(makeConstant(name));
+    }
+
+    // 从最内层的局部变量开始查找，这样内层作用域的变量会遮蔽外层的同名变量
+    private int resolveLocal(FunctionState state, String name) {
+        for (int i = state.locals.size() - 1; i >= 0; i--) {
+            if (state.locals.get(i).name.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 在外层函数中查找变量，找到后沿着函数嵌套链逐层添加上值
+    private int resolveUpvalue(FunctionState state, String name) {
+        if (state.enclosing == null) {
+            return -1;
+        }
+        int local = resolveLocal(state.enclosing, name);
+        if (local != -1) {
+            state.enclosing.locals.get(local).isCaptured = true;
+            return addUpvalue(state, local, true);
+        }
+        int upvalue = resolveUpvalue(state.enclosing, name);
+        if (upvalue != -1) {
+            return addUpvalue(state, upvalue, false);
+        }
+        return -1;
+    }
+
+    private int addUpvalue(FunctionState state, int index, boolean isLocal) {
+        // 同一个变量在一个函数中只捕获一次
+        for (int i = 0; i < state.upvalues.size(); i++) {
+            Upvalue upvalue = state.upvalues.get(i);
+            if (upvalue.index == index && upvalue.isLocal == isLocal) {
+                return i;
+            }
+        }
+        if (state.upvalues.size() == MAX_SLOTS) {
+            error("Too many closure variables in function.");
+            return 0;
+        }
+        state.upvalues.add(new Upvalue(index, isLocal));
+        return state.upvalues.size() - 1;
+    }
+
+    private int makeConstant(Object value) {
+        int index = current.function.chunk.addConstant(value);
+        if (index > 0xffff) {
+            error("Too many constants in one chunk.");
+            return 0;
+        }
+        return index;
+    }
+
+    private void emitByte(byte b) {
+        current.function.chunk.write(b, line);
+    }
+
+    private void emitOp(byte op) {
+        emitByte(op);
+    }
+
+    private void emitBytes(byte op, byte operand) {
+        emitByte(op);
+        emitByte(operand);
+    }
+
+    private void emitShort(int value) {
+        emitByte((byte) ((value >> 8) & 0xff));
+        emitByte((byte) (value & 0xff));
+    }
+
+    // 写入跳转指令，偏移量先用占位符填充，返回占位符的位置
+    private int emitJump(byte op) {
+        emitOp(op);
+        emitShort(0xffff);
+        return current.function.chunk.count - 2;
+    }
+
+    // 跳转目标确定后回填偏移量
+    private void patchJump(int offset) {
+        Chunk chunk = current.function.chunk;
+        int jump = chunk.count - offset - 2;
+        if (jump > 0xffff) {
+            error("Too much code to jump over.");
+        }
+        chunk.code[offset] = (byte) ((jump >> 8) & 0xff);
+        chunk.code[offset + 1] = (byte) (jump & 0xff);
+    }
+
+    // 循环体结束时跳回循环条件
+    private void emitLoop(int loopStart) {
+        emitOp(OpCode.LOOP);
+        int offset = current.function.chunk.count - loopStart + 2;
+        if (offset > 0xffff) {
+            error("Loop body too large.");
+        }
+        emitShort(offset);
+    }
+
+    private void error(String message) {
+        Lox.error(line, message);
+        hadError = true;
+    }
+}
@@ -0,0 +1,20 @@
+package cn.gjz.lox.vm;
+
+/**
+ * 绑定了接收者的方法，只有把方法当作值来使用时才会创建
+ */
+
+final class ObjBoundMethod {
+    final Object receiver;
+    final ObjClosure method;
+
+    ObjBoundMethod(Object receiver, ObjClosure method) {
+        this.receiver = receiver;
+        this.method = method;
+    }
+
+    @Override
+    public String toString() {
+        return method.toString();
+    }
+}
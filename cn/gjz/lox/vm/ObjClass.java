@@ -0,0 +1,25 @@
+package cn.gjz.lox.vm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 类的运行时表示
+ */
+
+final class ObjClass {
+    final String name;
+    // 继承时父类的方法会被复制到子类中，所以查找方法不需要遍历父类链
+    final Map<String, ObjClosure> methods = new HashMap<>();
+    // 构造方法init()，没有时为null
+    ObjClosure initializer;
+
+    ObjClass(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
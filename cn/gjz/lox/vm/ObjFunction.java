@@ -0,0 +1,26 @@
+package cn.gjz.lox.vm;
+
+/**
+ * 编译得到的函数：函数体字节码以及调用时需要的元信息
+ */
+
+final class ObjFunction {
+    final String name;
+    final Chunk chunk = new Chunk();
+    int arity = 0;
+    // 函数体捕获的外层局部变量个数
+    int upvalueCount = 0;
+
+    ObjFunction(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        // 顶层脚本也被编译成一个函数，它没有名字
+        if (name == null) {
+            return "<script>";
+        }
+        return "<fn " + name + ">";
+    }
+}
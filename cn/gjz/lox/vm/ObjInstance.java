@@ -0,0 +1,27 @@
+package cn.gjz.lox.vm;
+
+import cn.gjz.lox.Metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 类实例的运行时表示
+ */
+
+final class ObjInstance {
+    final ObjClass klass;
+    final Map<String, Object> fields = new HashMap<>();
+
+    ObjInstance(ObjClass klass) {
+        this.klass = klass;
+        if (Metrics.ENABLED) {
+            Metrics.instance();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return klass.name + " instance";
+    }
+}
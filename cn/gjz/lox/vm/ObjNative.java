@@ -0,0 +1,24 @@
+package cn.gjz.lox.vm;
+
+/**
+ * 用Java实现的本地函数
+ */
+
+final class ObjNative {
+    interface Function {
+        Object call(Object[] arguments);
+    }
+
+    final int arity;
+    final Function function;
+
+    ObjNative(int arity, Function function) {
+        this.arity = arity;
+        this.function = function;
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+}
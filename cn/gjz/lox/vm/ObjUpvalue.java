@@ -0,0 +1,18 @@
+package cn.gjz.lox.vm;
+
+/**
+ * 被闭包捕获的变量
+ * 变量仍在栈上时(open)通过栈槽位访问，变量所在的栈帧返回后(closed)把值搬到上值自身中
+ */
+
+final class ObjUpvalue {
+    // 变量在虚拟机栈中的槽位，关闭后置为-1
+    int slot;
+    Object closed;
+    // 按槽位从高到低串起所有仍然打开的上值
+    ObjUpvalue next;
+
+    ObjUpvalue(int slot) {
+        this.slot = slot;
+    }
+}
@@ -0,0 +1,70 @@
+package cn.gjz.lox.vm;
+
+/**
+ * 字节码指令集
+ * 每条指令占一个字节，紧跟其后的是该指令的操作数(单字节的局部变量槽位，或者双字节的常量索引与跳转偏移量)
+ */
+
+final class OpCode {
+    // 常量与字面量
+    static final byte CONSTANT = 0; // u16 常量池索引
+    static final byte NIL = 1;
+    static final byte TRUE = 2;
+    static final byte FALSE = 3;
+    static final byte POP = 4;
+
+    // 变量读写
+    static final byte GET_LOCAL = 5; // u8 栈槽位
+    static final byte SET_LOCAL = 6; // u8 栈槽位
+    static final byte GET_GLOBAL = 7; // u16 变量名常量
+    static final byte DEFINE_GLOBAL = 8; // u16 变量名常量
+    static final byte SET_GLOBAL = 9; // u16 变量名常量
+    static final byte GET_UPVALUE = 10; // u8 上值索引
+    static final byte SET_UPVALUE = 11; // u8 上值索引
+    static final byte GET_PROPERTY = 12; // u16 属性名常量
+    static final byte SET_PROPERTY = 13; // u16 属性名常量
+    static final byte GET_SUPER = 14; // u16 方法名常量
+
+    // 运算符
+    static final byte EQUAL = 15;
+    static final byte NOT_EQUAL = 16;
+    static final byte GREATER = 17;
+    static final byte GREATER_EQUAL = 18;
+    static final byte LESS = 19;
+    static final byte LESS_EQUAL = 20;
+    static final byte ADD = 21;
+    static final byte SUBTRACT = 22;
+    static final byte MULTIPLY = 23;
+    static final byte DIVIDE = 24;
+    static final byte NOT = 25;
+    static final byte NEGATE = 26;
+
+    // 语句与控制流
+    static final byte PRINT = 27;
+    static final byte JUMP = 28; // u16 向前跳转的偏移量
+    static final byte JUMP_IF_FALSE = 29; // u16 向前跳转的偏移量(不弹出条件值)
+    static final byte LOOP = 30; // u16 向后跳转的偏移量
+
+    // 函数与调用
+    static final byte CALL = 31; // u8 参数个数
+    static final byte INVOKE = 32; // u16 方法名常量, u8 参数个数
+    static final byte SUPER_INVOKE = 33; // u16 方法名常量, u8 参数个数
+    // return语句中的尾调用，被调用者的栈帧取代当前栈帧，操作数与对应的普通调用相同
+    static final byte TAIL_CALL = 34; // u8 参数个数
+    static final byte TAIL_INVOKE = 35; // u16 方法名常量, u8 参数个数
+    static final byte SUPER_TAIL_INVOKE = 36; // u16 方法名常量, u8 参数个数
+    static final byte CLOSURE = 37; // u16 函数常量, 之后每个上值各占两个字节(isLocal, index)
+    static final byte CLOSE_UPVALUE = 38;
+    static final byte RETURN = 39;
+
+    // 类
+    static final byte CLASS = 40; // u16 类名常量
+    static final byte INHERIT = 41;
+    static final byte METHOD = 42; // u16 方法名常量
+
+    // 模块
+    static final byte IMPORT = 43; // u16 模块脚本函数常量，第一次导入时调用它，否则压入nil
+
+    private OpCode() {
+    }
+}
@@ -0,0 +1,708 @@
+package cn.gjz.lox.vm;
+
+import cn.gjz.lox.Lox;
+import cn.gjz.lox.LoxEvents;
+import cn.gjz.lox.LoxModule;
+import cn.gjz.lox.LoxString;
+import cn.gjz.lox.Metrics;
+import cn.gjz.lox.Profiler;
+import cn.gjz.lox.RuntimeError;
+import cn.gjz.lox.Stmt;
+import cn.gjz.lox.Token;
+import cn.gjz.lox.TokenType;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 基于栈的字节码虚拟机
+ * 与树遍历解释器Interpreter执行相同的语义，两者可以通过命令行参数切换
+ */
+
+public class VM {
+
+    // 调用栈的最大深度，超出时报告栈溢出而不是让Java栈溢出
+    private static final int FRAMES_MAX = 100000;
+
+    // 一次函数调用对应的栈帧
+    private static final class CallFrame {
+        ObjClosure closure;
+        // 下一条要执行的指令
+        int ip;
+        // 栈帧在虚拟机栈中的起始槽位，槽位0是被调用者本身(方法中是this)
+        int base;
+        // 开启JFR的函数调用事件时，这一次调用对应的事件
+        LoxEvents.FunctionCall event;
+    }
+
+    // 操作数栈，局部变量也保存在这里
+    private Object[] stack = new Object[256];
+    private int stackTop = 0;
+
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+
+    private final Map<String, Object> globals = new HashMap<>();
+    // 编译好的模块以及已经执行过的模块，同一个模块在虚拟机中只编译和执行一次
+    private final Map<LoxModule, ObjFunction> modules = new HashMap<>();
+    private final Set<ObjFunction> imported = new HashSet<>();
+    // 仍然指向栈上变量的上值，按槽位从高到低排列
+    private ObjUpvalue openUpvalues = null;
+
+    public VM() {
+        // 与Interpreter中的本地函数保持一致
+        defineNative("clock", 0, arguments -> (double) System.currentTimeMillis() / 1000.0);
+    }
+
+    // 编译并执行一段已经完成静态分析的程序
+    public void interpret(List<Stmt> statements) {
+        ObjFunction function = new Compiler(modules).compile(statements);
+        if (function == null) {
+            return;
+        }
+        ObjClosure closure = new ObjClosure(function);
+        push(closure);
+        try {
+            call(closure, 0);
+            run();
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+            resetStack();
+        }
+    }
+
+    // 字节码解释循环
+    private void run() {
+        CallFrame frame = frames[frameCount - 1];
+        byte[] code = frame.closure.function.chunk.code;
+        Object[] constants = frame.closure.function.chunk.constants;
+        int ip = frame.ip;
+
+        while (true) {
+            byte instruction = code[ip++];
+            switch (instruction) {
+                case OpCode.CONSTANT: {
+                    push(constants[readShort(code, ip)]);
+                    ip += 2;
+                    break;
+                }
+                case OpCode.NIL:
+                    push(null);
+                    break;
+                case OpCode.TRUE:
+                    push(Boolean.TRUE);
+                    break;
+                case OpCode.FALSE:
+                    push(Boolean.FALSE);
+                    break;
+                case OpCode.POP:
+                    stack[--stackTop] = null;
+                    break;
+                case OpCode.GET_LOCAL: {
+                    push(stack[frame.base + (code[ip++] & 0xff)]);
+                    break;
+                }
+                case OpCode.SET_LOCAL: {
+                    stack[frame.base + (code[ip++] & 0xff)] = peek(0);
+                    break;
+                }
+                case OpCode.GET_GLOBAL: {
+                    String name = (String) constants[readShort(code, ip)];
+                    ip += 2;
+                    Object value = globals.get(name);
+                    if (value == null && !globals.containsKey(name)) {
+                        frame.ip = ip;
+                        throw runtimeError("Undefined variable '" + name + "'.");
+                    }
+                    push(value);
+                    break;
+                }
+                case OpCode.DEFINE_GLOBAL: {
+                    String name = (String) constants[readShort(code, ip)];
+                    ip += 2;
+                    globals.put(name, pop());
+                    break;
+                }
+                case OpCode.SET_GLOBAL: {
+                    String name = (String) constants[readShort(code, ip)];
+                    ip += 2;
+                    if (!globals.containsKey(name)) {
+                        frame.ip = ip;
+                        throw runtimeError("Undefined variable '" + name + "'.");
+                    }
+                    globals.put(name, peek(0));
+                    break;
+                }
+                case OpCode.GET_UPVALUE: {
+                    ObjUpvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                    push(upvalue.slot >= 0 ? stack[upvalue.slot] : upvalue.closed);
+                    break;
+                }
+                case OpCode.SET_UPVALUE: {
+                    ObjUpvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                    if (upvalue.slot >= 0) {
+                        stack[upvalue.slot] = peek(0);
+                    } else {
+                        upvalue.closed = peek(0);
+                    }
+                    break;
+                }
+                case OpCode.GET_PROPERTY: {
+                    String name = (String) constants[readShort(code, ip)];
+                    ip += 2;
+                    frame.ip = ip;
+                    if (!(peek(0) instanceof ObjInstance)) {
+                        throw runtimeError("Only instances have properties.");
+                    }
+                    ObjInstance instance = (ObjInstance) peek(0);
+                    // 字段优先于方法
+                    Object value = instance.fields.get(name);
+                    if (value != null || instance.fields.containsKey(name)) {
+                        stack[stackTop - 1] = value;
+                        break;
+                    }
+                    stack[stackTop - 1] = bindMethod(instance.klass, instance, name, " Undefined property '" + name + "'.");
+                    break;
+                }
+                case OpCode.SET_PROPERTY: {
+                    String name = (String) constants[readShort(code, ip)];
+                    ip += 2;
+                    if (!(peek(1) instanceof ObjInstance)) {
+                        frame.ip = ip;
+                        throw runtimeError("Only instances have fields.");
+                    }
+                    ObjInstance instance = (ObjInstance) peek(1);
+                    Object value = pop();
+                    instance.fields.put(name, value);
+                    stack[stackTop - 1] = value;
+                    break;
+                }
+                case OpCode.GET_SUPER: {
+                    String name = (String) constants[readShort(code, ip)];
+                    ip += 2;
+                    frame.ip = ip;
+                    ObjClass superclass = (ObjClass) pop();
+                    stack[stackTop - 1] = bindMethod(superclass, peek(0), name, "Undefined property '" + name + "'.");
+                    break;
+                }
+                case OpCode.EQUAL: {
+                    Object b = pop();
+                    stack[stackTop - 1] = isEqual(stack[stackTop - 1], b);
+                    break;
+                }
+                case OpCode.NOT_EQUAL: {
+                    Object b = pop();
+                    stack[stackTop - 1] = !isEqual(stack[stackTop - 1], b);
+                    break;
+                }
+                case OpCode.GREATER: {
+                    frame.ip = ip;
+                    double b = popNumber();
+                    stack[stackTop - 1] = number(stack[stackTop - 1]) > b;
+                    break;
+                }
+                case OpCode.GREATER_EQUAL: {
+                    frame.ip = ip;
+                    double b = popNumber();
+                    stack[stackTop - 1] = number(stack[stackTop - 1]) >= b;
+                    break;
+                }
+                case OpCode.LESS: {
+                    frame.ip = ip;
+                    double b = popNumber();
+                    stack[stackTop - 1] = number(stack[stackTop - 1]) < b;
+                    break;
+                }
+                case OpCode.LESS_EQUAL: {
+                    frame.ip = ip;
+                    double b = popNumber();
+                    stack[stackTop - 1] = number(stack[stackTop - 1]) <= b;
+                    break;
+                }
+                case OpCode.ADD: {
+                    Object b = peek(0);
+                    Object a = peek(1);
+                    if (a instanceof Double && b instanceof Double) {
+                        stackTop--;
+                        stack[stackTop - 1] = (double) a + (double) b;
+                    } else if (LoxString.isString(a) && LoxString.isString(b)) {
+                        stackTop--;
+                        stack[stackTop - 1] = LoxString.concat(a, b);
+                    } else {
+                        frame.ip = ip;
+                        throw runtimeError("Operands must be two numbers or two strings.");
+                    }
+                    break;
+                }
+                case OpCode.SUBTRACT: {
+                    frame.ip = ip;
+                    double b = popNumber();
+                    stack[stackTop - 1] = number(stack[stackTop - 1]) - b;
+                    break;
+                }
+                case OpCode.MULTIPLY: {
+                    frame.ip = ip;
+                    double b = popNumber();
+                    stack[stackTop - 1] = number(stack[stackTop - 1]) * b;
+                    break;
+                }
+                case OpCode.DIVIDE: {
+                    frame.ip = ip;
+                    double b = popNumber();
+                    stack[stackTop - 1] = number(stack[stackTop - 1]) / b;
+                    break;
+                }
+                case OpCode.NOT:
+                    stack[stackTop - 1] = isFalsey(stack[stackTop - 1]);
+                    break;
+                case OpCode.NEGATE: {
+                    if (!(peek(0) instanceof Double)) {
+                        frame.ip = ip;
+                        throw runtimeError("Operand must be a number.");
+                    }
+                    stack[stackTop - 1] = -(double) stack[stackTop - 1];
+                    break;
+                }
+                case OpCode.PRINT:
+                    System.out.println(stringify(pop()));
+                    break;
+                case OpCode.JUMP: {
+                    ip += readShort(code, ip) + 2;
+                    break;
+                }
+                case OpCode.JUMP_IF_FALSE: {
+                    int offset = readShort(code, ip);
+                    ip += 2;
+                    if (isFalsey(peek(0))) {
+                        ip += offset;
+                    }
+                    break;
+                }
+                case OpCode.LOOP: {
+                    int offset = readShort(code, ip);
+                    ip += 2;
+                    ip -= offset;
+                    break;
+                }
+                case OpCode.CALL: {
+                    int argCount = code[ip++] & 0xff;
+                    frame.ip = ip;
+                    callValue(peek(argCount), argCount);
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                    break;
+                }
+                case OpCode.INVOKE: {
+                    String name = (String) constants[readShort(code, ip)];
+                    int argCount = code[ip + 2] & 0xff;
+                    ip += 3;
+                    frame.ip = ip;
+                    invoke(name, argCount);
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                    break;
+                }
+                case OpCode.SUPER_INVOKE: {
+                    String name = (String) constants[readShort(code, ip)];
+                    int argCount = code[ip + 2] & 0xff;
+                    ip += 3;
+                    frame.ip = ip;
+                    ObjClass superclass = (ObjClass) pop();
+                    invokeFromClass(superclass, name, argCount, "Undefined property '" + name + "'.");
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                    break;
+                }
+                case OpCode.TAIL_CALL: {
+                    int argCount = code[ip++] & 0xff;
+                    frame.ip = ip;
+                    int depth = frameCount;
+                    callValue(peek(argCount), argCount);
+                    if (frameCount > depth) {
+                        replaceFrame();
+                    }
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                    break;
+                }
+                case OpCode.TAIL_INVOKE: {
+                    String name = (String) constants[readShort(code, ip)];
+                    int argCount = code[ip + 2] & 0xff;
+                    ip += 3;
+                    frame.ip = ip;
+                    int depth = frameCount;
+                    invoke(name, argCount);
+                    if (frameCount > depth) {
+                        replaceFrame();
+                    }
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                    break;
+                }
+                case OpCode.SUPER_TAIL_INVOKE: {
+                    String name = (String) constants[readShort(code, ip)];
+                    int argCount = code[ip + 2] & 0xff;
+                    ip += 3;
+                    frame.ip = ip;
+                    ObjClass superclass = (ObjClass) pop();
+                    invokeFromClass(superclass, name, argCount, "Undefined property '" + name + "'.");
+                    replaceFrame();
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                    break;
+                }
+                case OpCode.CLOSURE: {
+                    ObjFunction function = (ObjFunction) constants[readShort(code, ip)];
+                    ip += 2;
+                    ObjClosure closure = new ObjClosure(function);
+                    push(closure);
+                    for (int i = 0; i < closure.upvalues.length; i++) {
+                        boolean isLocal = code[ip++] == 1;
+                        int index = code[ip++] & 0xff;
+                        if (isLocal) {
+                            closure.upvalues[i] = captureUpvalue(frame.base + index);
+                        } else {
+                            closure.upvalues[i] = frame.closure.upvalues[index];
+                        }
+                    }
+                    break;
+                }
+                case OpCode.CLOSE_UPVALUE:
+                    closeUpvalues(stackTop - 1);
+                    pop();
+                    break;
+                case OpCode.RETURN: {
+                    Object result = pop();
+                    closeUpvalues(frame.base);
+                    frameCount--;
+                    if (Profiler.enabled() && frameCount > 0) {
+                        Profiler.exit();
+                    }
+                    LoxEvents.endCall(frame.event);
+                    if (frameCount == 0) {
+                        // 弹出顶层脚本对应的闭包
+                        pop();
+                        return;
+                    }
+                    Arrays.fill(stack, frame.base, stackTop, null);
+                    stackTop = frame.base;
+                    push(result);
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                    break;
+                }
+                case OpCode.CLASS: {
+                    push(new ObjClass((String) constants[readShort(code, ip)]));
+                    ip += 2;
+                    break;
+                }
+                case OpCode.INHERIT: {
+                    if (!(peek(1) instanceof ObjClass)) {
+                        frame.ip = ip;
+                        throw runtimeError("Superclass must be a class.");
+                    }
+                    ObjClass superclass = (ObjClass) peek(1);
+                    ObjClass subclass = (ObjClass) peek(0);
+                    // 类在定义之后不会再改变，所以可以直接把父类的方法复制到子类中
+                    subclass.methods.putAll(superclass.methods);
+                    subclass.initializer = superclass.initializer;
+                    pop();
+                    break;
+                }
+                case OpCode.METHOD: {
+                    String name = (String) constants[readShort(code, ip)];
+                    ip += 2;
+                    ObjClosure method = (ObjClosure) peek(0);
+                    ObjClass klass = (ObjClass) peek(1);
+                    klass.methods.put(name, method);
+                    if (name.equals("init")) {
+                        klass.initializer = method;
+                    }
+                    pop();
+                    break;
+                }
+                case OpCode.IMPORT: {
+                    ObjFunction module = (ObjFunction) constants[readShort(code, ip)];
+                    ip += 2;
+                    if (!imported.add(module)) {
+                        push(null);
+                        break;
+                    }
+                    // 与调用没有参数的函数相同，模块的脚本函数返回的nil由后面的POP弹出
+                    frame.ip = ip;
+                    ObjClosure closure = new ObjClosure(module);
+                    push(closure);
+                    call(closure, 0);
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown opcode " + instruction);
+            }
+        }
+    }
+
+    // 调用一个值，被调用者和参数已经依次压在栈上
+    private void callValue(Object callee, int argCount) {
+        if (callee instanceof ObjClosure) {
+            call((ObjClosure) callee, argCount);
+            return;
+        }
+        if (callee instanceof ObjBoundMethod) {
+            ObjBoundMethod bound = (ObjBoundMethod) callee;
+            // 用接收者替换栈上的被调用者，它会成为方法中的this
+            stack[stackTop - argCount - 1] = bound.receiver;
+            call(bound.method, argCount);
+            return;
+        }
+        if (callee instanceof ObjClass) {
+            ObjClass klass = (ObjClass) callee;
+            stack[stackTop - argCount - 1] = new ObjInstance(klass);
+            if (klass.initializer != null) {
+                call(klass.initializer, argCount);
+            } else if (argCount != 0) {
+                throw runtimeError("Expected 0 arguments but got " + argCount + ".");
+            }
+            return;
+        }
+        if (callee instanceof ObjNative) {
+            ObjNative nativeFn = (ObjNative) callee;
+            if (argCount != nativeFn.arity) {
+                throw runtimeError("Expected " + nativeFn.arity + " arguments but got " + argCount + ".");
+            }
+            Object[] arguments = Arrays.copyOfRange(stack, stackTop - argCount, stackTop);
+            Object result = nativeFn.function.call(arguments);
+            Arrays.fill(stack, stackTop - argCount - 1, stackTop, null);
+            stackTop -= argCount + 1;
+            push(result);
+            return;
+        }
+        throw runtimeError("Can only call functions and classes.");
+    }
+
+    // 为闭包创建新的栈帧
+    private void call(ObjClosure closure, int argCount) {
+        if (argCount != closure.function.arity) {
+            throw runtimeError("Expected " + closure.function.arity + " arguments but got " + argCount + ".");
+        }
+        if (frameCount == FRAMES_MAX) {
+            throw runtimeError("Stack overflow.");
+        }
+        if (frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, frameCount * 2);
+        }
+        CallFrame frame = frames[frameCount];
+        if (frame == null) {
+            frame = new CallFrame();
+            frames[frameCount] = frame;
+        }
+        // 顶层脚本不算作一次函数调用
+        if (Metrics.ENABLED && frameCount > 0) {
+            Metrics.call();
+        }
+        frame.event = frameCount > 0 ? LoxEvents.beginCall(closure.function.name) : null;
+        // 性能分析时记录函数名称和调用者当前所在的行，顶层脚本对应影子栈的根
+        if (Profiler.enabled() && frameCount > 0) {
+            CallFrame caller = frames[frameCount - 1];
+            Profiler.enter(closure.function.name, caller.closure.function.chunk.getLine(caller.ip - 1));
+        }
+        frameCount++;
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.base = stackTop - argCount - 1;
+    }
+
+    // 尾调用：把刚压入的被调用者栈帧(被调用者和参数)移到调用者的位置，调用栈的深度不变
+    private void replaceFrame() {
+        CallFrame caller = frames[frameCount - 2];
+        CallFrame callee = frames[frameCount - 1];
+        // 调用者的局部变量即将被覆盖，先关闭指向它们的上值
+        closeUpvalues(caller.base);
+        int size = stackTop - callee.base;
+        System.arraycopy(stack, callee.base, stack, caller.base, size);
+        Arrays.fill(stack, caller.base + size, stackTop, null);
+        stackTop = caller.base + size;
+        caller.closure = callee.closure;
+        caller.ip = 0;
+        // 调用者的调用到此结束，被调用者接替它的事件
+        LoxEvents.endCall(caller.event);
+        caller.event = callee.event;
+        frameCount--;
+        if (Profiler.enabled()) {
+            Profiler.replaceCaller();
+        }
+    }
+
+    // 直接调用实例上的方法，避免创建绑定方法
+    private void invoke(String name, int argCount) {
+        Object receiver = peek(argCount);
+        if (!(receiver instanceof ObjInstance)) {
+            throw runtimeError("Only instances have properties.");
+        }
+        ObjInstance instance = (ObjInstance) receiver;
+        // 同名字段遮蔽方法，这时按普通调用处理字段中保存的值
+        Object value = instance.fields.get(name);
+        if (value != null || instance.fields.containsKey(name)) {
+            stack[stackTop - argCount - 1] = value;
+            callValue(value, argCount);
+            return;
+        }
+        invokeFromClass(instance.klass, name, argCount, " Undefined property '" + name + "'.");
+    }
+
+    private void invokeFromClass(ObjClass klass, String name, int argCount, String undefinedMessage) {
+        ObjClosure method = klass.methods.get(name);
+        if (method == null) {
+            throw runtimeError(undefinedMessage);
+        }
+        call(method, argCount);
+    }
+
+    // 把方法当作值使用时才创建绑定方法
+    private ObjBoundMethod bindMethod(ObjClass klass, Object receiver, String name, String undefinedMessage) {
+        ObjClosure method = klass.methods.get(name);
+        if (method == null) {
+            throw runtimeError(undefinedMessage);
+        }
+        return new ObjBoundMethod(receiver, method);
+    }
+
+    // 查找或创建指向某个栈槽位的上值，同一个变量只对应一个上值
+    private ObjUpvalue captureUpvalue(int slot) {
+        ObjUpvalue previous = null;
+        ObjUpvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.slot > slot) {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+        if (upvalue != null && upvalue.slot == slot) {
+            return upvalue;
+        }
+        ObjUpvalue created = new ObjUpvalue(slot);
+        created.next = upvalue;
+        if (previous == null) {
+            openUpvalues = created;
+        } else {
+            previous.next = created;
+        }
+        return created;
+    }
+
+    // 关闭所有指向last及其以上槽位的上值，把变量的值从栈上搬到上值中
+    private void closeUpvalues(int last) {
+        while (openUpvalues != null && openUpvalues.slot >= last) {
+            ObjUpvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.slot];
+            upvalue.slot = -1;
+            openUpvalues = upvalue.next;
+        }
+    }
+
+    private void defineNative(String name, int arity, ObjNative.Function function) {
+        globals.put(name, new ObjNative(arity, function));
+    }
+
+    private void push(Object value) {
+        if (stackTop == stack.length) {
+            stack = Arrays.copyOf(stack, stackTop * 2);
+        }
+        stack[stackTop++] = value;
+    }
+
+    private Object pop() {
+        Object value = stack[--stackTop];
+        stack[stackTop] = null;
+        return value;
+    }
+
+    private Object peek(int distance) {
+        return stack[stackTop - 1 - distance];
+    }
+
+    // 弹出右操作数，左操作数留在栈顶由调用者替换为运算结果
+    private double popNumber() {
+        if (!(peek(0) instanceof Double) || !(peek(1) instanceof Double)) {
+            throw runtimeError("Operands must be numbers.");
+        }
+        return (double) pop();
+    }
+
+    private static double number(Object value) {
+        return (double) value;
+    }
+
+    private static int readShort(byte[] code, int ip) {
+        return ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+    }
+
+    private void resetStack() {
+        Arrays.fill(stack, null);
+        stackTop = 0;
+        frameCount = 0;
+        openUpvalues = null;
+        if (Profiler.enabled()) {
+            Profiler.reset();
+        }
+    }
+
+    // 运行时错误的行号来自当前指令在行号表中的记录
+    private RuntimeError runtimeError(String message) {
+        CallFrame frame = frames[frameCount - 1];
+        int line = frame.closure.function.chunk.getLine(frame.ip - 1);
+        return new RuntimeError(new Token(TokenType.EOF, "", null, line), message);
+    }
+
+    private static boolean isFalsey(Object value) {
+        return value == null || (value instanceof Boolean && !(boolean) value);
+    }
+
+    // 与Interpreter.isEqual的语义一致
+    private static boolean isEqual(Object a, Object b) {
+        if (a == null && b == null) {
+            return true;
+        }
+        if (a == null) {
+            return false;
+        }
+        if (a instanceof LoxString || b instanceof LoxString) {
+            return LoxString.contentEquals(a, b);
+        }
+        return a.equals(b);
+    }
+
+    // 与Interpreter.stringify的输出格式一致
+    private static String stringify(Object object) {
+        if (object == null) {
+            return "nil";
+        }
+        if (object instanceof Double) {
+            String text = object.toString();
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+            return text;
+        }
+        return object.toString();
+    }
+}
@@ -21,32 +21,41 @@ public class GenerateAst {
         }
         String outputDir = args[0];
         // 对每种类型及字段进行一些描述
+        // 第二个冒号之后是可变字段及其初始值，由Resolver等后续阶段填写，例如变量解析得到的作用域距离和槽位(-1表示全局变量)
+        // 以及解释器在属性访问点上使用的内联缓存、节点解释器为函数体生成的节点树、闭包编译器生成的闭包和JIT的调用计数与编译结果
+        // 各个引擎编译好的函数体都以CompiledBody保存，语法树不直接引用这些引擎的类
         defineAst(outputDir, "Expr", Arrays.asList(
-                "Assign   : Token name, Expr value",
+                "Assign   : Token name, Expr value : int depth = -1, int slot = -1",
                 "Binary   : Expr left, Token operator, Expr right",
                 "Call     : Expr callee, Token paren, List<Expr> arguments",
-                "Get      : Expr object, Token name",
+                "Get      : Expr object, Token name : PropertyCache cache = new PropertyCache()",
                 "Grouping : Expr expression",
                 "Literal  : Object value",
                 "Logical  : Expr left, Token operator, Expr right",
-                "Set      : Expr object, Token name, Expr value",
-                "Super    : Token keyword, Token method",
-                "This     : Token keyword",
+                "Set      : Expr object, Token name, Expr value : PropertyCache cache = new PropertyCache()",
+                "Super    : Token keyword, Token method : int depth = -1, int slot = -1, LoxClass superclass = null, LoxFunction target = null",
+                "This     : Token keyword : int depth = -1, int slot = -1",
                 "Unary    : Token operator, Expr right",
-                "Variable : Token name"
+                "Variable : Token name : int depth = -1, int slot = -1"
         ));
 
         // 定义Stmt和它的子类
         defineAst(outputDir, "Stmt", Arrays.asList(
                 "Block      : List<Stmt> statements",
+                "Break      : Token keyword",
                 "Class      : Token name, Expr.Variable superclass, List<Stmt.Function> methods",
+                "Continue   : Token keyword",
                 "Expression : Expr expression",
-                "Function   : Token name, List<Token> params, List<Stmt> body",
+                "Function   : Token name, List<Token> params, List<Stmt> body : CompiledBody node = null, CompiledBody closure = null, int calls = 0, CompiledBody jitCode = null",
                 "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
+                // import "path";只能出现在顶层，module是解析时开始加载的模块，路径无法读取时为null
+                "Import     : Token keyword, Token path, LoxModule module",
                 "Print      : Expr expression",
-                "Return     : Token keyword, Expr value",
+                // return f(...)由Resolver标记为尾调用
+                "Return     : Token keyword, Expr value : boolean tailCall = false",
                 "Var        : Token name, Expr initializer",
-                "While      : Expr condition, Stmt body"
+                // for循环的增量表达式保存在While中，continue之后仍然要执行增量，没有增量时为null
+                "While      : Expr condition, Stmt body, Expr increment"
         ));
     }
 
@@ -59,18 +68,21 @@ public class GenerateAst {
         writer.println();
         writer.println("import java.util.List;");
         writer.println();
-        writer.println("abstract class " + baseName + " {");
+        // 语法树需要被cn.gjz.lox.vm包中的字节码编译器访问，所以生成的类型、字段和accept方法都是public的
+        writer.println("public abstract class " + baseName + " {");
         // 定义表达式访问者
         defineVisitor(writer, baseName, types);
         // 访问者模式中定义抽象accept方法
-        writer.println("    abstract <R> R accept(Visitor<R> visitor);");
+        writer.println("    public abstract <R> R accept(Visitor<R> visitor);");
         writer.println();
 
         // 生成4个内联类
         for (String type : types) {
-            String className = type.split(":")[0].trim();
-            String fields = type.split(":")[1].trim();
-            defineType(writer, baseName, className, fields);
+            String[] parts = type.split(":");
+            String className = parts[0].trim();
+            String fields = parts[1].trim();
+            String mutableFields = parts.length > 2 ? parts[2].trim() : null;
+            defineType(writer, baseName, className, fields, mutableFields);
         }
         writer.println("}");
         writer.close();
@@ -78,7 +90,7 @@ public class GenerateAst {
 
     // 访问者模式中生成visitor接口
     private static void defineVisitor(PrintWriter writer, String baseName, List<String> types) {
-        writer.println("    interface Visitor<R> {");
+        writer.println("    public interface Visitor<R> {");
         for (String type : types) {
             String typeName = type.split(":")[0].trim();
             writer.println("        R visit" + typeName + baseName + "(" + typeName + " " + baseName.toLowerCase() + ");");
@@ -88,15 +100,21 @@ public class GenerateAst {
         writer.println();
     }
 
-    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList) {
+    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList, String mutableFieldList) {
         // 类名
-        writer.println("    static class " + className + " extends " + baseName + " {");
+        writer.println("    public static class " + className + " extends " + baseName + " {");
         // 传入构造器的参数
         String[] fields = fieldList.split(", ");
         // 子类中的成员变量
         writer.println();
         for (String field : fields) {
-            writer.println("        final " + field + ";");
+            writer.println("        public final " + field + ";");
+        }
+        // 不通过构造器传入的可变字段
+        if (mutableFieldList != null) {
+            for (String field : mutableFieldList.split(", ")) {
+                writer.println("        public " + field + ";");
+            }
         }
         writer.println();
         // 构造器
@@ -110,7 +128,7 @@ public class GenerateAst {
         // 子类中实现accept方法并调用其类型对应的visit方法
         writer.println();
         writer.println("        @Override");
-        writer.println("        <R> R accept(Visitor<R> visitor) {");
+        writer.println("        public <R> R accept(Visitor<R> visitor) {");
         writer.println("            return visitor.visit" + className + baseName + "(this);");
         writer.println("        }");
         writer.println("    }");
@@ -0,0 +1,86 @@
+package cn.gjz.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 函数调用开销基准
+ * 通过LoxFunction.call()调用函数体几乎为空的函数和绑定方法，测量的主要是创建环境、绑定参数和执行函数体的固定开销
+ * engine选择执行函数体的解释器，与命令行中的--engine对应(不包括虚拟机)
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallBenchmark {
+
+    private static final String SOURCE = ""
+            + "fun empty() {}\n"
+            + "fun add(a, b) { return a + b; }\n"
+            + "class Counter { init() { this.count = 0; } increment() { this.count = this.count + 1; } }\n"
+            + "var increment = Counter().increment;\n";
+
+    @Param({"tree", "node", "closure", "jit"})
+    String engine;
+
+    private Interpreter interpreter;
+    private LoxFunction empty;
+    private LoxFunction add;
+    private LoxFunction increment;
+    private final List<Object> none = Collections.emptyList();
+    private final List<Object> pair = Arrays.asList(1.0, 2.0);
+
+    @Setup
+    public void setup() {
+        switch (engine) {
+            case "node":
+                interpreter = new NodeInterpreter();
+                break;
+            case "closure":
+                interpreter = new ClosureInterpreter();
+                break;
+            case "jit":
+                interpreter = new JitInterpreter(JitInterpreter.DEFAULT_THRESHOLD);
+                break;
+            default:
+                interpreter = new Interpreter();
+        }
+        Fixtures.run(interpreter, SOURCE);
+        empty = (LoxFunction) Fixtures.global(interpreter, "empty");
+        add = (LoxFunction) Fixtures.global(interpreter, "add");
+        increment = (LoxFunction) Fixtures.global(interpreter, "increment");
+    }
+
+    @Benchmark
+    public Object callEmpty() {
+        return empty.call(interpreter, none);
+    }
+
+    @Benchmark
+    public Object callAdd() {
+        return add.call(interpreter, pair);
+    }
+
+    // 调用绑定方法，方法体读写一个字段
+    @Benchmark
+    public Object callMethod() {
+        return increment.call(interpreter, none);
+    }
+}
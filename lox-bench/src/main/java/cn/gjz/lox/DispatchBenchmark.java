@@ -0,0 +1,60 @@
+package cn.gjz.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 方法分派基准
+ * 在三层继承的类上通过findMethod()查找自身定义的方法、从最顶层父类继承的方法以及不存在的方法
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    private static final String SOURCE = ""
+            + "class Base { inherited() { return 1; } }\n"
+            + "class Middle < Base { middle() { return 2; } }\n"
+            + "class Leaf < Middle { own() { return 3; } }\n";
+
+    private final Symbol own = Symbol.of("own");
+    private final Symbol inherited = Symbol.of("inherited");
+    private final Symbol missing = Symbol.of("missing");
+    private LoxClass leaf;
+
+    @Setup
+    public void setup() {
+        Interpreter interpreter = new Interpreter();
+        Fixtures.run(interpreter, SOURCE);
+        leaf = (LoxClass) Fixtures.global(interpreter, "Leaf");
+    }
+
+    @Benchmark
+    public LoxFunction findOwn() {
+        return leaf.findMethod(own);
+    }
+
+    @Benchmark
+    public LoxFunction findInherited() {
+        return leaf.findMethod(inherited);
+    }
+
+    @Benchmark
+    public LoxFunction findMissing() {
+        return leaf.findMethod(missing);
+    }
+}
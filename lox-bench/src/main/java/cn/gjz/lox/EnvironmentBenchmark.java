@@ -0,0 +1,69 @@
+package cn.gjz.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 变量查找基准
+ * 局部变量在depth层之外的环境中，按Resolver计算的距离和槽位读写；全局变量按符号在map中查找
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnvironmentBenchmark {
+
+    // 变量所在环境与当前环境之间的距离
+    @Param({"0", "1", "4", "16"})
+    int depth;
+
+    private Environment globals;
+    private Environment innermost;
+    private Token name;
+    private final Object value = 1.0;
+
+    @Setup
+    public void setup() {
+        name = Fixtures.identifier("counter");
+        globals = new Environment();
+        globals.define(name.symbol, 0.0);
+        // 最外层的局部环境定义被查找的变量，之后每一层都定义一个无关的变量
+        Environment environment = new Environment(globals, 1);
+        environment.define(name.symbol, 0.0);
+        for (int i = 0; i < depth; i++) {
+            environment = new Environment(environment, 1);
+            environment.define(Symbol.of("local" + i), 0.0);
+        }
+        innermost = environment;
+    }
+
+    @Benchmark
+    public Object getAt() {
+        return innermost.getAt(depth, 0);
+    }
+
+    @Benchmark
+    public void assignAt() {
+        innermost.assignAt(depth, 0, value);
+    }
+
+    // 全局变量的查找与距离无关，作为对照
+    @Benchmark
+    public Object getGlobal() {
+        return globals.get(name);
+    }
+}
@@ -0,0 +1,67 @@
+package cn.gjz.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 实例字段读写基准
+ * 读写已有字段只查找形状中的槽位；newInstance()创建实例并依次添加三个字段，包括形状转换和字段数组的分配
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldBenchmark {
+
+    private static final String SOURCE = ""
+            + "class Point { init(x, y, z) { this.x = x; this.y = y; this.z = z; } }\n"
+            + "var point = Point(1, 2, 3);\n";
+
+    private final Token x = Fixtures.identifier("x");
+    private final Token y = Fixtures.identifier("y");
+    private final Token z = Fixtures.identifier("z");
+    private LoxClass klass;
+    private LoxInstance point;
+    private Double value = 4.0;
+
+    @Setup
+    public void setup() {
+        Interpreter interpreter = new Interpreter();
+        Fixtures.run(interpreter, SOURCE);
+        klass = (LoxClass) Fixtures.global(interpreter, "Point");
+        point = (LoxInstance) Fixtures.global(interpreter, "point");
+    }
+
+    // 读取最后添加的字段
+    @Benchmark
+    public Object get() {
+        return point.get(z);
+    }
+
+    @Benchmark
+    public void set() {
+        point.set(z, value);
+    }
+
+    @Benchmark
+    public LoxInstance newInstance() {
+        LoxInstance instance = new LoxInstance(klass);
+        instance.set(x, value);
+        instance.set(y, value);
+        instance.set(z, value);
+        return instance;
+    }
+}
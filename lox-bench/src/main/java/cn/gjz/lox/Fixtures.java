@@ -0,0 +1,56 @@
+package cn.gjz.lox;
+
+import java.io.StringReader;
+import java.util.List;
+
+/**
+ * 基准共用的输入
+ * 生成的源代码各类token的比例接近手写的代码；运行时对象(类、实例、函数)通过真正执行一段Lox程序得到，与解释器中的对象完全一致
+ */
+
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    // 生成约size个字符的脚本，包含声明、表达式、字符串、注释和缩进
+    static String generate(int size) {
+        StringBuilder source = new StringBuilder(size + 256);
+        for (int i = 0; source.length() < size; i++) {
+            source.append("// function number ").append(i).append('\n');
+            source.append("fun compute").append(i).append("(a, b) {\n");
+            source.append("    var total = a * ").append(i % 1000).append(" + b / 2.5;\n");
+            source.append("    if (total >= 100 and a != nil) {\n");
+            source.append("        print \"large value \" + \"").append(i).append("\";\n");
+            source.append("    } else {\n");
+            source.append("        total = total - 1;  // adjust\n");
+            source.append("    }\n");
+            source.append("    for (var k = 0; k < 10; k = k + 1) { total = total + k; }\n");
+            source.append("    return total;\n");
+            source.append("}\n");
+        }
+        return source.toString();
+    }
+
+    // 解析、变量解析并执行一段程序，之后可以从interpreter的全局环境中取出它定义的对象
+    static void run(Interpreter interpreter, String source) {
+        List<Stmt> statements = new Parser(new Scanner(new StringReader(source)), null).parse();
+        if (!Lox.hadError) {
+            new Resolver().resolve(statements);
+        }
+        if (Lox.hadError) {
+            throw new IllegalStateException("Fixture does not compile.");
+        }
+        interpreter.interpret(statements);
+    }
+
+    // 取出全局变量的值
+    static Object global(Interpreter interpreter, String name) {
+        return interpreter.globals.globalValues().get(Symbol.of(name));
+    }
+
+    // 属性访问需要的标识符token
+    static Token identifier(String name) {
+        return new Token(TokenType.IDENTIFIER, name, null, 0);
+    }
+}
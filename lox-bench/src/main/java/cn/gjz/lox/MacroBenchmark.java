@@ -0,0 +1,350 @@
+package cn.gjz.lox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 端到端的宏基准与回归检查
+ * 通过Lox.runFile()执行基准脚本(默认是bench/目录下所有的.lox文件)，预热若干次之后测量墙钟时间、主线程的分配量和堆内存峰值，结果写入JSON
+ * 指定--baseline时与保存的基准结果比较，任何一项指标超过阈值时输出报告并以状态1退出
+ * 运行：java -cp lox-bench/target/benchmarks.jar cn.gjz.lox.MacroBenchmark [选项] [script...]
+ */
+
+public class MacroBenchmark {
+
+    // 每个脚本记录的指标，时间指标与内存指标使用不同的阈值
+    private static final String WALL = "wallMillis";
+    private static final String ALLOCATED = "allocatedBytes";
+    private static final String PEAK_HEAP = "peakHeapBytes";
+    private static final String[] METRICS = {WALL, ALLOCATED, PEAK_HEAP};
+    // 增加不到1MB的内存指标不视为退化，堆内存峰值很小的脚本中几个对象的晋升就会超过百分比阈值
+    private static final double MEMORY_SLACK = 1 << 20;
+
+    private static String engine = "tree";
+    private static int warmup = 5;
+    private static int iterations = 10;
+    private static String output = "target/macro-benchmark.json";
+    private static String baseline = null;
+    // 允许的退化幅度(百分比)
+    private static double timeThreshold = 15;
+    private static double memoryThreshold = 10;
+
+    public static void main(String[] args) throws IOException {
+        List<Path> scripts = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--warmup=")) {
+                warmup = Integer.parseInt(arg.substring("--warmup=".length()));
+            } else if (arg.startsWith("--iterations=")) {
+                iterations = Integer.parseInt(arg.substring("--iterations=".length()));
+            } else if (arg.startsWith("--output=")) {
+                output = arg.substring("--output=".length());
+            } else if (arg.startsWith("--baseline=")) {
+                baseline = arg.substring("--baseline=".length());
+            } else if (arg.startsWith("--time-threshold=")) {
+                timeThreshold = Double.parseDouble(arg.substring("--time-threshold=".length()));
+            } else if (arg.startsWith("--memory-threshold=")) {
+                memoryThreshold = Double.parseDouble(arg.substring("--memory-threshold=".length()));
+            } else if (arg.startsWith("--engine=") && !arg.equals("--engine=vm") && Lox.option(arg)) {
+                engine = arg.substring("--engine=".length());
+            } else if (arg.startsWith("--jit-threshold=") && Lox.option(arg)) {
+                continue;
+            } else if (!arg.startsWith("--")) {
+                scripts.add(Paths.get(arg));
+            } else {
+                usage();
+            }
+        }
+        if (warmup < 0 || iterations < 1) {
+            usage();
+        }
+        if (scripts.isEmpty()) {
+            scripts = corpus(Paths.get("bench"));
+        }
+
+        Map<String, Map<String, Double>> results = new LinkedHashMap<>();
+        for (Path script : scripts) {
+            Map<String, Double> metrics = measure(script);
+            results.put(script.getFileName().toString(), metrics);
+            System.out.printf(Locale.ROOT, "%-20s %10.1f ms %14.0f B allocated %14.0f B peak heap%n",
+                    script.getFileName(), metrics.get(WALL), metrics.get(ALLOCATED), metrics.get(PEAK_HEAP));
+        }
+
+        Path file = Paths.get(output);
+        if (file.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+        }
+        Files.write(file, toJson(results).getBytes(StandardCharsets.UTF_8));
+        System.out.println("Results written to " + file);
+
+        if (baseline != null && !compare(results, Paths.get(baseline))) {
+            System.exit(1);
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage: MacroBenchmark [--engine=tree|node|closure|jit] [--jit-threshold=N] [--warmup=N] [--iterations=N]"
+                + " [--output=file] [--baseline=file] [--time-threshold=percent] [--memory-threshold=percent] [script...]");
+        System.exit(64);
+    }
+
+    // 目录中所有的.lox文件，按文件名排序
+    private static List<Path> corpus(Path directory) throws IOException {
+        List<Path> scripts = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.lox")) {
+            for (Path script : stream) {
+                scripts.add(script);
+            }
+        }
+        scripts.sort(null);
+        return scripts;
+    }
+
+    // 预热之后执行iterations次，时间和分配量取中位数，堆内存峰值取最大值
+    // 脚本的输出(包括扫描得到的token)全部丢弃；脚本有错误时runFile()直接退出进程
+    private static Map<String, Double> measure(Path script) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        List<MemoryPoolMXBean> heap = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            // Eden区在两次回收之间总会被填满，它的峰值只反映Eden的大小，所以不计入
+            if (pool.getType() == MemoryType.HEAP && !pool.getName().contains("Eden")) {
+                heap.add(pool);
+            }
+        }
+
+        double[] wall = new double[iterations];
+        double[] allocated = new double[iterations];
+        double peak = 0;
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int i = 0; i < warmup; i++) {
+                Lox.runFile(script.toString());
+            }
+            for (int i = 0; i < iterations; i++) {
+                // 先回收之前执行留下的垃圾，再从当前的占用开始记录峰值
+                System.gc();
+                double live = 0;
+                for (MemoryPoolMXBean pool : heap) {
+                    pool.resetPeakUsage();
+                    live += pool.getUsage().getUsed();
+                }
+                long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+                long begin = System.nanoTime();
+                Lox.runFile(script.toString());
+                wall[i] = (System.nanoTime() - begin) / 1e6;
+                allocated[i] = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+                // 幸存区和老年代峰值之和减去执行前仍然存活的对象(之前执行的脚本留在全局环境中的对象)
+                // 不同内存池的峰值可能出现在不同的时刻，所以这是一个上界
+                double used = 0;
+                for (MemoryPoolMXBean pool : heap) {
+                    used += pool.getPeakUsage().getUsed();
+                }
+                peak = Math.max(peak, used - live);
+            }
+        } finally {
+            System.setOut(out);
+        }
+
+        Map<String, Double> metrics = new LinkedHashMap<>();
+        metrics.put(WALL, median(wall));
+        metrics.put(ALLOCATED, median(allocated));
+        metrics.put(PEAK_HEAP, peak);
+        return metrics;
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    // 与基准结果比较，输出退化的指标，没有退化时返回true
+    @SuppressWarnings("unchecked")
+    private static boolean compare(Map<String, Map<String, Double>> results, Path file) throws IOException {
+        Map<String, Object> stored;
+        try {
+            stored = (Map<String, Object>) new Json(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)).parse();
+        } catch (IllegalArgumentException | ClassCastException e) {
+            System.out.println("Baseline " + file + " is not a valid results file: " + e.getMessage());
+            return false;
+        }
+        if (!engine.equals(stored.get("engine"))) {
+            System.out.println("Baseline " + file + " was recorded with --engine=" + stored.get("engine")
+                    + ", current run uses --engine=" + engine + ".");
+            return false;
+        }
+        Map<String, Object> scripts = (Map<String, Object>) stored.get("scripts");
+
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Double>> entry : results.entrySet()) {
+            Map<String, Object> before = (Map<String, Object>) scripts.get(entry.getKey());
+            if (before == null) {
+                System.out.println(entry.getKey() + ": no baseline, skipped");
+                continue;
+            }
+            for (String metric : METRICS) {
+                if (!(before.get(metric) instanceof Double)) {
+                    continue;
+                }
+                double old = (Double) before.get(metric);
+                double current = entry.getValue().get(metric);
+                double threshold = metric.equals(WALL) ? timeThreshold : memoryThreshold;
+                double change = old == 0 ? 0 : (current - old) / old * 100;
+                if (change > threshold && (metric.equals(WALL) || current - old > MEMORY_SLACK)) {
+                    regressions.add(String.format(Locale.ROOT, "  %-20s %-15s %14.1f -> %14.1f  (%+.1f%%, threshold %.0f%%)",
+                            entry.getKey(), metric, old, current, change, threshold));
+                }
+            }
+        }
+        if (regressions.isEmpty()) {
+            System.out.println("No regressions against " + file);
+            return true;
+        }
+        System.out.println("Regressions against " + file + ":");
+        for (String regression : regressions) {
+            System.out.println(regression);
+        }
+        return false;
+    }
+
+    private static String toJson(Map<String, Map<String, Double>> results) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"engine\": \"").append(engine).append("\",\n");
+        json.append("  \"warmup\": ").append(warmup).append(",\n");
+        json.append("  \"iterations\": ").append(iterations).append(",\n");
+        json.append("  \"scripts\": {");
+        String separator = "\n";
+        for (Map.Entry<String, Map<String, Double>> entry : results.entrySet()) {
+            json.append(separator).append("    \"").append(entry.getKey()).append("\": {");
+            String inner = "";
+            for (Map.Entry<String, Double> metric : entry.getValue().entrySet()) {
+                json.append(inner).append('"').append(metric.getKey()).append("\": ");
+                double value = metric.getValue();
+                json.append(value == Math.rint(value) ? String.valueOf((long) value) : String.format(Locale.ROOT, "%.3f", value));
+                inner = ", ";
+            }
+            json.append('}');
+            separator = ",\n";
+        }
+        json.append("\n  }\n}\n");
+        return json.toString();
+    }
+
+    // 读取基准结果的JSON解析器，只支持结果文件用到的对象、字符串(不含转义)和数字
+    private static final class Json {
+        private final String text;
+        private int current = 0;
+
+        Json(String text) {
+            this.text = text;
+        }
+
+        Object parse() {
+            Object value = value();
+            skipWhitespace();
+            if (current != text.length()) {
+                throw error("trailing characters");
+            }
+            return value;
+        }
+
+        private Object value() {
+            skipWhitespace();
+            if (current == text.length()) {
+                throw error("unexpected end");
+            }
+            char c = text.charAt(current);
+            if (c == '{') {
+                return object();
+            }
+            if (c == '"') {
+                return string();
+            }
+            return number();
+        }
+
+        private Map<String, Object> object() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            current++;
+            skipWhitespace();
+            if (peek() == '}') {
+                current++;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = string();
+                skipWhitespace();
+                expect(':');
+                object.put(key, value());
+                skipWhitespace();
+                if (peek() == '}') {
+                    current++;
+                    return object;
+                }
+                expect(',');
+            }
+        }
+
+        private String string() {
+            expect('"');
+            int end = text.indexOf('"', current);
+            if (end < 0) {
+                throw error("unterminated string");
+            }
+            String value = text.substring(current, end);
+            current = end + 1;
+            return value;
+        }
+
+        private Double number() {
+            int start = current;
+            while (current < text.length() && "+-.0123456789eE".indexOf(text.charAt(current)) >= 0) {
+                current++;
+            }
+            try {
+                return Double.valueOf(text.substring(start, current));
+            } catch (NumberFormatException e) {
+                throw error("expected a value");
+            }
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw error("expected '" + c + "'");
+            }
+            current++;
+        }
+
+        private char peek() {
+            return current < text.length() ? text.charAt(current) : '\0';
+        }
+
+        private void skipWhitespace() {
+            while (current < text.length() && Character.isWhitespace(text.charAt(current))) {
+                current++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at offset " + current);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package cn.gjz.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解析时间基准
+ * 每次操作扫描并解析整个生成的脚本，resolve()再加上变量解析
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    // 源代码的字符数
+    @Param({"1048576"})
+    int size;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = Fixtures.generate(size);
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(new Scanner(new StringReader(source)), null).parse();
+    }
+
+    @Benchmark
+    public List<Stmt> resolve() {
+        List<Stmt> statements = parse();
+        new Resolver().resolve(statements);
+        return statements;
+    }
+}
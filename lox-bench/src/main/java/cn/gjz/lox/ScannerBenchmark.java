@@ -0,0 +1,53 @@
+package cn.gjz.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 扫描器的吞吐量基准
+ * 反复扫描内存中生成的源代码，只读取token类型，不创建Token对象，不包括磁盘IO
+ * 每次操作扫描整个脚本，吞吐量(MB/s)等于脚本大小除以每次操作的时间
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScannerBenchmark {
+
+    // 源代码的字符数
+    @Param({"10485760"})
+    int size;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = Fixtures.generate(size);
+    }
+
+    // 扫描出所有token，返回token个数
+    @Benchmark
+    public int scan() {
+        Scanner scanner = new Scanner(new StringReader(source));
+        int tokens = 0;
+        while (scanner.type(scanner.scan()) != TokenType.EOF) {
+            tokens++;
+        }
+        return tokens;
+    }
+}